@@ -0,0 +1,136 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.constretto;
+
+import org.constretto.exception.ConstrettoExpressionException;
+
+import java.util.*;
+
+/**
+ * The values of a set of expressions, all resolved in one pass against the same configuration.
+ * <p>
+ * Expressions and values are kept in two parallel arrays sorted by expression, a value is null when no value
+ * was found for its expression.
+ * </p>
+ *
+ * @param <T> the target type
+ * @since 3.0
+ */
+public final class BatchResult<T> {
+    private final String[] expressions;
+    private final Object[] values;
+    private final List<String> tags;
+
+    private BatchResult(String[] expressions, Object[] values, List<String> tags) {
+        this.expressions = expressions;
+        this.values = values;
+        this.tags = tags;
+    }
+
+    /**
+     * @param expressions the expressions of the batch, sorted and without duplicates
+     * @param values      the value of each expression, or null for the missing ones
+     * @param tags        the tags the expressions were resolved with
+     */
+    public static <T> BatchResult<T> of(String[] expressions, Object[] values, List<String> tags) {
+        if (expressions.length != values.length) {
+            throw new IllegalArgumentException("Expected one value per expression");
+        }
+        return new BatchResult<T>(expressions, values, tags);
+    }
+
+    /**
+     * @return the expressions sorted, and without duplicates, in the order they are resolved
+     */
+    public static String[] sortedExpressions(Collection<String> expressions) {
+        return new TreeSet<String>(expressions).toArray(new String[0]);
+    }
+
+    /**
+     * @param expression one of the expressions of the batch
+     * @return the value of the expression
+     * @throws ConstrettoExpressionException if no value was found for the expression
+     */
+    public T get(String expression) throws ConstrettoExpressionException {
+        T value = valueOf(expression);
+        if (value == null) {
+            throw new ConstrettoExpressionException(expression, tags);
+        }
+        return value;
+    }
+
+    /**
+     * @param expression   one of the expressions of the batch
+     * @param defaultValue the value to return if no value was found for the expression
+     * @return the value of the expression, or the default value
+     */
+    public T orElse(String expression, T defaultValue) {
+        T value = valueOf(expression);
+        return value != null ? value : defaultValue;
+    }
+
+    public boolean isPresent(String expression) {
+        return valueOf(expression) != null;
+    }
+
+    /**
+     * @return the expressions of the batch no value was found for
+     */
+    public List<String> missing() {
+        List<String> missing = new ArrayList<String>();
+        for (int i = 0; i < expressions.length; i++) {
+            if (values[i] == null) {
+                missing.add(expressions[i]);
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * @return the number of expressions in the batch
+     */
+    public int size() {
+        return expressions.length;
+    }
+
+    /**
+     * @return the found values by expression, sorted by expression
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, T> asMap() {
+        Map<String, T> map = new LinkedHashMap<String, T>();
+        for (int i = 0; i < expressions.length; i++) {
+            if (values[i] != null) {
+                map.put(expressions[i], (T) values[i]);
+            }
+        }
+        return map;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T valueOf(String expression) {
+        int index = Arrays.binarySearch(expressions, expression);
+        if (index < 0) {
+            throw new IllegalArgumentException("The expression [" + expression + "] is not part of this batch");
+        }
+        return (T) values[index];
+    }
+
+    @Override
+    public String toString() {
+        return "BatchResult{" + asMap() + ", missing=" + missing() + '}';
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.constretto;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The keys whose values changed between two versions of a configuration, including the keys that only changed
+ * because a key they refer to with <code>#{key}</code> changed.
+ * <p>
+ * Changes that are not delivered yet when the next change happens are merged with it, so one change may span
+ * several versions.
+ * </p>
+ *
+ * @since 3.0
+ */
+public final class ConfigurationChange {
+    private final long fromVersion;
+    private final long toVersion;
+    private final Set<String> keys;
+
+    public ConfigurationChange(long fromVersion, long toVersion, Set<String> keys) {
+        this.fromVersion = fromVersion;
+        this.toVersion = toVersion;
+        this.keys = Collections.unmodifiableSet(new TreeSet<String>(keys));
+    }
+
+    /**
+     * @return the version of the configuration before the change
+     */
+    public long fromVersion() {
+        return fromVersion;
+    }
+
+    /**
+     * @return the version of the configuration after the change
+     */
+    public long toVersion() {
+        return toVersion;
+    }
+
+    /**
+     * @return the changed keys, in sorted order
+     */
+    public Set<String> keys() {
+        return keys;
+    }
+
+    public boolean contains(String key) {
+        return keys.contains(key);
+    }
+
+    /**
+     * Merges this change with another change of the same configuration.
+     *
+     * @param other the other change
+     * @return a change from the earliest version before either change to the latest version after either change
+     */
+    public ConfigurationChange merge(ConfigurationChange other) {
+        Set<String> mergedKeys = new TreeSet<String>(keys);
+        mergedKeys.addAll(other.keys);
+        return new ConfigurationChange(Math.min(fromVersion, other.fromVersion), Math.max(toVersion, other.toVersion), mergedKeys);
+    }
+
+    @Override
+    public String toString() {
+        return "ConfigurationChange{" +
+                "fromVersion=" + fromVersion +
+                ", toVersion=" + toVersion +
+                ", keys=" + keys +
+                '}';
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.constretto;
+
+/**
+ * A value set at runtime with {@link ConstrettoConfiguration#override(String, String, String, long, java.util.concurrent.TimeUnit)},
+ * taking precedence over the values loaded from the configuration stores.
+ *
+ * @since 3.0
+ */
+public final class ConfigurationOverride {
+    private final String key;
+    private final String tag;
+    private final String value;
+    private final long expiresAt;
+
+    public ConfigurationOverride(String key, String tag, String value, long expiresAt) {
+        this.key = key;
+        this.tag = tag;
+        this.value = value;
+        this.expiresAt = expiresAt;
+    }
+
+    public String key() {
+        return key;
+    }
+
+    /**
+     * @return the tag the override applies to, or <code>null</code> if it applies to all tags
+     */
+    public String tag() {
+        return tag;
+    }
+
+    public String value() {
+        return value;
+    }
+
+    /**
+     * @return the time the override expires, in milliseconds since the epoch, or 0 if it does not expire
+     */
+    public long expiresAt() {
+        return expiresAt;
+    }
+
+    @Override
+    public String toString() {
+        return "ConfigurationOverride{" +
+                "key='" + key + '\'' +
+                ", tag='" + tag + '\'' +
+                ", value='" + value + '\'' +
+                ", expiresAt=" + expiresAt +
+                '}';
+    }
+}
@@ -20,8 +20,12 @@ import org.constretto.exception.ConstrettoException;
 import org.constretto.exception.ConstrettoExpressionException;
 import org.constretto.model.CValue;
 
+import java.lang.reflect.Type;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * Client interface.
@@ -54,6 +58,41 @@ public interface ConstrettoConfiguration extends Iterable<Property> {
      */
     <K> K evaluateTo(Class<K> targetClass, String expression) throws ConstrettoExpressionException, ConstrettoConversionException;
 
+    /**
+     * Looks up an expression in the configuration, resolving it only once and without using exceptions
+     * for missing expressions or values that can not be converted.
+     *
+     * @param targetClass the class to convert the value
+     * @param expression  the expression to look up
+     * @param <K>         the target Type
+     * @return the result of the lookup, telling whether the value was found, missing or not convertible
+     * @since 3.0
+     */
+    <K> LookupResult<K> lookup(Class<K> targetClass, String expression);
+
+    /**
+     * Looks up a set of expressions in one pass, all against the same configuration.
+     * Missing expressions do not throw, they are reported by the result.
+     *
+     * @param expressions the expressions to look up
+     * @return the raw values of the expressions
+     * @since 3.0
+     */
+    BatchResult<CValue> evaluateAll(Collection<String> expressions);
+
+    /**
+     * Looks up a set of expressions in one pass, all against the same configuration, converting every value to
+     * the target class. Missing expressions do not throw, they are reported by the result.
+     *
+     * @param targetClass the class to convert the values to
+     * @param expressions the expressions to look up
+     * @param <K>         the target Type
+     * @return the converted values of the expressions
+     * @throws ConstrettoConversionException If a conversion error occurs for one of the values
+     * @since 3.0
+     */
+    <K> BatchResult<K> evaluateAll(Class<K> targetClass, Collection<String> expressions) throws ConstrettoConversionException;
+
     /**
      * Looks up an expression in the configuration.
      *
@@ -123,6 +162,63 @@ public interface ConstrettoConfiguration extends Iterable<Property> {
      */
     <K, V> Map<K, V> evaluateToMap(Class<K> keyClass, Class<V> valueClass, String expression) throws ConstrettoExpressionException, ConstrettoConversionException;
 
+    /**
+     * Looks up an expression in the configuration, converting it to a generic type of any depth,
+     * like <code>Map&lt;String, List&lt;Integer&gt;&gt;</code> or <code>List&lt;Map&lt;String, Integer&gt;&gt;</code>.
+     * <p>
+     * The type is typically obtained from a field, a method parameter or a subclass of a generic type.
+     * Lists, sets, maps and arrays are converted element by element, everything else using the registered converters.
+     * </p>
+     *
+     * @param targetType the type to convert the value to
+     * @param expression the expression to lookup
+     * @param <T>        the target type for conversion
+     * @return The converted value for the expression.
+     * @throws ConstrettoExpressionException if the expression is malformed, or a value not found for the expression
+     * @throws ConstrettoConversionException If a conversion error occurs for the resolved value
+     * @since 3.0
+     */
+    <T> T evaluateToType(Type targetType, String expression) throws ConstrettoExpressionException, ConstrettoConversionException;
+
+    /**
+     * Looks up an expression in the configuration, parsing a json array of numbers straight into a int array
+     * without boxing the elements.
+     * The array is parsed once per configuration, each call returns a copy of it.
+     *
+     * @param expression the expression to lookup
+     * @return the converted array
+     * @throws ConstrettoExpressionException if the expression is malformed, or a value not found for the expression
+     * @throws ConstrettoConversionException If the value is not an array of numbers
+     * @since 3.0
+     */
+    int[] evaluateToIntArray(String expression) throws ConstrettoExpressionException, ConstrettoConversionException;
+
+    /**
+     * Looks up an expression in the configuration, parsing a json array of numbers straight into a long array
+     * without boxing the elements.
+     * The array is parsed once per configuration, each call returns a copy of it.
+     *
+     * @param expression the expression to lookup
+     * @return the converted array
+     * @throws ConstrettoExpressionException if the expression is malformed, or a value not found for the expression
+     * @throws ConstrettoConversionException If the value is not an array of numbers
+     * @since 3.0
+     */
+    long[] evaluateToLongArray(String expression) throws ConstrettoExpressionException, ConstrettoConversionException;
+
+    /**
+     * Looks up an expression in the configuration, parsing a json array of numbers straight into a double array
+     * without boxing the elements.
+     * The array is parsed once per configuration, each call returns a copy of it.
+     *
+     * @param expression the expression to lookup
+     * @return the converted array
+     * @throws ConstrettoExpressionException if the expression is malformed, or a value not found for the expression
+     * @throws ConstrettoConversionException If the value is not an array of numbers
+     * @since 3.0
+     */
+    double[] evaluateToDoubleArray(String expression) throws ConstrettoExpressionException, ConstrettoConversionException;
+
     /**
      * Alias for evaluateTo(String.class,expression)
      *
@@ -211,10 +307,118 @@ public interface ConstrettoConfiguration extends Iterable<Property> {
      */
     boolean hasValue(String expression);
 
+    /**
+     * Loads the values of the configuration again from its stores. Lookups already in progress finish with the
+     * values they started with, later lookups see the new values, also in the views made by {@link #withTags(String...)}.
+     *
+     * @throws ConstrettoException if the configuration was not loaded from stores, or the stores could not be read
+     * @since 3.0
+     */
+    void reload() throws ConstrettoException;
+
+    /**
+     * Overrides the value of a key for all tags, until the override is removed.
+     *
+     * @param key   the key to override
+     * @param value the value, parsed like values in configuration stores
+     * @see #override(String, String, String, long, TimeUnit)
+     * @since 3.0
+     */
+    void override(String key, String value);
+
+    /**
+     * Overrides the value of a key at runtime, i.e. to turn off a feature or change a timeout without reloading.
+     * <p>
+     * Overrides take precedence over all values loaded from the configuration stores, and apply to this
+     * configuration and all the views made from it by {@link #withTags(String...)}. Among the overrides of a key
+     * the tags decide like for stored values: an override with a tag wins over an override for all tags
+     * when the tag is current. Setting an override again for the same key and tag replaces it.
+     * </p>
+     *
+     * @param key   the key to override
+     * @param value the value, parsed like values in configuration stores
+     * @param tag   the tag the override applies to, or <code>null</code> for all tags
+     * @param ttl   how long the override lasts, 0 for as long as it is not removed
+     * @param unit  the unit of the ttl
+     * @since 3.0
+     */
+    void override(String key, String value, String tag, long ttl, TimeUnit unit);
+
+    /**
+     * @return the overrides in effect, sorted by key
+     * @since 3.0
+     */
+    List<ConfigurationOverride> overrides();
+
+    /**
+     * Removes an override, so the key gets its value from the configuration stores again.
+     *
+     * @param key the overridden key
+     * @param tag the tag of the override, or <code>null</code> for the override for all tags
+     * @return true if the override was found
+     * @since 3.0
+     */
+    boolean removeOverride(String key, String tag);
+
+    /**
+     * Removes all overrides.
+     *
+     * @since 3.0
+     */
+    void clearOverrides();
+
+    /**
+     * Subscribes to the changes of one key. The consumer is called with the new value each time the value of the
+     * key changes, also when it changes because a key it refers to with <code>#{key}</code> changes.
+     * <p>
+     * Values are delivered asynchronously and one at a time. If the key changes again before the consumer has been
+     * called, only the latest value is delivered. Keys that no longer have a value are not delivered.
+     * </p>
+     *
+     * @param key      the key to follow
+     * @param type     the type to convert the value to
+     * @param consumer called with each new value
+     * @param <T>      the target type
+     * @return the subscription, used to stop the delivery
+     * @since 3.0
+     */
+    <T> Subscription subscribe(String key, Class<T> type, Consumer<T> consumer);
+
+    /**
+     * Subscribes to all changes of the configuration, as sets of changed keys.
+     * <p>
+     * Changes are delivered asynchronously and one at a time. Changes that happen before the previous change has
+     * been delivered are merged into one, so at most one change is waiting for each subscriber.
+     * </p>
+     *
+     * @param consumer called with each change
+     * @return the subscription, used to stop the delivery
+     * @since 3.0
+     */
+    Subscription subscribe(Consumer<ConfigurationChange> consumer);
+
+    /**
+     * Gives a view of this configuration resolved with other tags, sharing the loaded values with this configuration.
+     * <p>
+     * The tags are in order of precedence, like the tags added to the builder. Views are cached by their tags,
+     * so asking for the same tags again gives the same view, as long as it is among the most recently used views.
+     * </p>
+     *
+     * @param tags the tags to resolve values with
+     * @return the configuration resolved with the given tags
+     * @since 3.0
+     */
+    ConstrettoConfiguration withTags(String... tags);
+
     /**
      * Will instantiate a given class by reflection, and inject with configuration.
      * <p>
      * The class will need to have a default constructor.</p>
+     * <p>
+     * If the class is an interface, an implementation of it is returned instead. Each of its methods returns the
+     * value of the key given by its @Configuration annotation, or else by its name without any <code>get</code> or
+     * <code>is</code> prefix, i.e. <code>getPoolSize()</code> returns the value of "poolSize". The values are read
+     * from the configuration each time, so they follow reloads, and are converted once per version of the configuration.</p>
      *
      * @param configurationClass the class to instantiate
      * @param <T>                the target type
@@ -235,6 +439,23 @@ public interface ConstrettoConfiguration extends Iterable<Property> {
      */
     <T> T on(T objectToConfigure) throws ConstrettoException;
 
+    /**
+     * Injects configuration into any java object like {@link #on(Object)}, and keeps injecting it when the
+     * configuration changes.
+     * <p>
+     * After each change only the @Configuration fields and @Configure methods whose keys changed are injected again,
+     * all from the same version of the configuration. The object is held by a weak reference, binding it does not
+     * keep it from being garbage collected.
+     * </p>
+     *
+     * @param objectToConfigure the object to inject configuration
+     * @param <T>               the object type
+     * @return the subscription, used to stop injecting changes
+     * @throws ConstrettoException If a conversion error occurs for resolved values
+     * @since 3.0
+     */
+    <T> Subscription bind(T objectToConfigure) throws ConstrettoException;
+
     /**
      * Will shuffle the configuration values to an instance of map.
      * This method requires you to have configured the required tags to resolve all properties in the configuration.
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.constretto;
+
+import org.constretto.exception.ConstrettoConversionException;
+import org.constretto.exception.ConstrettoExpressionException;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The outcome of looking up an expression without throwing exceptions: either a converted value,
+ * a missing expression or a value that could not be converted.
+ *
+ * @param <T> the target type
+ * @since 3.0
+ */
+public final class LookupResult<T> {
+    private final String expression;
+    private final T value;
+    private final boolean found;
+    private final ConstrettoConversionException conversionFailure;
+    private final List<String> tags;
+
+    private LookupResult(String expression, T value, boolean found, ConstrettoConversionException conversionFailure, List<String> tags) {
+        this.expression = expression;
+        this.value = value;
+        this.found = found;
+        this.conversionFailure = conversionFailure;
+        this.tags = tags;
+    }
+
+    public static <T> LookupResult<T> found(String expression, T value) {
+        return new LookupResult<T>(expression, value, true, null, Collections.<String>emptyList());
+    }
+
+    public static <T> LookupResult<T> missing(String expression, List<String> tags) {
+        return new LookupResult<T>(expression, null, false, null, tags);
+    }
+
+    public static <T> LookupResult<T> conversionFailed(String expression, ConstrettoConversionException cause) {
+        return new LookupResult<T>(expression, null, false, cause, Collections.<String>emptyList());
+    }
+
+    /**
+     * @return true if the expression was found and its value converted
+     */
+    public boolean isPresent() {
+        return found;
+    }
+
+    /**
+     * @return true if no value was found for the expression
+     */
+    public boolean isMissing() {
+        return !found && conversionFailure == null;
+    }
+
+    /**
+     * @return true if a value was found, but could not be converted to the target type
+     */
+    public boolean isConversionFailure() {
+        return conversionFailure != null;
+    }
+
+    /**
+     * @return the converted value
+     * @throws ConstrettoExpressionException if no value was found for the expression
+     * @throws ConstrettoConversionException if the value could not be converted
+     */
+    public T get() throws ConstrettoExpressionException, ConstrettoConversionException {
+        if (conversionFailure != null) {
+            throw conversionFailure;
+        }
+        if (!found) {
+            throw new ConstrettoExpressionException(expression, tags);
+        }
+        return value;
+    }
+
+    /**
+     * @param other the value to return if no converted value is present
+     * @return the converted value, or other if missing, not convertible or converted to null
+     */
+    public T orElse(T other) {
+        return found && value != null ? value : other;
+    }
+
+    public Optional<T> toOptional() {
+        return found ? Optional.ofNullable(value) : Optional.<T>empty();
+    }
+
+    public String expression() {
+        return expression;
+    }
+
+    @Override
+    public String toString() {
+        if (found) {
+            return "LookupResult{" + expression + "=" + value + "}";
+        }
+        return "LookupResult{" + expression + (conversionFailure != null ? " not convertible" : " missing") + "}";
+    }
+}
@@ -21,11 +21,12 @@ import java.lang.annotation.*;
 
 /**
  * This annotation is picked up by Constretto, and applies to fields that are declared as private, public or default,
- * including those inherited from superclasses.
+ * including those inherited from superclasses, to parameters of @Configure annotated methods and constructors,
+ * and to the methods of interfaces given to {@link org.constretto.ConstrettoConfiguration#as(Class)}.
  *
  * @author <a href="mailto:kaare.nilsen@gmail.com">Kaare Nilsen</a>
  */
-@Target({ElementType.PARAMETER, ElementType.FIELD})
+@Target({ElementType.PARAMETER, ElementType.FIELD, ElementType.METHOD})
 @Retention(RetentionPolicy.RUNTIME)
 @Inherited
 public @interface Configuration {
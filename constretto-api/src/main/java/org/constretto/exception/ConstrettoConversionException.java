@@ -31,6 +31,21 @@ public class ConstrettoConversionException extends ConstrettoException {
         this.targetClass = targetClass;
     }
 
+    /**
+     * Creates a conversion exception that does not fill in its own stack trace. Used when the cause already
+     * carries the interesting stack, or when the exception is only used internally.
+     *
+     * @param value              the value that could not be converted
+     * @param targetClass        the class the value should have been converted to
+     * @param cause              the cause of the failure
+     * @param writableStackTrace whether the stack trace should be filled in
+     */
+    public ConstrettoConversionException(String value, Class targetClass, Throwable cause, boolean writableStackTrace) {
+        super(cause == null ? null : cause.toString(), cause, writableStackTrace);
+        this.value = value;
+        this.targetClass = targetClass;
+    }
+
     public ConstrettoConversionException(String value, Class targetClass, String message) {
         super(message);
         this.value = value;
@@ -32,4 +32,16 @@ public class ConstrettoException extends RuntimeException {
         super(cause);
     }
 
+    /**
+     * Used for exceptions that are thrown and caught as part of normal control flow, where filling in the stack
+     * trace would be wasted work.
+     *
+     * @param message            the detail message
+     * @param cause              the cause, may be null
+     * @param writableStackTrace whether the stack trace should be filled in
+     */
+    protected ConstrettoException(String message, Throwable cause, boolean writableStackTrace) {
+        super(message, cause, false, writableStackTrace);
+    }
+
 }
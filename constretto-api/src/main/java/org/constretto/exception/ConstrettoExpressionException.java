@@ -31,4 +31,8 @@ public class ConstrettoExpressionException extends ConstrettoException {
         this.expression = expression;
         this.currentTags = currentTags;
     }
+
+    public String getExpression() {
+        return expression;
+    }
 }
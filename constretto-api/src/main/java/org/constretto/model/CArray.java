@@ -9,6 +9,7 @@ import java.util.*;
  */
 public class CArray extends CValue {
     private final List<CValue> data;
+    private int hash;
 
     public CArray(final List<CValue> data) {
 
@@ -40,6 +41,7 @@ public class CArray extends CValue {
                 value.replace(key, resolvedValue);
             }
         }
+        hash = 0;
     }
 
     @Override
@@ -54,9 +56,17 @@ public class CArray extends CValue {
         return true;
     }
 
+    /**
+     * The hash code is computed once, and again only after the values have been replaced.
+     */
     @Override
     public int hashCode() {
-        return data != null ? data.hashCode() : 0;
+        int h = hash;
+        if (h == 0 && data != null) {
+            h = data.hashCode();
+            hash = h;
+        }
+        return h;
     }
 
     @Override
@@ -9,13 +9,14 @@ import java.util.*;
  */
 public class CObject extends CValue {
     private final Map<String, CValue> data;
+    private int hash;
 
     public CObject(Map<String, CValue> data) {
 
         if (data == null) {
             throw new NullPointerException("The \"data\" argument can not be null");
         }
-        this.data = data;
+        this.data = new LinkedHashMap<String, CValue>(data);
     }
 
     public Map<String, CValue> data() {
@@ -40,6 +41,7 @@ public class CObject extends CValue {
                 value.replace(key, resolvedValue);
             }
         }
+        hash = 0;
     }
 
     @Override
@@ -71,8 +73,16 @@ public class CObject extends CValue {
         return true;
     }
 
+    /**
+     * The hash code is computed once, and again only after the values have been replaced.
+     */
     @Override
     public int hashCode() {
-        return data != null ? data.hashCode() : 0;
+        int h = hash;
+        if (h == 0 && data != null) {
+            h = data.hashCode();
+            hash = h;
+        }
+        return h;
     }
 }
@@ -37,7 +37,7 @@ public class CPrimitive extends CValue {
 
     @Override
     public void replace(String key, String resolvedValue) {
-        if (value != null) {
+        if (value != null && value.contains("#{" + key + "}")) {
             value = value.replaceAll("#\\{" + key + "\\}", Matcher.quoteReplacement(resolvedValue));
         }
     }
@@ -51,6 +51,14 @@ public class CArrayTest {
 
     }
 
+    @Test
+    public void hashCodeFollowsReplacedValues() throws Exception {
+        final CArray arrayWithKey = new CArray(Arrays.<CValue>asList(new CPrimitive("#{key}")));
+        arrayWithKey.hashCode();
+        arrayWithKey.replace("key", VALUE_ONE);
+        assertEquals(new CArray(Arrays.<CValue>asList(PRIMITIVE_ONE)).hashCode(), arrayWithKey.hashCode());
+    }
+
     @Test
     public void testToString() throws Exception {
 
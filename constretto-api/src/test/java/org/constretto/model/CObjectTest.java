@@ -45,6 +45,12 @@ public class CObjectTest {
 
     }
 
+    @Test
+    public void dataIsCopied() throws Exception {
+        values.put("key3", new CPrimitive("3"));
+        assertEquals(2, cObject.data().size());
+    }
+
     @Test(expected = NullPointerException.class)
     public void testNull() throws Exception {
         new CArray(null);
@@ -15,7 +15,19 @@
  */
 package org.constretto;
 
+import org.constretto.internal.AsyncStoreLoader;
+import org.constretto.internal.CValueInterner;
+import org.constretto.internal.CompositeConfigurationMap;
+import org.constretto.internal.CompactConfigurationMap;
+import org.constretto.internal.ConfigurationFootprint;
+import org.constretto.internal.ConfigurationLoader;
 import org.constretto.internal.DefaultConstrettoConfiguration;
+import org.constretto.internal.FrozenConfigurationMap;
+import org.constretto.internal.PersistentConfigurationMap;
+import org.constretto.internal.RefreshPolicy;
+import org.constretto.internal.RefreshScheduler;
+import org.constretto.internal.converter.ValueConverterRegistry;
+import org.constretto.internal.converter.ValueConverterScope;
 import org.constretto.internal.resolver.DefaultConfigurationContextResolver;
 import org.constretto.internal.store.*;
 import org.constretto.internal.store.ldap.LdapConfigurationStoreBuilder;
@@ -24,6 +36,9 @@ import org.constretto.resolver.ConfigurationContextResolver;
 
 import javax.naming.directory.DirContext;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 /**
  * Provides a fluent Java api to build a constretto configuration object.
@@ -36,6 +51,9 @@ public class ConstrettoBuilder {
     private final List<ConfigurationStore> configurationStores;
     private final List<String> tags;
     private final boolean enableSystemProps;
+    private final ValueConverterScope converters;
+    private final Map<CachingConfigurationStore, RefreshPolicy> refreshedStores;
+    private final AsyncStoreLoader storeLoader;
     private final Parser parser = new GsonParser();
 
     /**
@@ -60,6 +78,9 @@ public class ConstrettoBuilder {
         this.configurationStores = new ArrayList<>();
         this.tags = new ArrayList<>();
         this.enableSystemProps = enableSystemProps;
+        this.converters = ValueConverterRegistry.newScope();
+        this.refreshedStores = new LinkedHashMap<>();
+        this.storeLoader = new AsyncStoreLoader();
         for (String tag : configurationContextResolver.getTags()) {
             addCurrentTag(tag);
         }
@@ -69,10 +90,14 @@ public class ConstrettoBuilder {
     }
 
 
-    private ConstrettoBuilder(List<ConfigurationStore> configurationStores, List<String> tags, boolean enableSystemProps) {
+    private ConstrettoBuilder(List<ConfigurationStore> configurationStores, List<String> tags, boolean enableSystemProps, ValueConverterScope converters,
+                              Map<CachingConfigurationStore, RefreshPolicy> refreshedStores, AsyncStoreLoader storeLoader) {
         this.enableSystemProps = enableSystemProps;
         this.configurationStores = configurationStores;
         this.tags = tags;
+        this.converters = converters;
+        this.refreshedStores = refreshedStores;
+        this.storeLoader = storeLoader;
     }
 
     /**
@@ -116,7 +141,8 @@ public class ConstrettoBuilder {
     }
 
     /**
-     * Creates a new ConstrettoBuilder instance based on an existing configuration. Configuration keys are considered be tagged with the default tag
+     * Creates a new ConstrettoBuilder instance based on an existing configuration. The values of the existing configuration
+     * keep their tags, and its tags are used after the tags of the new configuration
      *
      * @param constrettoConfiguration      an existing constrettoConfiguration instance
      * @param configurationContextResolver the configurationContextResolver to use for the resulting constrettoConfiguration
@@ -141,28 +167,146 @@ public class ConstrettoBuilder {
 
     public ConstrettoConfiguration getConfiguration() {
         addOverrideStores();
+        List<ConfigurationStore> stores = new ArrayList<>(configurationStores);
+        return buildConfiguration(stores, stores);
+    }
+
+    /**
+     * Builds the configuration while the caller goes on with other work. The stores are read in parallel, each
+     * within the deadline set with {@link #storeTimeout(long, TimeUnit, TimeoutPolicy)} or
+     * {@link #addConfigurationStore(ConfigurationStore, long, TimeUnit, TimeoutPolicy)}, so the time to build is
+     * bounded by the longest deadline. The configuration is reloaded from all its stores like one built by
+     * {@link #getConfiguration()}, without deadlines.
+     *
+     * @return the future configuration, failing if a store with the {@link TimeoutPolicy#FAIL} policy does not give its values
+     * @since 3.0
+     */
+    public CompletableFuture<ConstrettoConfiguration> getConfigurationAsync() {
+        addOverrideStores();
+        final List<ConfigurationStore> stores = new ArrayList<>(configurationStores);
+        return storeLoader.load(stores).thenApply(new Function<List<ConfigurationStore>, ConstrettoConfiguration>() {
+            public ConstrettoConfiguration apply(List<ConfigurationStore> loadedStores) {
+                return buildConfiguration(loadedStores, stores);
+            }
+        });
+    }
 
+    private ConstrettoConfiguration buildConfiguration(List<ConfigurationStore> loadedStores, final List<ConfigurationStore> stores) {
+        Map<String, List<ConfigurationValue>> configuration = loadConfiguration(loadedStores);
+        if (!(configuration instanceof CompositeConfigurationMap)) {
+            configuration = PersistentConfigurationMap.of(configuration);
+        }
+        return scheduleRefreshes(inheritOverrides(new DefaultConstrettoConfiguration(configuration, composedTags(), onDemandStores(), converters, new ConfigurationLoader() {
+            public Map<String, List<ConfigurationValue>> load() {
+                return loadConfiguration(stores);
+            }
+        })));
+    }
+
+    /**
+     * Builds a configuration that is indexed for lookups by a perfect hash over its keys. The configuration can
+     * not change after it is built, so use this once all stores are added and the configuration is only read.
+     *
+     * @return the frozen configuration
+     * @since 3.0
+     */
+    public ConstrettoConfiguration getFrozenConfiguration() {
+        return inheritOverrides(new DefaultConstrettoConfiguration(FrozenConfigurationMap.freeze(loadConfiguration()), composedTags(), onDemandStores(), converters));
+    }
+
+    /**
+     * Builds a configuration stored for a very large number of keys, with front coded keys and values shared
+     * between keys. Lookups are slower than in the default configuration, but each key costs a fraction of the memory.
+     *
+     * @return the compact configuration
+     * @see #getFootprintReport()
+     * @since 3.0
+     */
+    public ConstrettoConfiguration getCompactConfiguration() {
+        addOverrideStores();
+        final List<ConfigurationStore> stores = new ArrayList<>(configurationStores);
+        return scheduleRefreshes(inheritOverrides(new DefaultConstrettoConfiguration(CompactConfigurationMap.compact(loadConfiguration(stores)), composedTags(), onDemandStores(), converters, new ConfigurationLoader() {
+            public Map<String, List<ConfigurationValue>> load() {
+                return CompactConfigurationMap.compact(loadConfiguration(stores));
+            }
+        })));
+    }
+
+    private DefaultConstrettoConfiguration scheduleRefreshes(DefaultConstrettoConfiguration configuration) {
+        if (!refreshedStores.isEmpty()) {
+            RefreshScheduler scheduler = configuration.refreshScheduler();
+            for (Map.Entry<CachingConfigurationStore, RefreshPolicy> entry : refreshedStores.entrySet()) {
+                scheduler.schedule(entry.getKey(), entry.getValue());
+            }
+        }
+        return configuration;
+    }
+
+    /**
+     * Estimates the memory used by the configuration of this builder in the default and in the compact layout.
+     *
+     * @return the estimates for both layouts
+     * @since 3.0
+     */
+    public ConfigurationFootprint getFootprintReport() {
+        return ConfigurationFootprint.of(loadConfiguration());
+    }
+
+    private Map<String, List<ConfigurationValue>> loadConfiguration() {
+        addOverrideStores();
+        return loadConfiguration(configurationStores);
+    }
+
+    /**
+     * Loads the stores in order. Existing configurations are layered in by reference between the values of the stores
+     * around them, so their values keep their tags and are not copied.
+     */
+    private Map<String, List<ConfigurationValue>> loadConfiguration(List<ConfigurationStore> stores) {
+        List<Map<String, List<ConfigurationValue>>> layers = new ArrayList<>();
+        List<ConfigurationStore> parsedStores = new ArrayList<>();
+        for (ConfigurationStore configurationStore : stores) {
+            Map<String, List<ConfigurationValue>> taggedValues = configurationStore instanceof NestedConfigurationStore ?
+                    ((NestedConfigurationStore) configurationStore).taggedValues() : null;
+            if (taggedValues == null) {
+                parsedStores.add(configurationStore);
+            } else {
+                layers.add(parseConfiguration(parsedStores));
+                layers.add(taggedValues);
+                parsedStores = new ArrayList<>();
+            }
+        }
+        if (layers.isEmpty()) {
+            return parseConfiguration(parsedStores);
+        }
+        layers.add(parseConfiguration(parsedStores));
+        return CompositeConfigurationMap.compose(layers);
+    }
+
+    private Map<String, List<ConfigurationValue>> parseConfiguration(List<ConfigurationStore> stores) {
         Map<String, List<ConfigurationValue>> configuration = new HashMap<>();
-        Collection<TaggedPropertySet> taggedPropertySets = loadPropertySets();
+        CValueInterner interner = new CValueInterner();
+        Collection<TaggedPropertySet> taggedPropertySets = loadPropertySets(stores);
         for (TaggedPropertySet taggedPropertySet : taggedPropertySets) {
-            Map<String, String> properties = taggedPropertySet.getProperties();
-            for (Map.Entry<String, String> entry : properties.entrySet()) {
-                if (configuration.containsKey(entry.getKey())) {
-                    List<ConfigurationValue> values = configuration.get(entry.getKey());
-                    if (values == null) {
-                        values = new ArrayList<>();
-                    }
-                    values.add(new ConfigurationValue(parser.parse(entry.getValue()), taggedPropertySet.tag()));
-                    configuration.put(entry.getKey(), values);
-
-                } else {
-                    List<ConfigurationValue> values = new ArrayList<>();
-                    values.add(new ConfigurationValue(parser.parse(entry.getValue()), taggedPropertySet.tag()));
-                    configuration.put(entry.getKey(), values);
+            if (taggedPropertySet.isParsed()) {
+                for (Map.Entry<String, CValue> entry : taggedPropertySet.getValues().entrySet()) {
+                    addValue(configuration, entry.getKey(), interner.intern(entry.getValue()), taggedPropertySet.tag());
+                }
+            } else {
+                for (Map.Entry<String, String> entry : taggedPropertySet.getProperties().entrySet()) {
+                    addValue(configuration, entry.getKey(), interner.intern(parser.parse(entry.getValue())), taggedPropertySet.tag());
                 }
             }
         }
-        return new DefaultConstrettoConfiguration(configuration, tags);
+        return configuration;
+    }
+
+    private void addValue(Map<String, List<ConfigurationValue>> configuration, String key, CValue value, String tag) {
+        List<ConfigurationValue> values = configuration.get(key);
+        if (values == null) {
+            values = new ArrayList<>();
+            configuration.put(key, values);
+        }
+        values.add(new ConfigurationValue(value, tag));
     }
 
     private void addOverrideStores() {
@@ -191,7 +335,21 @@ public class ConstrettoBuilder {
 
     public ConstrettoBuilder addCurrentTag(String tag) {
         tags.add(tag);
-        return new ConstrettoBuilder(configurationStores, tags, enableSystemProps);
+        return new ConstrettoBuilder(configurationStores, tags, enableSystemProps, converters, refreshedStores, storeLoader);
+    }
+
+    /**
+     * Registers a value converter that is only used by configurations created by this builder.
+     * Converters registered here take precedence over the global converters in {@link ValueConverterRegistry}.
+     *
+     * @param converterFor the class the converter converts to
+     * @param converter    the converter
+     * @param <T>          the target type
+     * @return the same ConstrettoBuilder with the converter registered
+     */
+    public <T> ConstrettoBuilder registerConverter(Class<T> converterFor, ValueConverter<T> converter) {
+        converters.registerConverter(converterFor, converter);
+        return new ConstrettoBuilder(configurationStores, tags, enableSystemProps, converters, refreshedStores, storeLoader);
     }
 
     /**
@@ -202,20 +360,85 @@ public class ConstrettoBuilder {
      */
     public ConstrettoBuilder addConfigurationStore(ConfigurationStore configurationStore) {
         configurationStores.add(configurationStore);
-        return new ConstrettoBuilder(configurationStores, tags, enableSystemProps);
+        return new ConstrettoBuilder(configurationStores, tags, enableSystemProps, converters, refreshedStores, storeLoader);
+    }
+
+    /**
+     * Sets how long each store may take to give its values to {@link #getConfigurationAsync()}, for the stores
+     * added without a deadline of their own. By default there is no deadline and a failing store fails the build.
+     *
+     * @param timeout the time each store may take, 0 to wait as long as it takes
+     * @param unit    the unit of the timeout
+     * @param policy  what to do with a store that fails or takes longer
+     * @return the same ConstrettoBuilder with the deadline set
+     */
+    public ConstrettoBuilder storeTimeout(long timeout, TimeUnit unit, TimeoutPolicy policy) {
+        storeLoader.setDefaultDeadline(timeout, unit, policy);
+        return new ConstrettoBuilder(configurationStores, tags, enableSystemProps, converters, refreshedStores, storeLoader);
+    }
+
+    /**
+     * Adds a configuration store with a deadline for {@link #getConfigurationAsync()}
+     *
+     * @param configurationStore the store to add
+     * @param timeout            the time the store may take, 0 to wait as long as it takes
+     * @param unit               the unit of the timeout
+     * @param policy             what to do with the store if it fails or takes longer
+     * @return the same ConstrettoBuilder with the given ConfigurationStore added
+     */
+    public ConstrettoBuilder addConfigurationStore(ConfigurationStore configurationStore, long timeout, TimeUnit unit, TimeoutPolicy policy) {
+        storeLoader.setDeadline(configurationStore, timeout, unit, policy);
+        return addConfigurationStore(configurationStore);
     }
 
     /**
-     * Adds an existing configuration to be used as a configuration source
+     * Adds an existing configuration to be used as a configuration source. A configuration built by constretto is
+     * layered in by reference with the tags of its values kept, and its tags are used after the tags of this builder.
+     * Reloading the new configuration takes the values the existing configuration has at that time.
      *
      * @param constrettoConfiguration the configuration to be added
-     * @return
+     * @return the same ConstrettoBuilder with the configuration added
      */
     public ConstrettoBuilder addExistingConfiguration(final ConstrettoConfiguration constrettoConfiguration) {
         addConfigurationStore(new NestedConfigurationStore(constrettoConfiguration));
         return this;
     }
 
+    /**
+     * Adds a store that is read again periodically. When the store gives other values than before, the configuration
+     * is reloaded, with the values of the other periodically read stores taken from memory. The refreshes are run by
+     * the {@link RefreshScheduler} of the configuration, which is started by {@link #getConfiguration()} and
+     * {@link #getCompactConfiguration()}; a frozen configuration does not change, so its stores are not refreshed.
+     * <p/>
+     * The scheduler runs on its own threads, which live until it is shut down with {@link RefreshScheduler#shutdown()}
+     * or until the configuration is no longer used: the scheduler holds the configuration weakly, and shuts itself
+     * down at the first refresh after the configuration is garbage collected. Every configuration built from this
+     * builder gets a scheduler of its own, so shut down the schedulers of configurations built only for a while.
+     *
+     * @param configurationStore the store to read periodically
+     * @param interval           the time between refreshes
+     * @param unit               the unit of the interval
+     * @return the same ConstrettoBuilder with the store added
+     * @see #addRefreshedConfigurationStore(ConfigurationStore, RefreshPolicy)
+     */
+    public ConstrettoBuilder addRefreshedConfigurationStore(ConfigurationStore configurationStore, long interval, TimeUnit unit) {
+        return addRefreshedConfigurationStore(configurationStore, RefreshPolicy.every(interval, unit));
+    }
+
+    /**
+     * Adds a store that is read again as often as the policy says, with jitter and backoff after failures.
+     *
+     * @param configurationStore the store to read periodically
+     * @param policy             how often to read the store
+     * @return the same ConstrettoBuilder with the store added
+     */
+    public ConstrettoBuilder addRefreshedConfigurationStore(ConfigurationStore configurationStore, RefreshPolicy policy) {
+        CachingConfigurationStore cachingStore = configurationStore instanceof CachingConfigurationStore ?
+                (CachingConfigurationStore) configurationStore : new CachingConfigurationStore(configurationStore);
+        refreshedStores.put(cachingStore, policy);
+        return addConfigurationStore(cachingStore);
+    }
+
     public PropertiesStoreBuilder createPropertiesStore() {
         return new PropertiesStoreBuilder();
     }
@@ -224,6 +447,17 @@ public class ConstrettoBuilder {
         return new EncryptedPropertiesStoreBuilder(passwordProperty);
     }
 
+    /**
+     * Creates a store for jasypt encrypted properties
+     *
+     * @param passwordProperty the system property or environment variable holding the password
+     * @param decryptionMode   when the encrypted values should be decrypted
+     * @return a builder for the store
+     */
+    public EncryptedPropertiesStoreBuilder createEncryptedPropertiesStore(String passwordProperty, EncryptedPropertiesStore.DecryptionMode decryptionMode) {
+        return new EncryptedPropertiesStoreBuilder(passwordProperty, decryptionMode);
+    }
+
     public IniFileConfigurationStoreBuilder createIniFileConfigurationStore() {
         return new IniFileConfigurationStoreBuilder();
     }
@@ -234,7 +468,19 @@ public class ConstrettoBuilder {
 
     public ConstrettoBuilder createSystemPropertiesStore() {
         configurationStores.add(new SystemPropertiesStore());
-        return new ConstrettoBuilder(configurationStores, tags, enableSystemProps);
+        return new ConstrettoBuilder(configurationStores, tags, enableSystemProps, converters, refreshedStores, storeLoader);
+    }
+
+    /**
+     * Adds a store looking up system properties and environment variables when they are needed,
+     * instead of copying all of them into the configuration.
+     *
+     * @param relaxedEnvironmentKeys whether keys like "db.url" should match environment variables like DB_URL
+     * @return the same ConstrettoBuilder with the store added
+     */
+    public ConstrettoBuilder createLazySystemPropertiesStore(boolean relaxedEnvironmentKeys) {
+        configurationStores.add(new LazySystemPropertiesStore(relaxedEnvironmentKeys));
+        return new ConstrettoBuilder(configurationStores, tags, enableSystemProps, converters, refreshedStores, storeLoader);
     }
 
     public ObjectConfigurationStoreBuilder createObjectConfigurationStore() {
@@ -245,14 +491,66 @@ public class ConstrettoBuilder {
         return new WrappedLdapConfigurationStoreBuilder(LdapConfigurationStoreBuilder.usingDirContext(dirContext));
     }
 
-    private Collection<TaggedPropertySet> loadPropertySets() {
+    private Collection<TaggedPropertySet> loadPropertySets(List<ConfigurationStore> stores) {
         List<TaggedPropertySet> taggedPropertySets = new ArrayList<>();
-        for (ConfigurationStore configurationStore : configurationStores) {
-            taggedPropertySets.addAll(configurationStore.parseConfiguration());
+        for (ConfigurationStore configurationStore : stores) {
+            if (!(configurationStore instanceof OnDemandConfigurationStore)) {
+                taggedPropertySets.addAll(configurationStore.parseConfiguration());
+            }
         }
         return taggedPropertySets;
     }
 
+    private List<OnDemandConfigurationStore> onDemandStores() {
+        List<OnDemandConfigurationStore> onDemandStores = new ArrayList<>();
+        for (ConfigurationStore configurationStore : configurationStores) {
+            if (configurationStore instanceof OnDemandConfigurationStore) {
+                onDemandStores.add((OnDemandConfigurationStore) configurationStore);
+            } else if (configurationStore instanceof NestedConfigurationStore) {
+                onDemandStores.addAll(((NestedConfigurationStore) configurationStore).onDemandStores());
+            }
+        }
+        return onDemandStores;
+    }
+
+    /**
+     * Sets the overrides of the existing configurations layered by reference as overrides of the configuration, so
+     * they take precedence over all the loaded values like in the configurations they were set on. The overrides
+     * are taken when the configuration is built, and those set with a time to live expire at the same time.
+     */
+    private DefaultConstrettoConfiguration inheritOverrides(DefaultConstrettoConfiguration configuration) {
+        long now = System.currentTimeMillis();
+        for (ConfigurationStore configurationStore : configurationStores) {
+            if (configurationStore instanceof NestedConfigurationStore) {
+                for (ConfigurationOverride override : ((NestedConfigurationStore) configurationStore).overrides()) {
+                    if (override.expiresAt() == 0) {
+                        configuration.override(override.key(), override.value(), override.tag(), 0, TimeUnit.MILLISECONDS);
+                    } else if (override.expiresAt() > now) {
+                        configuration.override(override.key(), override.value(), override.tag(), override.expiresAt() - now, TimeUnit.MILLISECONDS);
+                    }
+                }
+            }
+        }
+        return configuration;
+    }
+
+    /**
+     * The tags of this builder, followed by the tags of the existing configurations added to it that are not among them.
+     */
+    private List<String> composedTags() {
+        List<String> composedTags = new ArrayList<>(tags);
+        for (ConfigurationStore configurationStore : configurationStores) {
+            if (configurationStore instanceof NestedConfigurationStore) {
+                for (String tag : ((NestedConfigurationStore) configurationStore).tags()) {
+                    if (!composedTags.contains(tag)) {
+                        composedTags.add(tag);
+                    }
+                }
+            }
+        }
+        return composedTags;
+    }
+
     public YamlStoreBuilder createYamlConfigurationStore() {
         return new YamlStoreBuilder();
     }
@@ -273,7 +571,7 @@ public class ConstrettoBuilder {
         @Override
         final public ConstrettoBuilder done() {
             configurationStores.add(createStore());
-            return new ConstrettoBuilder(configurationStores, tags, enableSystemProps);
+            return new ConstrettoBuilder(configurationStores, tags, enableSystemProps, converters, refreshedStores, storeLoader);
         }
     }
 
@@ -316,6 +614,18 @@ public class ConstrettoBuilder {
             return new JsonStoreBuilder(store.addResource(resource, key, tags));
         }
 
+        /**
+         * Adds a json resource where nested objects are flattened into dotted keys prefixed with the given key
+         *
+         * @param resource the json resource
+         * @param key      the key prefix for the values in the resource
+         * @param tags     the tags of the resource
+         * @return a new JsonStoreBuilder with the resource added
+         */
+        public JsonStoreBuilder addFlattenedResource(Resource resource, String key, String... tags) {
+            return new JsonStoreBuilder(store.addFlattenedResource(resource, key, tags));
+        }
+
         @Override
         ConfigurationStore createStore() {
             return store;
@@ -353,6 +663,10 @@ public class ConstrettoBuilder {
             store = new EncryptedPropertiesStore(passwordProperty);
         }
 
+        public EncryptedPropertiesStoreBuilder(String passwordProperty, EncryptedPropertiesStore.DecryptionMode decryptionMode) {
+            store = new EncryptedPropertiesStore(passwordProperty, decryptionMode);
+        }
+
         private EncryptedPropertiesStoreBuilder(EncryptedPropertiesStore store) {
             this.store = store;
         }
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.constretto;
+
+import org.constretto.model.ConfigurationValue;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A store that is not copied into the configuration when it is built, but asked for single keys when they are
+ * looked up. The configuration caches the values found for as long as it lives; keys the stores have no
+ * values for are asked for again on the next lookup.
+ * <p/>
+ * Values from these stores are considered after the values of all ordinary stores.
+ */
+public interface OnDemandConfigurationStore extends ConfigurationStore {
+
+    /**
+     * @param key the key to look up
+     * @return the tagged values for the key, or an empty list if the store has no value for it
+     */
+    List<ConfigurationValue> lookup(String key);
+
+    /**
+     * @return the keys the store currently has values for
+     */
+    Set<String> keys();
+}
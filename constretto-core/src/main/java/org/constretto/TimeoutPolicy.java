@@ -0,0 +1,41 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.constretto;
+
+/**
+ * What {@link ConstrettoBuilder#getConfigurationAsync()} does with a store that fails or does not give its values
+ * before its deadline.
+ *
+ * @since 3.0
+ */
+public enum TimeoutPolicy {
+
+    /**
+     * The configuration is not built, and the future fails.
+     */
+    FAIL,
+
+    /**
+     * The configuration is built without the values of the store.
+     */
+    SKIP,
+
+    /**
+     * The configuration is built with the values last kept by the store, if it is a
+     * {@link org.constretto.internal.store.CachingConfigurationStore} that has any. Fails like {@link #FAIL} otherwise.
+     */
+    USE_CACHE
+}
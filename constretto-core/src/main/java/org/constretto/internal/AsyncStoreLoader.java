@@ -0,0 +1,208 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.constretto.internal;
+
+import org.constretto.ConfigurationStore;
+import org.constretto.OnDemandConfigurationStore;
+import org.constretto.TimeoutPolicy;
+import org.constretto.exception.ConstrettoException;
+import org.constretto.internal.store.CachingConfigurationStore;
+import org.constretto.internal.store.NestedConfigurationStore;
+import org.constretto.model.TaggedPropertySet;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Reads the stores of a builder in parallel, each within its own deadline.
+ * <p/>
+ * A store that fails or does not give its values in time is handled by its {@link TimeoutPolicy}. A caching store
+ * with the {@link TimeoutPolicy#USE_CACHE} policy is read again first, so the cached values are only used when
+ * the store it caches does not answer in time. A store that
+ * is given up on keeps running on its thread until it returns, as reading a store can not be interrupted in
+ * general; its values are then dropped. Existing configurations and on demand stores are not read up front,
+ * so they are passed on as they are.
+ * <p/>
+ * The loaded stores are completed on the threads reading the stores, also when a deadline passes, so the work
+ * depending on them, like building the configuration and the callbacks of the caller, never holds up the
+ * deadlines of other stores.
+ *
+ * @author <a href="mailto:kaare.nilsen@gmail.com">Kaare Nilsen</a>
+ * @since 3.0
+ */
+public final class AsyncStoreLoader {
+    private static final Executor LOADER = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "constretto-store-loader-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private static final ScheduledExecutorService DEADLINES = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "constretto-store-deadlines");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final Map<ConfigurationStore, Deadline> deadlines = new IdentityHashMap<ConfigurationStore, Deadline>();
+    private Deadline defaultDeadline = new Deadline(0, TimeoutPolicy.FAIL);
+
+    /**
+     * @param timeout the time every store without a deadline of its own may take, 0 to wait as long as it takes
+     * @param unit    the unit of the timeout
+     * @param policy  what to do with a store that fails or takes longer
+     */
+    public synchronized void setDefaultDeadline(long timeout, TimeUnit unit, TimeoutPolicy policy) {
+        defaultDeadline = new Deadline(unit.toMillis(timeout), policy);
+    }
+
+    /**
+     * @param store   the store the deadline is for
+     * @param timeout the time the store may take, 0 to wait as long as it takes
+     * @param unit    the unit of the timeout
+     * @param policy  what to do with the store if it fails or takes longer
+     */
+    public synchronized void setDeadline(ConfigurationStore store, long timeout, TimeUnit unit, TimeoutPolicy policy) {
+        deadlines.put(store, new Deadline(unit.toMillis(timeout), policy));
+    }
+
+    private synchronized Deadline deadlineOf(ConfigurationStore store) {
+        Deadline deadline = deadlines.get(store);
+        return deadline == null ? defaultDeadline : deadline;
+    }
+
+    /**
+     * @param stores the stores to read, in order
+     * @return the stores in the same order, each read store replaced by a store giving the values it read and
+     * the skipped stores left out
+     */
+    public CompletableFuture<List<ConfigurationStore>> load(List<ConfigurationStore> stores) {
+        final List<CompletableFuture<ConfigurationStore>> loadedStores = new ArrayList<CompletableFuture<ConfigurationStore>>();
+        for (ConfigurationStore store : stores) {
+            if (store instanceof OnDemandConfigurationStore || store instanceof NestedConfigurationStore) {
+                loadedStores.add(CompletableFuture.completedFuture(store));
+            } else {
+                loadedStores.add(load(store, deadlineOf(store)));
+            }
+        }
+        return CompletableFuture.allOf(loadedStores.toArray(new CompletableFuture<?>[loadedStores.size()]))
+                .thenApply(new Function<Void, List<ConfigurationStore>>() {
+                    public List<ConfigurationStore> apply(Void ignored) {
+                        List<ConfigurationStore> loaded = new ArrayList<ConfigurationStore>();
+                        for (CompletableFuture<ConfigurationStore> loadedStore : loadedStores) {
+                            ConfigurationStore store = loadedStore.join();
+                            if (store != null) {
+                                loaded.add(store);
+                            }
+                        }
+                        return loaded;
+                    }
+                });
+    }
+
+    private CompletableFuture<ConfigurationStore> load(final ConfigurationStore store, final Deadline deadline) {
+        final CompletableFuture<Collection<TaggedPropertySet>> propertySets = CompletableFuture.supplyAsync(new Supplier<Collection<TaggedPropertySet>>() {
+            public Collection<TaggedPropertySet> get() {
+                if (deadline.policy == TimeoutPolicy.USE_CACHE && store instanceof CachingConfigurationStore) {
+                    CachingConfigurationStore cachingStore = (CachingConfigurationStore) store;
+                    if (cachingStore.cached() != null) {
+                        cachingStore.refresh();
+                    }
+                }
+                return new ArrayList<TaggedPropertySet>(store.parseConfiguration());
+            }
+        }, LOADER);
+        if (deadline.timeout > 0) {
+            final ScheduledFuture<?> expiry = DEADLINES.schedule(new Runnable() {
+                public void run() {
+                    // the stages depending on the store run on the completing thread, keep them off the deadline thread
+                    LOADER.execute(new Runnable() {
+                        public void run() {
+                            propertySets.completeExceptionally(new TimeoutException("The store " + store.getClass().getName()
+                                    + " did not give its values within " + deadline.timeout + " ms"));
+                        }
+                    });
+                }
+            }, deadline.timeout, TimeUnit.MILLISECONDS);
+            propertySets.whenComplete(new BiConsumer<Collection<TaggedPropertySet>, Throwable>() {
+                public void accept(Collection<TaggedPropertySet> values, Throwable failure) {
+                    expiry.cancel(false);
+                }
+            });
+        }
+        return propertySets.handle(new BiFunction<Collection<TaggedPropertySet>, Throwable, ConfigurationStore>() {
+            public ConfigurationStore apply(Collection<TaggedPropertySet> values, Throwable failure) {
+                if (failure == null) {
+                    return new LoadedStore(values);
+                }
+                Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+                switch (deadline.policy) {
+                    case SKIP:
+                        return null;
+                    case USE_CACHE:
+                        Collection<TaggedPropertySet> cached = store instanceof CachingConfigurationStore ?
+                                ((CachingConfigurationStore) store).cached() : null;
+                        if (cached != null) {
+                            return new LoadedStore(cached);
+                        }
+                        throw new ConstrettoException("Could not load the store " + store.getClass().getName() + ", and it has no cached values", cause);
+                    default:
+                        if (cause instanceof ConstrettoException) {
+                            throw (ConstrettoException) cause;
+                        }
+                        throw new ConstrettoException("Could not load the store " + store.getClass().getName(), cause);
+                }
+            }
+        });
+    }
+
+    private static final class Deadline {
+        private final long timeout;
+        private final TimeoutPolicy policy;
+
+        private Deadline(long timeout, TimeoutPolicy policy) {
+            if (timeout < 0) {
+                throw new IllegalArgumentException("The timeout can not be negative, was " + timeout);
+            }
+            this.timeout = timeout;
+            this.policy = policy;
+        }
+    }
+
+    /**
+     * Gives the values a store gave while it was loaded.
+     */
+    private static final class LoadedStore implements ConfigurationStore {
+        private final Collection<TaggedPropertySet> propertySets;
+
+        private LoadedStore(Collection<TaggedPropertySet> propertySets) {
+            this.propertySets = propertySets;
+        }
+
+        public Collection<TaggedPropertySet> parseConfiguration() {
+            return propertySets;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.constretto.internal;
+
+import org.constretto.model.CArray;
+import org.constretto.model.CObject;
+import org.constretto.model.CValue;
+
+import java.util.*;
+
+/**
+ * Canonicalizes configuration values while a configuration is built, so values that are equal share one instance,
+ * i.e. the same host, flag or timeout repeated for several tags or in several stores.
+ * <p/>
+ * Only values without variables are shared. Resolving a variable rewrites the value it appears in, so such values
+ * must stay distinct. Elements of arrays and objects are canonicalized as well.
+ *
+ * @author <a href="mailto:kaare.nilsen@gmail.com">Kaare Nilsen</a>
+ */
+public class CValueInterner {
+    private final Map<CValue, CValue> canonical = new HashMap<CValue, CValue>();
+
+    /**
+     * @param value the value to canonicalize
+     * @return an equal value shared with earlier calls, or the value itself if it has variables
+     */
+    public CValue intern(CValue value) {
+        if (value == null || value.containsVariables()) {
+            return value;
+        }
+        return internTree(value);
+    }
+
+    public int size() {
+        return canonical.size();
+    }
+
+    private CValue internTree(CValue value) {
+        if (value == null) {
+            return null;
+        }
+        CValue existing = canonical.get(value);
+        if (existing != null) {
+            return existing;
+        }
+        CValue interned = value;
+        if (value instanceof CArray) {
+            List<CValue> data = ((CArray) value).data();
+            List<CValue> elements = new ArrayList<CValue>(data.size());
+            boolean changed = false;
+            for (CValue element : data) {
+                CValue internedElement = internTree(element);
+                changed |= internedElement != element;
+                elements.add(internedElement);
+            }
+            if (changed) {
+                interned = new CArray(elements);
+            }
+        } else if (value instanceof CObject) {
+            Map<String, CValue> data = ((CObject) value).data();
+            Map<String, CValue> entries = new LinkedHashMap<String, CValue>(data.size() * 2);
+            boolean changed = false;
+            for (Map.Entry<String, CValue> entry : data.entrySet()) {
+                CValue internedValue = internTree(entry.getValue());
+                changed |= internedValue != entry.getValue();
+                entries.put(entry.getKey(), internedValue);
+            }
+            if (changed) {
+                interned = new CObject(entries);
+            }
+        }
+        canonical.put(interned, interned);
+        return interned;
+    }
+}
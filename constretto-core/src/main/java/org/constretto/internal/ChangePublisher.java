@@ -0,0 +1,149 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.constretto.internal;
+
+import org.constretto.ConfigurationChange;
+import org.constretto.Subscription;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Delivers the changes of one configuration to its subscribers.
+ * <p/>
+ * Every subscriber gets its changes on the executor, one at a time and in order. A change published while the
+ * previous change is still waiting for the subscriber is merged into it, so each subscriber holds at most one
+ * undelivered change no matter how often the configuration changes or how slow the subscriber is.
+ *
+ * @author <a href="mailto:kaare.nilsen@gmail.com">Kaare Nilsen</a>
+ * @since 3.0
+ */
+public class ChangePublisher {
+    private static final Executor DEFAULT_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "constretto-changes-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final Executor executor;
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<Subscriber>();
+
+    public ChangePublisher() {
+        this(DEFAULT_EXECUTOR);
+    }
+
+    public ChangePublisher(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @param consumer called with the changes
+     * @param key      only changes of this key are delivered, all changes if <code>null</code>
+     * @return the subscription
+     */
+    public Subscription subscribe(Consumer<ConfigurationChange> consumer, String key) {
+        Subscriber subscriber = new Subscriber(consumer, key);
+        subscribers.add(subscriber);
+        return subscriber;
+    }
+
+    public boolean hasSubscribers() {
+        return !subscribers.isEmpty();
+    }
+
+    public void publish(ConfigurationChange change) {
+        if (change.keys().isEmpty()) {
+            return;
+        }
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.key == null || change.contains(subscriber.key)) {
+                subscriber.offer(change);
+            }
+        }
+    }
+
+    private class Subscriber implements Subscription, Runnable {
+        private final Consumer<ConfigurationChange> consumer;
+        private final String key;
+        private ConfigurationChange pending;
+        private boolean scheduled;
+        private boolean cancelled;
+
+        private Subscriber(Consumer<ConfigurationChange> consumer, String key) {
+            this.consumer = consumer;
+            this.key = key;
+        }
+
+        private void offer(ConfigurationChange change) {
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                pending = pending == null ? change : pending.merge(change);
+                if (scheduled) {
+                    return;
+                }
+                scheduled = true;
+            }
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                synchronized (this) {
+                    scheduled = false;
+                }
+                throw e;
+            }
+        }
+
+        public void run() {
+            while (true) {
+                ConfigurationChange change;
+                synchronized (this) {
+                    change = pending;
+                    pending = null;
+                    if (change == null || cancelled) {
+                        scheduled = false;
+                        return;
+                    }
+                }
+                try {
+                    consumer.accept(change);
+                } catch (RuntimeException e) {
+                    Thread thread = Thread.currentThread();
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                }
+            }
+        }
+
+        public void cancel() {
+            subscribers.remove(this);
+            synchronized (this) {
+                cancelled = true;
+                pending = null;
+            }
+        }
+    }
+}
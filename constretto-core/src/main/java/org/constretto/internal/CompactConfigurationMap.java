@@ -0,0 +1,380 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.constretto.internal;
+
+import org.constretto.model.CValue;
+import org.constretto.model.ConfigurationValue;
+
+import java.nio.charset.Charset;
+import java.util.*;
+
+/**
+ * A read only map from keys to their tagged values, laid out for configurations with a very large number of keys.
+ * <p/>
+ * Keys are sorted by their utf-8 bytes and stored front coded in blocks: the first key of each block is stored in
+ * full, the others as the length of the prefix shared with the previous key followed by the rest of the key.
+ * A lookup binary searches the first keys of the blocks and scans a single block.
+ * <p/>
+ * Tagged values without variables are shared between all the keys having the same value for the same tag, and
+ * the values of each key are stored as a range of indexes into this shared pool.
+ *
+ * @author <a href="mailto:kaare.nilsen@gmail.com">Kaare Nilsen</a>
+ */
+public final class CompactConfigurationMap extends AbstractMap<String, List<ConfigurationValue>> {
+    static final int BLOCK_SIZE = 16;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final int size;
+    private final byte[] keyData;
+    private final int[] blockOffsets;
+    private final int maxKeyLength;
+    private final int[] valueOffsets;
+    private final int[] valueIndexes;
+    private final ConfigurationValue[] values;
+    private Set<Entry<String, List<ConfigurationValue>>> entrySet;
+
+    private CompactConfigurationMap(int size, byte[] keyData, int[] blockOffsets, int maxKeyLength,
+                                    int[] valueOffsets, int[] valueIndexes, ConfigurationValue[] values) {
+        this.size = size;
+        this.keyData = keyData;
+        this.blockOffsets = blockOffsets;
+        this.maxKeyLength = maxKeyLength;
+        this.valueOffsets = valueOffsets;
+        this.valueIndexes = valueIndexes;
+        this.values = values;
+    }
+
+    public static CompactConfigurationMap compact(Map<String, List<ConfigurationValue>> configuration) {
+        int size = configuration.size();
+        SortKey[] keys = new SortKey[size];
+        int i = 0;
+        for (String key : configuration.keySet()) {
+            keys[i++] = new SortKey(key);
+        }
+        Arrays.sort(keys);
+
+        ByteBuffer keyData = new ByteBuffer(size * 8);
+        int[] blockOffsets = new int[(size + BLOCK_SIZE - 1) / BLOCK_SIZE];
+        int maxKeyLength = 0;
+        int[] valueOffsets = new int[size + 1];
+        IntBuffer valueIndexes = new IntBuffer(size);
+        List<ConfigurationValue> values = new ArrayList<ConfigurationValue>();
+        Map<SharedValue, Integer> shared = new HashMap<SharedValue, Integer>();
+        byte[] previous = null;
+        for (i = 0; i < size; i++) {
+            byte[] key = keys[i].bytes;
+            int prefix = 0;
+            if (i % BLOCK_SIZE == 0) {
+                blockOffsets[i / BLOCK_SIZE] = keyData.size;
+            } else {
+                int max = Math.min(previous.length, key.length);
+                while (prefix < max && previous[prefix] == key[prefix]) {
+                    prefix++;
+                }
+            }
+            keyData.writeVarInt(prefix);
+            keyData.writeVarInt(key.length - prefix);
+            keyData.write(key, prefix, key.length - prefix);
+            maxKeyLength = Math.max(maxKeyLength, key.length);
+            previous = key;
+
+            valueOffsets[i] = valueIndexes.size;
+            for (ConfigurationValue value : configuration.get(keys[i].name)) {
+                if (value.value().containsVariables()) {
+                    // resolving variables changes the value, so it can not be shared with other keys
+                    valueIndexes.write(values.size());
+                    values.add(value);
+                } else {
+                    SharedValue sharedValue = new SharedValue(value);
+                    Integer index = shared.get(sharedValue);
+                    if (index == null) {
+                        index = values.size();
+                        values.add(value);
+                        shared.put(sharedValue, index);
+                    }
+                    valueIndexes.write(index);
+                }
+            }
+        }
+        valueOffsets[size] = valueIndexes.size;
+        return new CompactConfigurationMap(size, keyData.toArray(), blockOffsets, maxKeyLength,
+                valueOffsets, valueIndexes.toArray(), values.toArray(new ConfigurationValue[values.size()]));
+    }
+
+    @Override
+    public List<ConfigurationValue> get(Object key) {
+        int index = indexOf(key);
+        return index < 0 ? null : valuesAt(index);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<Entry<String, List<ConfigurationValue>>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Entry<String, List<ConfigurationValue>>>() {
+                @Override
+                public Iterator<Entry<String, List<ConfigurationValue>>> iterator() {
+                    return new Iterator<Entry<String, List<ConfigurationValue>>>() {
+                        private final byte[] key = new byte[maxKeyLength];
+                        private int index;
+                        private int position;
+
+                        public boolean hasNext() {
+                            return index < size;
+                        }
+
+                        public Entry<String, List<ConfigurationValue>> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            int prefix = readVarInt(position);
+                            position += varIntLength(prefix);
+                            int suffix = readVarInt(position);
+                            position += varIntLength(suffix);
+                            System.arraycopy(keyData, position, key, prefix, suffix);
+                            position += suffix;
+                            return new SimpleImmutableEntry<String, List<ConfigurationValue>>(new String(key, 0, prefix + suffix, UTF_8), valuesAt(index++));
+                        }
+
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    private List<ConfigurationValue> valuesAt(final int index) {
+        final int from = valueOffsets[index];
+        final int count = valueOffsets[index + 1] - from;
+        return new AbstractList<ConfigurationValue>() {
+            @Override
+            public ConfigurationValue get(int i) {
+                if (i < 0 || i >= count) {
+                    throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + count);
+                }
+                return values[valueIndexes[from + i]];
+            }
+
+            @Override
+            public int size() {
+                return count;
+            }
+        };
+    }
+
+    private int indexOf(Object key) {
+        if (!(key instanceof String) || size == 0) {
+            return -1;
+        }
+        byte[] target = ((String) key).getBytes(UTF_8);
+        if (target.length > maxKeyLength) {
+            return -1;
+        }
+        int low = 0;
+        int high = blockOffsets.length - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (compareFirstKey(middle, target) <= 0) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        byte[] current = new byte[maxKeyLength];
+        int position = blockOffsets[low];
+        int end = Math.min(size, (low + 1) * BLOCK_SIZE);
+        for (int index = low * BLOCK_SIZE; index < end; index++) {
+            int prefix = readVarInt(position);
+            position += varIntLength(prefix);
+            int suffix = readVarInt(position);
+            position += varIntLength(suffix);
+            System.arraycopy(keyData, position, current, prefix, suffix);
+            position += suffix;
+            int comparison = compare(current, 0, prefix + suffix, target);
+            if (comparison == 0) {
+                return index;
+            } else if (comparison > 0) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private int compareFirstKey(int block, byte[] target) {
+        int position = blockOffsets[block] + 1;
+        int length = readVarInt(position);
+        return compare(keyData, position + varIntLength(length), length, target);
+    }
+
+    private static int compare(byte[] data, int offset, int length, byte[] target) {
+        int max = Math.min(length, target.length);
+        for (int i = 0; i < max; i++) {
+            int comparison = (data[offset + i] & 0xff) - (target[i] & 0xff);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return length - target.length;
+    }
+
+    private int readVarInt(int position) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = keyData[position++];
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static int varIntLength(int value) {
+        int length = 1;
+        while ((value >>>= 7) != 0) {
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * Estimates how many bytes this map retains, not counting the tagged values themselves.
+     */
+    long footprint() {
+        return ConfigurationFootprint.array(keyData.length, 1) + ConfigurationFootprint.array(blockOffsets.length, 4)
+                + ConfigurationFootprint.array(valueOffsets.length, 4) + ConfigurationFootprint.array(valueIndexes.length, 4)
+                + ConfigurationFootprint.array(values.length, ConfigurationFootprint.REFERENCE);
+    }
+
+    /**
+     * @return the distinct tagged values of the map
+     */
+    ConfigurationValue[] distinctValues() {
+        return values;
+    }
+
+    private static class SortKey implements Comparable<SortKey> {
+        private final String name;
+        private final byte[] bytes;
+
+        private SortKey(String name) {
+            this.name = name;
+            this.bytes = name.getBytes(UTF_8);
+        }
+
+        public int compareTo(SortKey other) {
+            return compare(bytes, 0, bytes.length, other.bytes);
+        }
+    }
+
+    private static class SharedValue {
+        private final CValue value;
+        private final String tag;
+
+        private SharedValue(ConfigurationValue configurationValue) {
+            this.value = configurationValue.value();
+            this.tag = configurationValue.tag();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof SharedValue)) return false;
+            SharedValue that = (SharedValue) o;
+            return value.equals(that.value) && tag.equals(that.tag);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * value.hashCode() + tag.hashCode();
+        }
+    }
+
+    private static class ByteBuffer {
+        private byte[] data;
+        private int size;
+
+        private ByteBuffer(int capacity) {
+            data = new byte[Math.max(16, capacity)];
+        }
+
+        private void writeVarInt(int value) {
+            while ((value & ~0x7f) != 0) {
+                write((byte) ((value & 0x7f) | 0x80));
+                value >>>= 7;
+            }
+            write((byte) value);
+        }
+
+        private void write(byte b) {
+            ensureCapacity(size + 1);
+            data[size++] = b;
+        }
+
+        private void write(byte[] bytes, int offset, int length) {
+            ensureCapacity(size + length);
+            System.arraycopy(bytes, offset, data, size, length);
+            size += length;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > data.length) {
+                data = Arrays.copyOf(data, Math.max(capacity, data.length * 2));
+            }
+        }
+
+        private byte[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+
+    private static class IntBuffer {
+        private int[] data;
+        private int size;
+
+        private IntBuffer(int capacity) {
+            data = new int[Math.max(16, capacity)];
+        }
+
+        private void write(int value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[size++] = value;
+        }
+
+        private int[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+}
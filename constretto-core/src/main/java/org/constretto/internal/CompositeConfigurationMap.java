@@ -0,0 +1,164 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.constretto.internal;
+
+import org.constretto.model.ConfigurationValue;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A read only map from keys to their tagged values, made of the maps of other configurations layered in order.
+ * <p/>
+ * The layers are shared, not copied. A lookup asks each layer for the key and joins the tagged values it finds,
+ * earlier layers first, so a value in a later layer wins over a value with the same tag in an earlier one, like
+ * a value from a later store. Layers that are composites themselves are spliced in, so configurations composed
+ * several levels deep are looked up in one pass over their layers.
+ *
+ * @author <a href="mailto:kaare.nilsen@gmail.com">Kaare Nilsen</a>
+ * @since 3.0
+ */
+public final class CompositeConfigurationMap extends AbstractMap<String, List<ConfigurationValue>> {
+    private final List<Map<String, List<ConfigurationValue>>> layers;
+    private final Map<String, List<ConfigurationValue>> joined = new ConcurrentHashMap<String, List<ConfigurationValue>>();
+    private volatile Set<String> keys;
+    private Set<Entry<String, List<ConfigurationValue>>> entrySet;
+
+    private CompositeConfigurationMap(List<Map<String, List<ConfigurationValue>>> layers) {
+        this.layers = layers;
+    }
+
+    /**
+     * @param layers the maps to compose, in the order of precedence of the stores they were loaded from
+     * @return the composed map, or the only layer with keys if there is just one
+     */
+    public static Map<String, List<ConfigurationValue>> compose(List<Map<String, List<ConfigurationValue>>> layers) {
+        List<Map<String, List<ConfigurationValue>>> flattened = new ArrayList<Map<String, List<ConfigurationValue>>>();
+        for (Map<String, List<ConfigurationValue>> layer : layers) {
+            if (layer instanceof CompositeConfigurationMap) {
+                flattened.addAll(((CompositeConfigurationMap) layer).layers);
+            } else if (!layer.isEmpty()) {
+                flattened.add(layer);
+            }
+        }
+        if (flattened.isEmpty()) {
+            return new HashMap<String, List<ConfigurationValue>>();
+        }
+        if (flattened.size() == 1) {
+            return flattened.get(0);
+        }
+        return new CompositeConfigurationMap(Collections.unmodifiableList(flattened));
+    }
+
+    /**
+     * @return the maps this map is composed of, in order
+     */
+    public List<Map<String, List<ConfigurationValue>>> layers() {
+        return layers;
+    }
+
+    @Override
+    public List<ConfigurationValue> get(Object key) {
+        List<ConfigurationValue> found = null;
+        for (Map<String, List<ConfigurationValue>> layer : layers) {
+            List<ConfigurationValue> values = layer.get(key);
+            if (values != null) {
+                if (found != null) {
+                    return join((String) key);
+                }
+                found = values;
+            }
+        }
+        return found;
+    }
+
+    private List<ConfigurationValue> join(String key) {
+        List<ConfigurationValue> values = joined.get(key);
+        if (values == null) {
+            List<ConfigurationValue> all = new ArrayList<ConfigurationValue>();
+            for (Map<String, List<ConfigurationValue>> layer : layers) {
+                List<ConfigurationValue> layerValues = layer.get(key);
+                if (layerValues != null) {
+                    all.addAll(layerValues);
+                }
+            }
+            values = Collections.unmodifiableList(all);
+            joined.put(key, values);
+        }
+        return values;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        for (Map<String, List<ConfigurationValue>> layer : layers) {
+            if (layer.containsKey(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Set<String> keySet() {
+        Set<String> keySet = keys;
+        if (keySet == null) {
+            keySet = new HashSet<String>();
+            for (Map<String, List<ConfigurationValue>> layer : layers) {
+                keySet.addAll(layer.keySet());
+            }
+            keySet = Collections.unmodifiableSet(keySet);
+            keys = keySet;
+        }
+        return keySet;
+    }
+
+    @Override
+    public int size() {
+        return keySet().size();
+    }
+
+    @Override
+    public Set<Entry<String, List<ConfigurationValue>>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Entry<String, List<ConfigurationValue>>>() {
+                @Override
+                public Iterator<Entry<String, List<ConfigurationValue>>> iterator() {
+                    final Iterator<String> keys = keySet().iterator();
+                    return new Iterator<Entry<String, List<ConfigurationValue>>>() {
+                        public boolean hasNext() {
+                            return keys.hasNext();
+                        }
+
+                        public Entry<String, List<ConfigurationValue>> next() {
+                            String key = keys.next();
+                            return new SimpleImmutableEntry<String, List<ConfigurationValue>>(key, get(key));
+                        }
+
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return CompositeConfigurationMap.this.size();
+                }
+            };
+        }
+        return entrySet;
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.constretto.internal;
+
+import org.constretto.model.*;
+
+import java.util.*;
+
+/**
+ * Estimates the memory retained by a configuration in the default layout, a hash map of lists of tagged values,
+ * and in the {@link CompactConfigurationMap} layout.
+ * <p/>
+ * The estimates assume a 64 bit jvm with compressed references and compact strings. They are meant for comparing
+ * the layouts, not for exact accounting.
+ *
+ * @author <a href="mailto:kaare.nilsen@gmail.com">Kaare Nilsen</a>
+ */
+public class ConfigurationFootprint {
+    static final int REFERENCE = 4;
+    private static final int OBJECT_HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+
+    private final int keys;
+    private final int values;
+    private final int distinctValues;
+    private final long hashMapBytes;
+    private final long compactBytes;
+
+    private ConfigurationFootprint(int keys, int values, int distinctValues, long hashMapBytes, long compactBytes) {
+        this.keys = keys;
+        this.values = values;
+        this.distinctValues = distinctValues;
+        this.hashMapBytes = hashMapBytes;
+        this.compactBytes = compactBytes;
+    }
+
+    public static ConfigurationFootprint of(Map<String, List<ConfigurationValue>> configuration) {
+        long hashMapBytes = hashMap(configuration.size());
+        int values = 0;
+        for (Map.Entry<String, List<ConfigurationValue>> entry : configuration.entrySet()) {
+            hashMapBytes += align(OBJECT_HEADER + 4 + 3 * REFERENCE) + string(entry.getKey());
+            hashMapBytes += align(OBJECT_HEADER + 8 + REFERENCE) + array(Math.max(10, entry.getValue().size()), REFERENCE);
+            for (ConfigurationValue value : entry.getValue()) {
+                hashMapBytes += configurationValue(value);
+                values++;
+            }
+        }
+        CompactConfigurationMap compact = CompactConfigurationMap.compact(configuration);
+        long compactBytes = align(OBJECT_HEADER + 4 + 4 + 6 * REFERENCE) + compact.footprint();
+        for (ConfigurationValue value : compact.distinctValues()) {
+            compactBytes += configurationValue(value);
+        }
+        return new ConfigurationFootprint(configuration.size(), values, compact.distinctValues().length, hashMapBytes, compactBytes);
+    }
+
+    public int getKeys() {
+        return keys;
+    }
+
+    public int getValues() {
+        return values;
+    }
+
+    public int getDistinctValues() {
+        return distinctValues;
+    }
+
+    public long getHashMapBytes() {
+        return hashMapBytes;
+    }
+
+    public long getCompactBytes() {
+        return compactBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "ConfigurationFootprint{" +
+                "keys=" + keys +
+                ", values=" + values +
+                ", distinctValues=" + distinctValues +
+                ", hashMapBytes=" + hashMapBytes +
+                ", compactBytes=" + compactBytes +
+                ", saved=" + (hashMapBytes == 0 ? 0 : 100 - compactBytes * 100 / hashMapBytes) + "%" +
+                '}';
+    }
+
+    static long array(int length, int elementSize) {
+        return align(ARRAY_HEADER + (long) length * elementSize);
+    }
+
+    private static long configurationValue(ConfigurationValue value) {
+        return align(OBJECT_HEADER + 2 * REFERENCE) + value(value.value());
+    }
+
+    private static long value(CValue value) {
+        if (value instanceof CPrimitive) {
+            return align(OBJECT_HEADER + REFERENCE) + string(((CPrimitive) value).value());
+        } else if (value instanceof CArray) {
+            List<CValue> data = ((CArray) value).data();
+            long bytes = align(OBJECT_HEADER + REFERENCE) + align(OBJECT_HEADER + 8 + REFERENCE) + array(data.size(), REFERENCE);
+            for (CValue element : data) {
+                bytes += value(element);
+            }
+            return bytes;
+        } else if (value instanceof CObject) {
+            Map<String, CValue> data = ((CObject) value).data();
+            long bytes = align(OBJECT_HEADER + REFERENCE) + hashMap(data.size());
+            for (Map.Entry<String, CValue> entry : data.entrySet()) {
+                bytes += align(OBJECT_HEADER + 4 + 3 * REFERENCE) + string(entry.getKey()) + value(entry.getValue());
+            }
+            return bytes;
+        }
+        return 0;
+    }
+
+    private static long hashMap(int size) {
+        int capacity = 16;
+        while (capacity * 3 / 4 < size) {
+            capacity <<= 1;
+        }
+        return align(OBJECT_HEADER + 4 * 4 + 3 * REFERENCE + 4) + array(capacity, REFERENCE);
+    }
+
+    private static long string(String value) {
+        boolean latin1 = true;
+        for (int i = 0; i < value.length() && latin1; i++) {
+            latin1 = value.charAt(i) <= 0xff;
+        }
+        return align(OBJECT_HEADER + 4 + REFERENCE + 2) + array(value.length(), latin1 ? 1 : 2);
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.constretto.internal;
+
+import org.constretto.ConfigurationDefaultValueFactory;
+import org.constretto.annotation.Configuration;
+import org.constretto.exception.ConstrettoException;
+import org.constretto.exception.ConstrettoExpressionException;
+import org.constretto.internal.converter.CompiledConverter;
+import org.constretto.model.CPrimitive;
+import org.constretto.model.ConfigurationValue;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.*;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Implements a configuration interface with a dynamic proxy. Every method of the interface reads one key from the
+ * current snapshot of the configuration, the key and the converter of each method are found once when the view is
+ * created. The converted value of a method is kept until the snapshot changes. Default methods are not read from
+ * the configuration, they are called on the view like on any other implementation of the interface.
+ *
+ * @author <a href="mailto:kaare.nilsen@gmail.com">Kaare Nilsen</a>
+ * @since 3.0
+ */
+class ConfigurationInterfaceView implements InvocationHandler {
+    private final DefaultConstrettoConfiguration configuration;
+    private final Class<?> configurationInterface;
+    private final Map<Method, Accessor> accessors = new HashMap<Method, Accessor>();
+    private final Map<Method, MethodHandle> defaultMethods = new HashMap<Method, MethodHandle>();
+
+    private ConfigurationInterfaceView(DefaultConstrettoConfiguration configuration, Class<?> configurationInterface) {
+        this.configuration = configuration;
+        this.configurationInterface = configurationInterface;
+        for (Method method : configurationInterface.getMethods()) {
+            if (Modifier.isStatic(method.getModifiers())) {
+                continue;
+            }
+            if (method.isDefault()) {
+                defaultMethods.put(method, defaultMethodHandle(configurationInterface, method));
+                continue;
+            }
+            if (method.getParameterTypes().length != 0 || method.getReturnType() == void.class) {
+                throw new ConstrettoException("Can not implement the method [" + method.getName() + "] of the interface ["
+                        + configurationInterface.getName() + "], only methods without parameters that return a value can read configuration");
+            }
+            accessors.put(method, new Accessor(method));
+        }
+        if (accessors.isEmpty()) {
+            throw new ConstrettoException("Can not implement the interface [" + configurationInterface.getName()
+                    + "], it has no methods to read configuration with. You need to create an concrete implementing class first");
+        }
+    }
+
+    /**
+     * Creates a view of the configuration implementing the given interface. All the values are read once, so
+     * missing keys and values that can not be converted are found at once.
+     */
+    static <T> T create(DefaultConstrettoConfiguration configuration, Class<T> configurationInterface) {
+        ConfigurationInterfaceView view = new ConfigurationInterfaceView(configuration, configurationInterface);
+        ConfigurationSnapshot snapshot = configuration.snapshot();
+        for (Accessor accessor : view.accessors.values()) {
+            accessor.value(snapshot);
+        }
+        return configurationInterface.cast(Proxy.newProxyInstance(configurationInterface.getClassLoader(),
+                new Class<?>[]{configurationInterface}, view));
+    }
+
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        Accessor accessor = accessors.get(method);
+        if (accessor != null) {
+            Object value = accessor.value(configuration.snapshot());
+            return value != null && value.getClass().isArray() ? DefaultConstrettoConfiguration.copyOf(value) : value;
+        }
+        MethodHandle defaultMethod = defaultMethods.get(method);
+        if (defaultMethod != null) {
+            return defaultMethod.bindTo(proxy).invokeWithArguments(args == null ? new Object[0] : args);
+        }
+        if (method.getName().equals("equals")) {
+            return proxy == args[0];
+        } else if (method.getName().equals("hashCode")) {
+            return System.identityHashCode(proxy);
+        } else if (method.getName().equals("toString")) {
+            return "ConfigurationView{" + configurationInterface.getName() + "}";
+        }
+        throw new UnsupportedOperationException(method.toString());
+    }
+
+    /**
+     * Finds the default method as implemented by the interface, to be called on the proxy without coming back to
+     * the view. This needs a lookup with private access to the interface: from Java 9 it is made by
+     * <code>MethodHandles.privateLookupIn</code>, on Java 8 only by the private constructor of the lookup.
+     */
+    private static MethodHandle defaultMethodHandle(Class<?> configurationInterface, Method method) {
+        try {
+            MethodHandles.Lookup lookup;
+            try {
+                Method privateLookupIn = MethodHandles.class.getMethod("privateLookupIn", Class.class, MethodHandles.Lookup.class);
+                lookup = (MethodHandles.Lookup) privateLookupIn.invoke(null, configurationInterface, MethodHandles.lookup());
+            } catch (NoSuchMethodException e) {
+                Constructor<MethodHandles.Lookup> constructor = MethodHandles.Lookup.class.getDeclaredConstructor(Class.class, int.class);
+                constructor.setAccessible(true);
+                lookup = constructor.newInstance(configurationInterface, MethodHandles.Lookup.PUBLIC | MethodHandles.Lookup.PRIVATE
+                        | MethodHandles.Lookup.PROTECTED | MethodHandles.Lookup.PACKAGE);
+            }
+            return lookup.unreflectSpecial(method, configurationInterface);
+        } catch (ReflectiveOperationException e) {
+            throw new ConstrettoException("Can not call the default method [" + method.getName() + "] of the interface ["
+                    + configurationInterface.getName() + "]", e);
+        }
+    }
+
+    private static String keyOf(Method method) {
+        Configuration configurationAnnotation = method.getAnnotation(Configuration.class);
+        if (configurationAnnotation != null && !"".equals(configurationAnnotation.value())) {
+            return configurationAnnotation.value();
+        }
+        String name = method.getName();
+        if (name.length() > 3 && name.startsWith("get") && Character.isUpperCase(name.charAt(3))) {
+            return Character.toLowerCase(name.charAt(3)) + name.substring(4);
+        }
+        boolean returnsBoolean = method.getReturnType() == boolean.class || method.getReturnType() == Boolean.class;
+        if (returnsBoolean && name.length() > 2 && name.startsWith("is") && Character.isUpperCase(name.charAt(2))) {
+            return Character.toLowerCase(name.charAt(2)) + name.substring(3);
+        }
+        return name;
+    }
+
+    /**
+     * Reads the key of one method, keeping the converted value of the last snapshot it was read from.
+     */
+    private class Accessor {
+        private final Method method;
+        private final String key;
+        private final Configuration configurationAnnotation;
+        private final CompiledConverter<?> converter;
+        private volatile CachedValue cached;
+
+        private Accessor(Method method) {
+            this.method = method;
+            this.key = keyOf(method);
+            this.configurationAnnotation = method.getAnnotation(Configuration.class);
+            this.converter = configuration.converters().compile(method.getGenericReturnType(), configurationInterface);
+        }
+
+        private Object value(ConfigurationSnapshot snapshot) {
+            CachedValue cachedValue = cached;
+            if (cachedValue != null && cachedValue.snapshot == snapshot) {
+                return cachedValue.value;
+            }
+            Object value = read(snapshot);
+            cached = new CachedValue(snapshot, value);
+            return value;
+        }
+
+        private Object read(ConfigurationSnapshot snapshot) {
+            ConfigurationValue node = configuration.findElementOrNull(snapshot, key);
+            if (node != null) {
+                return converter.convert(node.value());
+            }
+            if (configurationAnnotation != null && DefaultConstrettoConfiguration.hasAnnotationDefaults(configurationAnnotation)) {
+                if (configurationAnnotation.defaultValueFactory().equals(Configuration.EmptyValueFactory.class)) {
+                    return converter.convert(new CPrimitive(configurationAnnotation.defaultValue()));
+                }
+                try {
+                    ConfigurationDefaultValueFactory<?> valueFactory = configurationAnnotation.defaultValueFactory().getDeclaredConstructor().newInstance();
+                    return valueFactory.getDefaultValue();
+                } catch (ReflectiveOperationException e) {
+                    throw new ConstrettoException("Could not create the default value of method [" + method.getName() + "]", e);
+                }
+            }
+            if (configurationAnnotation != null && !configurationAnnotation.required() && !method.getReturnType().isPrimitive()) {
+                return null;
+            }
+            throw new ConstrettoExpressionException(key, snapshot.tags());
+        }
+    }
+
+    private static class CachedValue {
+        private final ConfigurationSnapshot snapshot;
+        private final Object value;
+
+        private CachedValue(ConfigurationSnapshot snapshot, Object value) {
+            this.snapshot = snapshot;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.constretto.internal;
+
+import org.constretto.model.ConfigurationValue;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * One state of a configuration: the loaded values, the overrides set at runtime, and the tags they are resolved with.
+ * An override of a key takes precedence over all the loaded values of the key.
+ * <p/>
+ * A snapshot never changes. A configuration changes by publishing a new snapshot, so a lookup that reads the
+ * snapshot once sees the same values and tags throughout, even while the configuration is reloaded. Resolved
+ * values and parsed arrays are cached in the snapshot they were computed from, and are dropped with it.
+ *
+ * @author <a href="mailto:kaare.nilsen@gmail.com">Kaare Nilsen</a>
+ * @since 3.0
+ */
+public final class ConfigurationSnapshot {
+    private final Map<String, List<ConfigurationValue>> configuration;
+    private final PersistentConfigurationMap overrides;
+    private final List<String> tags;
+    private final long version;
+    final ConcurrentMap<String, List<ConfigurationValue>> onDemandValues;
+    final ConcurrentMap<String, ConfigurationValue> resolvedValues = new ConcurrentHashMap<>();
+    final ConcurrentMap<DefaultConstrettoConfiguration.ArrayKey, Object> primitiveArrays = new ConcurrentHashMap<>();
+
+    ConfigurationSnapshot(Map<String, List<ConfigurationValue>> configuration, List<String> tags) {
+        this(configuration, PersistentConfigurationMap.empty(), tags, 0, new ConcurrentHashMap<String, List<ConfigurationValue>>());
+    }
+
+    private ConfigurationSnapshot(Map<String, List<ConfigurationValue>> configuration, PersistentConfigurationMap overrides,
+                                  List<String> tags, long version, ConcurrentMap<String, List<ConfigurationValue>> onDemandValues) {
+        this.configuration = configuration;
+        this.overrides = overrides;
+        this.tags = Collections.unmodifiableList(new ArrayList<>(tags));
+        this.version = version;
+        this.onDemandValues = onDemandValues;
+    }
+
+    /**
+     * @return the tagged values of every key
+     */
+    public Map<String, List<ConfigurationValue>> configuration() {
+        return Collections.unmodifiableMap(configuration);
+    }
+
+    /**
+     * @return the tagged overrides of every overridden key
+     */
+    public Map<String, List<ConfigurationValue>> overrides() {
+        return overrides;
+    }
+
+    /**
+     * @return the tags, in order of precedence
+     */
+    public List<String> tags() {
+        return tags;
+    }
+
+    /**
+     * @return the version of the values, counting the times the values or the overrides have been changed
+     */
+    public long version() {
+        return version;
+    }
+
+    Map<String, List<ConfigurationValue>> values() {
+        return configuration;
+    }
+
+    /**
+     * The same values resolved with other tags. Values from on demand stores are shared with this snapshot.
+     */
+    ConfigurationSnapshot withTags(List<String> tags) {
+        return new ConfigurationSnapshot(configuration, overrides, tags, version, onDemandValues);
+    }
+
+    /**
+     * New values resolved with the same tags, as the next version. If the values of this snapshot are persistent,
+     * the new values share the keys whose values are unchanged with them.
+     */
+    ConfigurationSnapshot withConfiguration(Map<String, List<ConfigurationValue>> configuration) {
+        if (this.configuration instanceof PersistentConfigurationMap && !(configuration instanceof PersistentConfigurationMap)) {
+            configuration = ((PersistentConfigurationMap) this.configuration).update(configuration);
+        }
+        return new ConfigurationSnapshot(configuration, overrides, tags, version + 1, new ConcurrentHashMap<String, List<ConfigurationValue>>());
+    }
+
+    /**
+     * The same values with other overrides, as the next version.
+     */
+    ConfigurationSnapshot withOverrides(PersistentConfigurationMap overrides) {
+        return new ConfigurationSnapshot(configuration, overrides, tags, version + 1, onDemandValues);
+    }
+
+    /**
+     * The same snapshot without the values cached from lookups, to be kept in the version history.
+     */
+    ConfigurationSnapshot withoutCaches() {
+        return new ConfigurationSnapshot(configuration, overrides, tags, version, new ConcurrentHashMap<String, List<ConfigurationValue>>());
+    }
+
+    /**
+     * The keys whose values differ from the values of a previous snapshot, each resolved with the tags of its own snapshot.
+     * Keys that refer to a changed key with <code>#{key}</code> are changed too, as are the keys that refer to them.
+     * Values from on demand stores are not compared.
+     *
+     * @param previous the snapshot to compare with
+     * @return the changed keys
+     */
+    public Set<String> changedKeys(ConfigurationSnapshot previous) {
+        Set<String> keys;
+        if (tags.equals(previous.tags) && configuration instanceof PersistentConfigurationMap
+                && previous.configuration instanceof PersistentConfigurationMap) {
+            keys = ((PersistentConfigurationMap) configuration).changedKeys((PersistentConfigurationMap) previous.configuration);
+            keys.addAll(overrides.changedKeys(previous.overrides));
+        } else {
+            keys = new HashSet<>(configuration.keySet());
+            keys.addAll(previous.configuration.keySet());
+            keys.addAll(overrides.keySet());
+            keys.addAll(previous.overrides.keySet());
+        }
+        Deque<String> changed = new ArrayDeque<>();
+        for (String key : keys) {
+            ConfigurationValue value = matchOf(key);
+            ConfigurationValue previousValue = previous.matchOf(key);
+            if (value == null ? previousValue != null : previousValue == null || !value.value().equals(previousValue.value())) {
+                changed.add(key);
+            }
+        }
+        if (changed.isEmpty()) {
+            return new HashSet<>();
+        }
+        Map<String, Set<String>> dependents = new HashMap<>();
+        addDependents(dependents);
+        previous.addDependents(dependents);
+        Set<String> changedKeys = new HashSet<>();
+        while (!changed.isEmpty()) {
+            String key = changed.poll();
+            if (changedKeys.add(key) && dependents.containsKey(key)) {
+                changed.addAll(dependents.get(key));
+            }
+        }
+        return changedKeys;
+    }
+
+    private ConfigurationValue matchOf(String key) {
+        ConfigurationValue override = matchOverride(key);
+        if (override != null) {
+            return override;
+        }
+        List<ConfigurationValue> values = configuration.get(key);
+        return values == null ? null : match(values);
+    }
+
+    /**
+     * @return the override of the key with the tag of highest precedence, or null if the key is not overridden for the tags
+     */
+    ConfigurationValue matchOverride(String key) {
+        if (overrides.isEmpty()) {
+            return null;
+        }
+        List<ConfigurationValue> values = overrides.get(key);
+        return values == null ? null : match(values);
+    }
+
+    private void addDependents(Map<String, Set<String>> dependents) {
+        Set<String> keys = configuration.keySet();
+        if (!overrides.isEmpty()) {
+            keys = new HashSet<>(keys);
+            keys.addAll(overrides.keySet());
+        }
+        for (String key : keys) {
+            ConfigurationValue value = matchOf(key);
+            if (value == null || !value.value().containsVariables()) {
+                continue;
+            }
+            for (String referencedKey : value.value().referencedKeys()) {
+                Set<String> referencingKeys = dependents.get(referencedKey);
+                if (referencingKeys == null) {
+                    referencingKeys = new HashSet<>();
+                    dependents.put(referencedKey, referencingKeys);
+                }
+                referencingKeys.add(key);
+            }
+        }
+    }
+
+    /**
+     * The value with the tag of highest precedence, a value with no tag if none of the tags match.
+     */
+    ConfigurationValue match(List<ConfigurationValue> values) {
+        ConfigurationValue bestMatch = null;
+        for (ConfigurationValue configurationNode : values) {
+            if (ConfigurationValue.DEFAULT_TAG.equals(configurationNode.tag())) {
+                if (bestMatch == null || bestMatch.tag().equals(ConfigurationValue.DEFAULT_TAG)) {
+                    bestMatch = configurationNode;
+                }
+            } else if (tags.contains(configurationNode.tag())) {
+                if (bestMatch == null) {
+                    bestMatch = configurationNode;
+                } else {
+                    int previousFoundPriority =
+                            ConfigurationValue.DEFAULT_TAG.equals(bestMatch.tag()) ?
+                                    Integer.MAX_VALUE : tags.indexOf(bestMatch.tag());
+                    if (tags.indexOf(configurationNode.tag()) <= previousFoundPriority) {
+                        bestMatch = configurationNode;
+                    }
+                }
+            } else if (ConfigurationValue.ALL_TAG.equals(configurationNode.tag())) {
+                bestMatch = configurationNode;
+            }
+        }
+        return bestMatch;
+    }
+}
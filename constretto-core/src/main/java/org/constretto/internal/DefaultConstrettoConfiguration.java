@@ -17,61 +17,318 @@ package org.constretto.internal;
 
 import com.thoughtworks.paranamer.BytecodeReadingParanamer;
 import com.thoughtworks.paranamer.Paranamer;
+import org.constretto.BatchResult;
+import org.constretto.ConfigurationChange;
 import org.constretto.ConfigurationDefaultValueFactory;
+import org.constretto.ConfigurationOverride;
 import org.constretto.ConstrettoConfiguration;
 import org.constretto.GenericConverter;
+import org.constretto.LookupResult;
+import org.constretto.OnDemandConfigurationStore;
 import org.constretto.Property;
+import org.constretto.Subscription;
 import org.constretto.annotation.Configuration;
 import org.constretto.annotation.Configure;
 import org.constretto.annotation.Tags;
 import org.constretto.exception.ConstrettoConversionException;
 import org.constretto.exception.ConstrettoException;
 import org.constretto.exception.ConstrettoExpressionException;
+import org.constretto.internal.converter.CompiledConverter;
 import org.constretto.internal.converter.ValueConverterRegistry;
+import org.constretto.internal.converter.ValueConverterScope;
 import org.constretto.internal.introspect.Constructors;
+import org.constretto.model.CArray;
+import org.constretto.model.CObject;
 import org.constretto.model.CPrimitive;
 import org.constretto.model.CValue;
 import org.constretto.model.ConfigurationValue;
+import org.constretto.model.GsonParser;
+import org.constretto.model.Parser;
 
 import java.lang.annotation.Annotation;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.*;
 import java.util.*;
-
-import static org.constretto.internal.GenericCollectionTypeResolver.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 /**
+ * The state of the configuration is held in an immutable {@link ConfigurationSnapshot}, which is replaced as a whole
+ * when the configuration is reloaded. Every lookup reads the snapshot once, so concurrent lookups never lock and
+ * never see values from one load resolved against another.
+ *
  * @author <a href="mailto:kaare.nilsen@gmail.com">Kaare Nilsen</a>
  */
 public class DefaultConstrettoConfiguration implements ConstrettoConfiguration {
 
+    private static final ScheduledExecutorService OVERRIDE_EXPIRY = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "constretto-override-expiry");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
     private final Paranamer paranamer = new BytecodeReadingParanamer();
+    private final Parser parser = new GsonParser();
+
+    /**
+     * The number of tag views kept by {@link #withTags(String...)}, the least recently used views are dropped first.
+     */
+    public static final int MAX_TAG_VIEWS = 256;
 
-    protected final Map<String, List<ConfigurationValue>> configuration;
-    private final List<String> originalTags = new ArrayList<>();
-    protected final List<String> currentTags = new ArrayList<>();
+    /**
+     * The number of versions of the values kept for {@link #snapshot(long)} and {@link #rollback(long)}.
+     */
+    public static final int VERSION_HISTORY = 16;
+
+    private final List<OnDemandConfigurationStore> onDemandStores;
+    private final ValueConverterScope converters;
+    private final ConfigurationLoader loader;
+    private final DefaultConstrettoConfiguration root;
+    private final AtomicReference<ConfigurationSnapshot> current;
+    private final TagViews tagViews;
+    private final VersionHistory history;
+    private final ChangePublisher changes = new ChangePublisher();
+    private final ConcurrentMap<Class<?>, BindingPlan> bindingPlans = new ConcurrentHashMap<>();
+    private final List<LiveBinding> liveBindings = new CopyOnWriteArrayList<>();
+    private Subscription liveBindingSubscription;
+    private RefreshScheduler refreshScheduler;
 
     public DefaultConstrettoConfiguration(Map<String, List<ConfigurationValue>> configuration, List<String> originalTags) {
-        this.configuration = configuration;
-        this.originalTags.addAll(originalTags);
-        this.currentTags.addAll(originalTags);
+        this(configuration, originalTags, Collections.<OnDemandConfigurationStore>emptyList(), ValueConverterRegistry.globalScope());
+    }
+
+    public DefaultConstrettoConfiguration(Map<String, List<ConfigurationValue>> configuration, List<String> originalTags,
+                                          List<OnDemandConfigurationStore> onDemandStores, ValueConverterScope converters) {
+        this(configuration, originalTags, onDemandStores, converters, null);
+    }
+
+    /**
+     * @param loader loads the values again when the configuration is reloaded, may be <code>null</code> if the
+     *               configuration can not be reloaded
+     */
+    public DefaultConstrettoConfiguration(Map<String, List<ConfigurationValue>> configuration, List<String> originalTags,
+                                          List<OnDemandConfigurationStore> onDemandStores, ValueConverterScope converters,
+                                          ConfigurationLoader loader) {
+        this.onDemandStores = onDemandStores;
+        this.converters = converters;
+        this.loader = loader;
+        this.root = null;
+        this.current = new AtomicReference<>(new ConfigurationSnapshot(configuration, originalTags));
+        this.tagViews = new TagViews(MAX_TAG_VIEWS);
+        this.history = new VersionHistory(VERSION_HISTORY);
+        tagViews.put(current.get().tags(), this);
+        history.add(current.get());
     }
 
     public DefaultConstrettoConfiguration(Map<String, List<ConfigurationValue>> configuration) {
-        this.configuration = configuration;
+        this(configuration, Collections.<String>emptyList());
+    }
+
+    private DefaultConstrettoConfiguration(DefaultConstrettoConfiguration root, List<String> tags) {
+        this.onDemandStores = root.onDemandStores;
+        this.converters = root.converters;
+        this.loader = root.loader;
+        this.root = root;
+        this.current = new AtomicReference<>(root.snapshot().withTags(tags));
+        this.tagViews = root.tagViews;
+        this.history = root.history;
+    }
+
+    /**
+     * The current state of the configuration. A view made by {@link #withTags(String...)} follows the values of
+     * the configuration it was made from, and moves to their latest version here.
+     *
+     * @return the current snapshot
+     * @since 3.0
+     */
+    public ConfigurationSnapshot snapshot() {
+        ConfigurationSnapshot snapshot = current.get();
+        if (root != null) {
+            ConfigurationSnapshot rootSnapshot = root.current.get();
+            if (rootSnapshot.version() != snapshot.version()) {
+                ConfigurationSnapshot updated = rootSnapshot.withTags(snapshot.tags());
+                current.compareAndSet(snapshot, updated);
+                return updated;
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * The stored tagged values of this configuration, without the overrides, shared with this configuration rather
+     * than copied. Configurations composed from this one are layered on top of them, and take the overrides as
+     * overrides of their own.
+     *
+     * @return the tagged values of the current snapshot
+     * @since 3.0
+     */
+    public Map<String, List<ConfigurationValue>> taggedValues() {
+        return snapshot().values();
+    }
+
+    /**
+     * @return the stores this configuration looks up values in when they are needed
+     * @since 3.0
+     */
+    public List<OnDemandConfigurationStore> onDemandStores() {
+        return Collections.unmodifiableList(onDemandStores);
+    }
+
+    /**
+     * The scheduler refreshing the stores of this configuration, shared with all its views. It is started the
+     * first time it is asked for.
+     *
+     * @return the refresh scheduler of this configuration
+     * @since 3.0
+     */
+    public RefreshScheduler refreshScheduler() {
+        if (root != null) {
+            return root.refreshScheduler();
+        }
+        synchronized (this) {
+            if (refreshScheduler == null) {
+                refreshScheduler = new RefreshScheduler(this);
+            }
+            return refreshScheduler;
+        }
+    }
+
+    /**
+     * Replaces the values of this configuration and of all its views. Lookups in progress finish against the
+     * values they started with.
+     *
+     * @param configuration the tagged values of every key
+     * @since 3.0
+     */
+    public void update(Map<String, List<ConfigurationValue>> configuration) {
+        if (root != null) {
+            root.update(configuration);
+            return;
+        }
+        ConfigurationSnapshot snapshot;
+        ConfigurationSnapshot updated;
+        do {
+            snapshot = current.get();
+            updated = snapshot.withConfiguration(configuration);
+        } while (!current.compareAndSet(snapshot, updated));
+        published(snapshot, updated);
+    }
+
+    private void published(ConfigurationSnapshot before, ConfigurationSnapshot after) {
+        history.add(after);
+        publishChanges(before, after);
+    }
+
+    /**
+     * @return the versions of the values kept in the history, oldest first
+     * @since 3.0
+     */
+    public List<Long> versions() {
+        return history.versions();
+    }
+
+    /**
+     * An earlier state of the configuration, with the values of the given version resolved with the tags of
+     * this configuration.
+     *
+     * @param version the version of the values
+     * @return the snapshot, or <code>null</code> if the version is no longer kept in the history
+     * @since 3.0
+     */
+    public ConfigurationSnapshot snapshot(long version) {
+        ConfigurationSnapshot snapshot = history.get(version);
+        return snapshot == null ? null : snapshot.withTags(current.get().tags());
+    }
+
+    /**
+     * Brings back the values of an earlier version. The values are published as a new version, so subscribers
+     * get the keys that changed back. The overrides in effect are kept.
+     *
+     * @param version the version to bring back
+     * @throws ConstrettoException if the version is no longer kept in the history
+     * @since 3.0
+     */
+    public void rollback(long version) {
+        ConfigurationSnapshot snapshot = history.get(version);
+        if (snapshot == null) {
+            throw new ConstrettoException("Can not roll back to version " + version + ", the versions kept are " + versions());
+        }
+        update(snapshot.values());
+    }
+
+    /**
+     * Tells the subscribers of this configuration and of its views which keys changed, each with its own tags.
+     */
+    private void publishChanges(ConfigurationSnapshot before, ConfigurationSnapshot after) {
+        List<DefaultConstrettoConfiguration> configurations = tagViews.values();
+        if (!configurations.contains(this)) {
+            configurations.add(this);
+        }
+        for (DefaultConstrettoConfiguration configuration : configurations) {
+            if (configuration.changes.hasSubscribers()) {
+                List<String> tags = configuration.current.get().tags();
+                Set<String> changedKeys = after.withTags(tags).changedKeys(before.withTags(tags));
+                configuration.changes.publish(new ConfigurationChange(before.version(), after.version(), changedKeys));
+            }
+        }
+    }
+
+    public void reload() {
+        if (loader == null) {
+            throw new ConstrettoException("The configuration can not be reloaded, it was not loaded from configuration stores that can be read again");
+        }
+        update(loader.load());
     }
 
     @SuppressWarnings("unchecked")
     public <K> K evaluateTo(String expression, K defaultValue) {
-        if (!hasValue(expression)) {
-            return defaultValue;
+        return lookup((Class<K>) defaultValue.getClass(), expression).orElse(defaultValue);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <K> LookupResult<K> lookup(Class<K> targetClass, String expression) {
+        ConfigurationSnapshot snapshot = snapshot();
+        ConfigurationValue value = findElementOrNull(snapshot, expression);
+        if (value == null) {
+            return LookupResult.missing(expression, snapshot.tags());
         }
-        K value;
         try {
-            value = (K) processAndConvert(defaultValue.getClass(), expression);
+            return LookupResult.found(expression, (K) converters.convert(targetClass, targetClass, value.value()));
         } catch (ConstrettoConversionException e) {
-            value = null;
+            return LookupResult.conversionFailed(expression, e);
         }
-        return null != value ? value : defaultValue;
+    }
+
+    public BatchResult<CValue> evaluateAll(Collection<String> expressions) {
+        String[] sortedExpressions = BatchResult.sortedExpressions(expressions);
+        Object[] values = new Object[sortedExpressions.length];
+        ConfigurationSnapshot snapshot = snapshot();
+        for (int i = 0; i < sortedExpressions.length; i++) {
+            ConfigurationValue value = findElementOrNull(snapshot, sortedExpressions[i]);
+            values[i] = value == null ? null : value.value();
+        }
+        return BatchResult.of(sortedExpressions, values, snapshot.tags());
+    }
+
+    public <K> BatchResult<K> evaluateAll(Class<K> targetClass, Collection<String> expressions) {
+        String[] sortedExpressions = BatchResult.sortedExpressions(expressions);
+        Object[] values = new Object[sortedExpressions.length];
+        CompiledConverter<?> converter = converters.compile(targetClass, null);
+        ConfigurationSnapshot snapshot = snapshot();
+        for (int i = 0; i < sortedExpressions.length; i++) {
+            ConfigurationValue value = findElementOrNull(snapshot, sortedExpressions[i]);
+            values[i] = value == null ? null : converter.convert(value.value());
+        }
+        return BatchResult.of(sortedExpressions, values, snapshot.tags());
     }
 
     public <T> T evaluateWith(GenericConverter<T> converter, String expression) {
@@ -83,16 +340,34 @@ public class DefaultConstrettoConfiguration implements ConstrettoConfiguration {
         return findElementOrThrowException(expression).value();
     }
 
+    @SuppressWarnings("unchecked")
+    public <T> T evaluateToType(Type targetType, String expression) {
+        ConfigurationValue value = findElementOrThrowException(expression);
+        return (T) converters.compile(targetType, null).convert(value.value());
+    }
+
+    public int[] evaluateToIntArray(String expression) {
+        return ((int[]) primitiveArray(snapshot(), int[].class, expression)).clone();
+    }
+
+    public long[] evaluateToLongArray(String expression) {
+        return ((long[]) primitiveArray(snapshot(), long[].class, expression)).clone();
+    }
+
+    public double[] evaluateToDoubleArray(String expression) {
+        return ((double[]) primitiveArray(snapshot(), double[].class, expression)).clone();
+    }
+
     @SuppressWarnings("unchecked")
     public <K> List<K> evaluateToList(Class<K> targetClass, String expression) {
         ConfigurationValue value = findElementOrThrowException(expression);
-        return (List<K>) ValueConverterRegistry.convert(targetClass, targetClass, value.value());
+        return (List<K>) converters.convert(targetClass, targetClass, value.value());
     }
 
     @SuppressWarnings("unchecked")
     public <K, V> Map<K, V> evaluateToMap(Class<K> keyClass, Class<V> valueClass, String expression) {
         ConfigurationValue value = findElementOrThrowException(expression);
-        return (Map<K, V>) ValueConverterRegistry.convert(valueClass, keyClass, value.value());
+        return (Map<K, V>) converters.convert(valueClass, keyClass, value.value());
     }
 
     public <K> K evaluateTo(Class<K> targetClass, String expression) throws ConstrettoExpressionException {
@@ -131,10 +406,144 @@ public class DefaultConstrettoConfiguration implements ConstrettoConfiguration {
         return processAndConvert(Byte.class, expression);
     }
 
+    public void override(String key, String value) {
+        override(key, value, null, 0, TimeUnit.MILLISECONDS);
+    }
+
+    public void override(final String key, String value, String tag, long ttl, TimeUnit unit) {
+        if (root != null) {
+            root.override(key, value, tag, ttl, unit);
+            return;
+        }
+        final String overrideTag = tag == null ? ConfigurationValue.DEFAULT_TAG : tag;
+        long expiresAt = ttl > 0 ? System.currentTimeMillis() + unit.toMillis(ttl) : 0;
+        final OverrideValue override = new OverrideValue(parser.parse(value), overrideTag, value, expiresAt);
+        replaceOverride(key, overrideTag, null, override);
+        if (ttl > 0) {
+            OVERRIDE_EXPIRY.schedule(new Runnable() {
+                public void run() {
+                    replaceOverride(key, overrideTag, override, null);
+                }
+            }, ttl, unit);
+        }
+    }
+
+    public List<ConfigurationOverride> overrides() {
+        List<ConfigurationOverride> overrides = new ArrayList<>();
+        for (Map.Entry<String, List<ConfigurationValue>> entry : new TreeMap<>(snapshot().overrides()).entrySet()) {
+            for (ConfigurationValue value : entry.getValue()) {
+                OverrideValue override = (OverrideValue) value;
+                String tag = ConfigurationValue.DEFAULT_TAG.equals(override.tag()) ? null : override.tag();
+                overrides.add(new ConfigurationOverride(entry.getKey(), tag, override.rawValue, override.expiresAt));
+            }
+        }
+        return overrides;
+    }
+
+    public boolean removeOverride(String key, String tag) {
+        if (root != null) {
+            return root.removeOverride(key, tag);
+        }
+        return replaceOverride(key, tag == null ? ConfigurationValue.DEFAULT_TAG : tag, null, null);
+    }
+
+    public void clearOverrides() {
+        if (root != null) {
+            root.clearOverrides();
+            return;
+        }
+        ConfigurationSnapshot snapshot;
+        ConfigurationSnapshot updated;
+        do {
+            snapshot = current.get();
+            if (snapshot.overrides().isEmpty()) {
+                return;
+            }
+            updated = snapshot.withOverrides(PersistentConfigurationMap.empty());
+        } while (!current.compareAndSet(snapshot, updated));
+        published(snapshot, updated);
+    }
+
+    /**
+     * Sets or removes the override of a key for one tag in a new snapshot.
+     *
+     * @param expected    the override to replace, or null to replace any override of the key and tag
+     * @param replacement the new override, or null to remove the override
+     * @return false if there was nothing to remove, or the override was not the expected one
+     */
+    private boolean replaceOverride(String key, String tag, ConfigurationValue expected, ConfigurationValue replacement) {
+        ConfigurationSnapshot snapshot;
+        ConfigurationSnapshot updated;
+        do {
+            snapshot = current.get();
+            PersistentConfigurationMap overrides = (PersistentConfigurationMap) snapshot.overrides();
+            List<ConfigurationValue> values = overrides.get(key);
+            List<ConfigurationValue> updatedValues = new ArrayList<>();
+            ConfigurationValue existing = null;
+            if (values != null) {
+                for (ConfigurationValue value : values) {
+                    if (value.tag().equals(tag)) {
+                        existing = value;
+                    } else {
+                        updatedValues.add(value);
+                    }
+                }
+            }
+            if ((expected != null && existing != expected) || (existing == null && replacement == null)) {
+                return false;
+            }
+            if (replacement != null) {
+                updatedValues.add(replacement);
+            }
+            updated = snapshot.withOverrides(updatedValues.isEmpty() ? overrides.without(key)
+                    : overrides.with(key, Collections.unmodifiableList(updatedValues)));
+        } while (!current.compareAndSet(snapshot, updated));
+        published(snapshot, updated);
+        return true;
+    }
+
+    public <T> Subscription subscribe(final String key, final Class<T> type, final Consumer<T> consumer) {
+        Subscription subscription = changes.subscribe(new Consumer<ConfigurationChange>() {
+            public void accept(ConfigurationChange change) {
+                LookupResult<T> value = lookup(type, key);
+                if (!value.isMissing()) {
+                    consumer.accept(value.get());
+                }
+            }
+        }, key);
+        tagViews.listening(this);
+        return subscription;
+    }
+
+    public Subscription subscribe(Consumer<ConfigurationChange> consumer) {
+        Subscription subscription = changes.subscribe(consumer, null);
+        tagViews.listening(this);
+        return subscription;
+    }
+
+    public ConstrettoConfiguration withTags(String... tags) {
+        List<String> tagList = Collections.unmodifiableList(new ArrayList<>(Arrays.asList(tags)));
+        if (tagList.equals(current.get().tags())) {
+            return this;
+        }
+        synchronized (tagViews) {
+            DefaultConstrettoConfiguration view = tagViews.get(tagList);
+            if (view == null) {
+                view = new DefaultConstrettoConfiguration(root != null ? root : this, tagList);
+                tagViews.put(tagList, view);
+            }
+            return view;
+        }
+    }
+
     public <T> T as(Class<T> configurationClass) throws ConstrettoException {
+        if (configurationClass.isInterface()) {
+            return ConfigurationInterfaceView.create(this, configurationClass);
+        }
+        ConfigurationSnapshot snapshot = snapshot();
         T objectToConfigure;
         try {
-            objectToConfigure = createInstance(configurationClass);
+            objectToConfigure = createInstance(snapshot, configurationClass);
         } catch (ConstrettoException e) {
             throw e;
         }
@@ -142,21 +551,93 @@ public class DefaultConstrettoConfiguration implements ConstrettoConfiguration {
             throw new ConstrettoException("Could not instansiate class of type: " + configurationClass.getName()
                     + " when trying to inject it with configuration, It may be missing a default or @Configure annotated constructor", e);
         }
-        injectConfiguration(objectToConfigure);
+        injectConfiguration(snapshot, objectToConfigure);
         return objectToConfigure;
     }
 
     public <T> T on(T objectToConfigure) throws ConstrettoException {
-        injectConfiguration(objectToConfigure);
+        injectConfiguration(snapshot(), objectToConfigure);
         return objectToConfigure;
     }
 
+    public <T> Subscription bind(T objectToConfigure) throws ConstrettoException {
+        final LiveBinding binding = new LiveBinding(objectToConfigure, planFor(objectToConfigure.getClass()));
+        ConfigurationSnapshot snapshot = snapshot();
+        synchronized (binding) {
+            injectConfiguration(snapshot, objectToConfigure);
+        }
+        liveBindings.add(binding);
+        tagViews.listening(this);
+        subscribeLiveBindings();
+        ConfigurationSnapshot latest = snapshot();
+        if (latest.version() != snapshot.version()) {
+            synchronized (binding) {
+                injectConfiguration(latest, objectToConfigure);
+            }
+        }
+        return new Subscription() {
+            public void cancel() {
+                liveBindings.remove(binding);
+                unsubscribeUnusedLiveBindings();
+            }
+        };
+    }
+
+    private synchronized void subscribeLiveBindings() {
+        if (liveBindingSubscription != null) {
+            return;
+        }
+        liveBindingSubscription = changes.subscribe(new Consumer<ConfigurationChange>() {
+            public void accept(ConfigurationChange change) {
+                ConfigurationSnapshot snapshot = snapshot();
+                RuntimeException failure = null;
+                for (LiveBinding binding : liveBindings) {
+                    Object target = binding.target.get();
+                    if (target == null) {
+                        liveBindings.remove(binding);
+                        continue;
+                    }
+                    try {
+                        refresh(snapshot, binding, target, change.keys());
+                    } catch (RuntimeException e) {
+                        if (failure == null) {
+                            failure = e;
+                        }
+                    }
+                }
+                unsubscribeUnusedLiveBindings();
+                if (failure != null) {
+                    throw failure;
+                }
+            }
+        }, null);
+    }
+
+    /**
+     * Stops listening for changes once the last bound object is cancelled or collected.
+     */
+    private synchronized void unsubscribeUnusedLiveBindings() {
+        if (liveBindingSubscription != null && liveBindings.isEmpty()) {
+            liveBindingSubscription.cancel();
+            liveBindingSubscription = null;
+        }
+    }
+
     public Map<String, String> asMap() {
+        ConfigurationSnapshot snapshot = snapshot();
+        Set<String> keys = snapshot.values().keySet();
+        if (!onDemandStores.isEmpty() || !snapshot.overrides().isEmpty()) {
+            keys = new HashSet<>(keys);
+            keys.addAll(snapshot.overrides().keySet());
+            for (OnDemandConfigurationStore onDemandStore : onDemandStores) {
+                keys.addAll(onDemandStore.keys());
+            }
+        }
         Map<String, String> properties = new HashMap<>();
-        for (Map.Entry<String, List<ConfigurationValue>> entry : configuration.entrySet()) {
-            ConfigurationValue value = findElementOrNull(entry.getKey());
+        for (String key : keys) {
+            ConfigurationValue value = findElementOrNull(snapshot, key);
             if (value != null){
-                properties.put(entry.getKey(), value.value().toString());
+                properties.put(key, value.value().toString());
             }
         }
         return properties;
@@ -178,12 +659,9 @@ public class DefaultConstrettoConfiguration implements ConstrettoConfiguration {
     //
     // Helper methods
     //
-    private <T> T createInstance(final Class<T> configurationClass) throws InstantiationException, IllegalAccessException {
+    private <T> T createInstance(ConfigurationSnapshot snapshot, final Class<T> configurationClass) throws InstantiationException, IllegalAccessException {
 
 
-        if(configurationClass.isInterface()) {
-            throw new ConstrettoException("Can not instantiate interfaces. You need to create an concrete implementing class first");
-        }
         if (configurationClass.isAnonymousClass()) {
             throw new ConstrettoException("Can not instantiate anonymous classes using as(Class<T>. To inject configuration in to inner or anonymous classes, " +
                                                   "instantiate it first and call the on(T configuredObjecT) method");
@@ -200,7 +678,7 @@ public class DefaultConstrettoConfiguration implements ConstrettoConfiguration {
                 throw new ConstrettoException("More than one @Configure annotated constructor defined for class \"" + configurationClass.getName() + "\". It can only be one");
             }
             Constructor<T> constructor = annotatedConstructors[0];
-            final Object[] resolvedParameters = resolveParameters(constructor);
+            final Object[] resolvedParameters = resolveParameters(snapshot, constructor);
             try {
                 constructor.setAccessible(true);
                 return constructor.newInstance(resolvedParameters);
@@ -216,91 +694,166 @@ public class DefaultConstrettoConfiguration implements ConstrettoConfiguration {
     }
 
     protected ConfigurationValue findElementOrThrowException(String expression) {
-        if (!configuration.containsKey(expression)) {
-            throw new ConstrettoExpressionException(expression, currentTags);
-        }
-        List<ConfigurationValue> values = configuration.get(expression);
-        ConfigurationValue resolvedNode = resolveMatch(values);
+        return findElementOrThrowException(snapshot(), expression);
+    }
+
+    private ConfigurationValue findElementOrThrowException(ConfigurationSnapshot snapshot, String expression) {
+        ConfigurationValue resolvedNode = findElementOrNull(snapshot, expression);
         if (resolvedNode == null) {
-            throw new ConstrettoExpressionException(expression, currentTags);
-        }
-        if (resolvedNode.value().containsVariables()) {
-            for (String key : resolvedNode.value().referencedKeys()) {
-                resolvedNode.value().replace(key, evaluateToString(key));
-            }
+            throw new ConstrettoExpressionException(expression, snapshot.tags());
         }
         return resolvedNode;
     }
 
-
     protected ConfigurationValue findElementOrNull(String expression) {
-        if (!configuration.containsKey(expression)) {
-            return null;
+        return findElementOrNull(snapshot(), expression);
+    }
+
+    /**
+     * Finds the value of the expression for the current tags. Values with variables are resolved into a copy, so
+     * the stored value can be resolved differently for other tags, and the copy is kept in the snapshot.
+     */
+    ConfigurationValue findElementOrNull(ConfigurationSnapshot snapshot, String expression) {
+        ConfigurationValue resolvedNode = snapshot.resolvedValues.get(expression);
+        if (resolvedNode != null) {
+            return resolvedNode;
         }
-        List<ConfigurationValue> values = configuration.get(expression);
-        ConfigurationValue resolvedNode = resolveMatch(values);
+        resolvedNode = snapshot.matchOverride(expression);
         if (resolvedNode == null) {
-            return null;
+            List<ConfigurationValue> values = valuesFor(snapshot, expression);
+            if (values == null) {
+                return null;
+            }
+            resolvedNode = snapshot.match(values);
+            if (resolvedNode == null) {
+                return null;
+            }
         }
         if (resolvedNode.value().containsVariables()) {
-            for (String key : resolvedNode.value().referencedKeys()) {
-                resolvedNode.value().replace(key, evaluateToString(key));
+            CValue value = copyOf(resolvedNode.value());
+            for (String key : value.referencedKeys()) {
+                CValue resolvedKey = findElementOrThrowException(snapshot, key).value();
+                value.replace(key, (String) converters.convert(String.class, String.class, resolvedKey));
+            }
+            resolvedNode = new ConfigurationValue(value, resolvedNode.tag());
+            ConfigurationValue previous = snapshot.resolvedValues.putIfAbsent(expression, resolvedNode);
+            if (previous != null) {
+                resolvedNode = previous;
             }
         }
         return resolvedNode;
     }
 
+    private static CValue copyOf(CValue value) {
+        if (value == null || !value.containsVariables()) {
+            return value;
+        } else if (value instanceof CArray) {
+            List<CValue> elements = new ArrayList<>();
+            for (CValue element : ((CArray) value).data()) {
+                elements.add(copyOf(element));
+            }
+            return new CArray(elements);
+        } else if (value instanceof CObject) {
+            Map<String, CValue> entries = new LinkedHashMap<>();
+            for (Map.Entry<String, CValue> entry : ((CObject) value).data().entrySet()) {
+                entries.put(entry.getKey(), copyOf(entry.getValue()));
+            }
+            return new CObject(entries);
+        }
+        return new CPrimitive(((CPrimitive) value).value());
+    }
+
+    /**
+     * Finds all the tagged values of a key, including values from the on demand stores.
+     *
+     * @param key the key to look up
+     * @return the values, or null if no store has a value for the key
+     */
+    protected List<ConfigurationValue> valuesFor(String key) {
+        return valuesFor(snapshot(), key);
+    }
+
+    private List<ConfigurationValue> valuesFor(ConfigurationSnapshot snapshot, String key) {
+        List<ConfigurationValue> values = snapshot.values().get(key);
+        if (onDemandStores.isEmpty()) {
+            return values;
+        }
+        List<ConfigurationValue> onDemand = snapshot.onDemandValues.get(key);
+        if (onDemand == null) {
+            onDemand = new ArrayList<>();
+            for (OnDemandConfigurationStore onDemandStore : onDemandStores) {
+                onDemand.addAll(onDemandStore.lookup(key));
+            }
+            if (onDemand.isEmpty()) {
+                return values;
+            }
+            // only values found are kept, so looking up arbitrary missing keys does not grow the cache
+            List<ConfigurationValue> previous = snapshot.onDemandValues.putIfAbsent(key, onDemand);
+            if (previous != null) {
+                onDemand = previous;
+            }
+        }
+        if (onDemand.isEmpty()) {
+            return values;
+        } else if (values == null) {
+            return onDemand;
+        }
+        List<ConfigurationValue> allValues = new ArrayList<>(values.size() + onDemand.size());
+        allValues.addAll(values);
+        allValues.addAll(onDemand);
+        return allValues;
+    }
+
     @SuppressWarnings("unchecked")
     private <T> T processAndConvert(Class<T> clazz, String expression) throws ConstrettoException {
-        ConfigurationValue value = findElementOrThrowException(expression);
-        return (T) ValueConverterRegistry.convert(clazz, clazz, value.value());
+        ConfigurationValue value = findElementOrThrowException(snapshot(), expression);
+        return (T) converters.convert(clazz, clazz, value.value());
     }
 
-    private ConfigurationValue resolveMatch(List<ConfigurationValue> values) {
-        ConfigurationValue bestMatch = null;
-        for (ConfigurationValue configurationNode : values) {
-            if (ConfigurationValue.DEFAULT_TAG.equals(configurationNode.tag())) {
-                if (bestMatch == null || bestMatch.tag().equals(ConfigurationValue.DEFAULT_TAG)) {
-                    bestMatch = configurationNode;
-                }
-            } else if (currentTags.contains(configurationNode.tag())) {
-                if (bestMatch == null) {
-                    bestMatch = configurationNode;
-                } else {
-                    int previousFoundPriority =
-                            ConfigurationValue.DEFAULT_TAG.equals(bestMatch.tag()) ?
-                                    Integer.MAX_VALUE : currentTags.indexOf(bestMatch.tag());
-                    if (currentTags.indexOf(configurationNode.tag()) <= previousFoundPriority) {
-                        bestMatch = configurationNode;
-                    }
-                }
-            } else if (ConfigurationValue.ALL_TAG.equals(configurationNode.tag())) {
-                bestMatch = configurationNode;
-            }
+    /**
+     * Parses int, long and double arrays once per snapshot. Callers must copy the returned array.
+     */
+    private Object primitiveArray(ConfigurationSnapshot snapshot, Class<?> arrayType, String expression) {
+        ArrayKey key = new ArrayKey(arrayType, expression);
+        Object array = snapshot.primitiveArrays.get(key);
+        if (array == null) {
+            ConfigurationValue value = findElementOrThrowException(snapshot, expression);
+            array = converters.compile(arrayType, null).convert(value.value());
+            snapshot.primitiveArrays.putIfAbsent(key, array);
         }
-        return bestMatch;
+        return array;
+    }
+
+    private static boolean isPrimitiveArray(Class<?> type) {
+        return type == int[].class || type == long[].class || type == double[].class;
     }
 
-    private <T> void injectConfiguration(T objectToConfigure) {
-        injectFields(objectToConfigure);
-        injectMethods(objectToConfigure);
+    private <T> void injectConfiguration(ConfigurationSnapshot snapshot, T objectToConfigure) {
+        injectFields(snapshot, objectToConfigure);
+        injectMethods(snapshot, objectToConfigure);
     }
 
-    private Object[] resolveParameters(AccessibleObject accessibleObject) throws IllegalAccessException, InstantiationException {
+    private Object[] resolveParameters(ConfigurationSnapshot snapshot, AccessibleObject accessibleObject) throws IllegalAccessException, InstantiationException {
         Annotation[][] methodAnnotations;
         String[] parameterNames;
         Class<?>[] parameterTargetTypes;
+        Type[] genericParameterTypes;
+        Class<?> declaringClass;
 
         if(accessibleObject instanceof Method) {
             Method method = (Method) accessibleObject;
             methodAnnotations = method.getParameterAnnotations();
             parameterNames = paranamer.lookupParameterNames(method);
             parameterTargetTypes = method.getParameterTypes();
+            genericParameterTypes = method.getGenericParameterTypes();
+            declaringClass = method.getDeclaringClass();
         } else if(accessibleObject instanceof Constructor) {
             Constructor constructor = (Constructor) accessibleObject;
             methodAnnotations = constructor.getParameterAnnotations();
             parameterNames = paranamer.lookupParameterNames(constructor);
             parameterTargetTypes = constructor.getParameterTypes();
+            genericParameterTypes = constructor.getGenericParameterTypes();
+            declaringClass = constructor.getDeclaringClass();
         } else {
             throw new ConstrettoException("Could not resolve parameter names ");
         }
@@ -320,7 +873,7 @@ public class DefaultConstrettoConfiguration implements ConstrettoConfiguration {
                         required = configurationAnnotation.required();
                         if (hasAnnotationDefaults(configurationAnnotation)) {
                             if (configurationAnnotation.defaultValueFactory().equals(Configuration.EmptyValueFactory.class)) {
-                                defaultValue = ValueConverterRegistry.convert(parameterTargetClass, parameterTargetClass, new CPrimitive(configurationAnnotation.defaultValue()));
+                                defaultValue = converters.convert(parameterTargetClass, parameterTargetClass, new CPrimitive(configurationAnnotation.defaultValue()));
                             } else {
                                 ConfigurationDefaultValueFactory valueFactory = configurationAnnotation.defaultValueFactory().newInstance();
                                 defaultValue = valueFactory.getDefaultValue();
@@ -329,27 +882,11 @@ public class DefaultConstrettoConfiguration implements ConstrettoConfiguration {
                     }
                 }
             }
-            if (expression.equals("")) {
-                if (parameterNames == null) {
-                    throw new ConstrettoException("Could not resolve the expression of the property to look up. " +
-                                                          "The cause of this could be that the class is compiled without debug enabled. " +
-                                                          "when a class is compiled without debug, the @Configuration with a value attribute is required " +
-                                                          "to correctly resolve the property expression.");
-                } else {
-                    expression = parameterNames[i];
-                }
-            }
-            if (hasValue(expression)) {
-                if (parameterTargetClass.isAssignableFrom(List.class)) {
-                    Class<?> collectionParameterType = getCollectionParameterType(createMethodParameter(accessibleObject, i));
-                    resolvedArguments[i] = evaluateToList(collectionParameterType, expression);
-                } else if (parameterTargetClass.isAssignableFrom(Map.class)) {
-                    Class<?> mapKeyType = getMapKeyParameterType(createMethodParameter(accessibleObject, i));
-                    Class<?> mapValueType = getMapValueParameterType(createMethodParameter(accessibleObject, i));
-                    resolvedArguments[i] = evaluateToMap(mapKeyType, mapValueType, expression);
-                } else {
-                    resolvedArguments[i] = processAndConvert(parameterTargetClass, expression);
-                }
+            expression = parameterExpression(expression, parameterNames, i);
+            ConfigurationValue node = findElementOrNull(snapshot, expression);
+            if (node != null) {
+                Type parameterTargetType = genericParameterTypes.length == parameterTargetTypes.length ? genericParameterTypes[i] : parameterTargetClass;
+                resolvedArguments[i] = converters.compile(parameterTargetType, declaringClass).convert(node.value());
 
             } else {
                 if (defaultValue != null || !required) {
@@ -357,12 +894,12 @@ public class DefaultConstrettoConfiguration implements ConstrettoConfiguration {
                 } else {
                     if(accessibleObject instanceof Constructor) {
                         Constructor constructor = (Constructor) accessibleObject;
-                        throw new ConstrettoException("Missing value or default value for expression [" + expression + "], in annotated constructor in class [" + constructor.getClass().getName() + "], with tags " + currentTags + ".");
+                        throw new ConstrettoException("Missing value or default value for expression [" + expression + "], in annotated constructor in class [" + constructor.getClass().getName() + "], with tags " + snapshot.tags() + ".");
 
                     }
                     else {
                         Method method = (Method) accessibleObject;
-                        throw new ConstrettoException("Missing value or default value for expression [" + expression + "], in method [" + method.getName() + "], in class [" + method.getClass().getName() + "], with tags " + currentTags + ".");
+                        throw new ConstrettoException("Missing value or default value for expression [" + expression + "], in method [" + method.getName() + "], in class [" + method.getClass().getName() + "], with tags " + snapshot.tags() + ".");
 
                     }
                 }
@@ -374,87 +911,334 @@ public class DefaultConstrettoConfiguration implements ConstrettoConfiguration {
 
     }
 
-    private <T> void injectMethods(T objectToConfigure) {
+    private static String parameterExpression(String expression, String[] parameterNames, int index) {
+        if (!expression.equals("")) {
+            return expression;
+        }
+        if (parameterNames == null) {
+            throw new ConstrettoException("Could not resolve the expression of the property to look up. " +
+                                                  "The cause of this could be that the class is compiled without debug enabled. " +
+                                                  "when a class is compiled without debug, the @Configuration with a value attribute is required " +
+                                                  "to correctly resolve the property expression.");
+        }
+        return parameterNames[index];
+    }
+
+    private <T> void injectMethods(ConfigurationSnapshot snapshot, T objectToConfigure) {
         Method[] methods = objectToConfigure.getClass().getMethods();
         for (Method method : methods) {
-            try {
-                if (method.isAnnotationPresent(Configure.class)) {
-                    Object[] resolvedArguments = resolveParameters(method);
-                    method.setAccessible(true);
-                    method.invoke(objectToConfigure, resolvedArguments);
-
-                }
-            } catch (IllegalAccessException e) {
-                throw new ConstrettoException("Cold not invoke method ["
-                                                      + method.getName() + "] annotated with @Configured,", e);
-            } catch (InvocationTargetException e) {
-                throw new ConstrettoException("Cold not invoke method ["
-                                                      + method.getName() + "] annotated with @Configured,", e);
-            } catch (InstantiationException e) {
-                throw new ConstrettoException("Cold not invoke method ["
-                                                      + method.getName() + "] annotated with @Configured,", e);
+            if (method.isAnnotationPresent(Configure.class)) {
+                injectMethod(snapshot, objectToConfigure, method);
             }
         }
     }
 
-    private <T extends AccessibleObject> MethodParameter createMethodParameter(T accessibleObject, final int parameterIndex) {
-        if(accessibleObject instanceof Constructor) {
-            return new MethodParameter((Constructor) accessibleObject, parameterIndex);
-        } else {
-            return new MethodParameter((Method) accessibleObject, parameterIndex);
+    private void injectMethod(ConfigurationSnapshot snapshot, Object objectToConfigure, Method method) {
+        try {
+            Object[] resolvedArguments = resolveParameters(snapshot, method);
+            method.setAccessible(true);
+            method.invoke(objectToConfigure, resolvedArguments);
+        } catch (IllegalAccessException e) {
+            throw new ConstrettoException("Cold not invoke method ["
+                                                  + method.getName() + "] annotated with @Configured,", e);
+        } catch (InvocationTargetException e) {
+            throw new ConstrettoException("Cold not invoke method ["
+                                                  + method.getName() + "] annotated with @Configured,", e);
+        } catch (InstantiationException e) {
+            throw new ConstrettoException("Cold not invoke method ["
+                                                  + method.getName() + "] annotated with @Configured,", e);
         }
     }
 
-    private <T> void injectFields(T objectToConfigure) {
+    private <T> void injectFields(ConfigurationSnapshot snapshot, T objectToConfigure) {
 
         Class objectToConfigureClass = objectToConfigure.getClass();
 
         do {
             Field[] fields = objectToConfigureClass.getDeclaredFields();
             for (Field field : fields) {
-                try {
-                    if (field.isAnnotationPresent(Configuration.class)) {
-                        Configuration configurationAnnotation = field.getAnnotation(Configuration.class);
-                        String expression = "".equals(configurationAnnotation.value()) ? field.getName() : configurationAnnotation.value();
-                        field.setAccessible(true);
-                        Class<?> fieldType = field.getType();
-                        if (hasValue(expression)) {
-                            ConfigurationValue node = findElementOrThrowException(expression);
-                            if (fieldType.isAssignableFrom(List.class)) {
-                                field.set(objectToConfigure, evaluateToList(getCollectionFieldType(field), expression));
-                            } else if (fieldType.isAssignableFrom(Map.class)) {
-                                field.set(objectToConfigure, evaluateToMap(getMapKeyFieldType(field), getMapValueFieldType(field), expression));
-                            } else {
-                                field.set(objectToConfigure, processAndConvert(fieldType, expression));
-                            }
+                injectField(snapshot, objectToConfigure, field);
+            }
+        } while ((objectToConfigureClass = objectToConfigureClass.getSuperclass()) != null);
+    }
+
+    private void injectField(ConfigurationSnapshot snapshot, Object objectToConfigure, Field field) {
+        injectField(snapshot, objectToConfigure, field, false);
+    }
+
+    /**
+     * @param resetMissing whether an optional field without a value or default is reset to null, or zero for
+     *                     primitives, instead of being left as it is
+     */
+    private void injectField(ConfigurationSnapshot snapshot, Object objectToConfigure, Field field, boolean resetMissing) {
+        try {
+            if (field.isAnnotationPresent(Configuration.class)) {
+                Configuration configurationAnnotation = field.getAnnotation(Configuration.class);
+                String expression = fieldExpression(field);
+                field.setAccessible(true);
+                Class<?> fieldType = field.getType();
+                ConfigurationValue node = findElementOrNull(snapshot, expression);
+                if (node != null) {
+                    if (isPrimitiveArray(fieldType)) {
+                        field.set(objectToConfigure, copyOf(primitiveArray(snapshot, fieldType, expression)));
+                    } else {
+                        field.set(objectToConfigure, converters.compile(field.getGenericType(), objectToConfigure.getClass()).convert(node.value()));
+                    }
+                } else {
+                    if (hasAnnotationDefaults(configurationAnnotation)) {
+                        if (configurationAnnotation.defaultValueFactory().equals(Configuration.EmptyValueFactory.class)) {
+                            field.set(objectToConfigure, converters.convert(fieldType, fieldType, new CPrimitive(configurationAnnotation.defaultValue())));
                         } else {
-                            if (hasAnnotationDefaults(configurationAnnotation)) {
-                                if (configurationAnnotation.defaultValueFactory().equals(Configuration.EmptyValueFactory.class)) {
-                                    field.set(objectToConfigure, ValueConverterRegistry.convert(fieldType, fieldType, new CPrimitive(configurationAnnotation.defaultValue())));
-                                } else {
-                                    ConfigurationDefaultValueFactory valueFactory = configurationAnnotation.defaultValueFactory().newInstance();
-                                    field.set(objectToConfigure, valueFactory.getDefaultValue());
-                                }
-                            } else if (configurationAnnotation.required()) {
-                                throw new ConstrettoException("Missing value or default value for expression [" + expression + "] for field [" + field.getName() + "], in class [" + objectToConfigure.getClass().getName() + "] with tags " + currentTags + ".");
-                            }
+                            ConfigurationDefaultValueFactory valueFactory = configurationAnnotation.defaultValueFactory().newInstance();
+                            field.set(objectToConfigure, valueFactory.getDefaultValue());
                         }
-                    } else if (field.isAnnotationPresent(Tags.class)) {
-                        field.setAccessible(true);
-                        field.set(objectToConfigure, currentTags);
+                    } else if (configurationAnnotation.required()) {
+                        throw new ConstrettoException("Missing value or default value for expression [" + expression + "] for field [" + field.getName() + "], in class [" + objectToConfigure.getClass().getName() + "] with tags " + snapshot.tags() + ".");
+                    } else if (resetMissing) {
+                        field.set(objectToConfigure, fieldType.isPrimitive() ? Array.get(Array.newInstance(fieldType, 1), 0) : null);
                     }
-                } catch (IllegalAccessException e) {
-                    throw new ConstrettoException("Cold not inject configuration into field ["
-                            + field.getName() + "] annotated with @Configuration, in class [" + objectToConfigure.getClass().getName() + "] with tags " + currentTags, e);
-                } catch (InstantiationException e) {
-                    throw new ConstrettoException("Cold not inject configuration into field ["
-                            + field.getName() + "] annotated with @Configuration, in class [" + objectToConfigure.getClass().getName() + "] with tags " + currentTags, e);
                 }
+            } else if (field.isAnnotationPresent(Tags.class)) {
+                field.setAccessible(true);
+                field.set(objectToConfigure, snapshot.tags());
             }
-        } while ((objectToConfigureClass = objectToConfigureClass.getSuperclass()) != null);
+        } catch (IllegalAccessException e) {
+            throw new ConstrettoException("Cold not inject configuration into field ["
+                    + field.getName() + "] annotated with @Configuration, in class [" + objectToConfigure.getClass().getName() + "] with tags " + snapshot.tags(), e);
+        } catch (InstantiationException e) {
+            throw new ConstrettoException("Cold not inject configuration into field ["
+                    + field.getName() + "] annotated with @Configuration, in class [" + objectToConfigure.getClass().getName() + "] with tags " + snapshot.tags(), e);
+        }
+    }
+
+    private static String fieldExpression(Field field) {
+        String value = field.getAnnotation(Configuration.class).value();
+        return "".equals(value) ? field.getName() : value;
     }
 
-    private boolean hasAnnotationDefaults(Configuration configurationAnnotation) {
+    /**
+     * Finds the @Configuration fields and @Configure methods of a class, with the keys they are injected from.
+     */
+    private BindingPlan planFor(Class<?> boundClass) {
+        BindingPlan plan = bindingPlans.get(boundClass);
+        if (plan != null) {
+            return plan;
+        }
+        Map<Field, String> fields = new LinkedHashMap<>();
+        Class<?> type = boundClass;
+        do {
+            for (Field field : type.getDeclaredFields()) {
+                if (field.isAnnotationPresent(Configuration.class)) {
+                    fields.put(field, fieldExpression(field));
+                }
+            }
+        } while ((type = type.getSuperclass()) != null);
+        Map<Method, Set<String>> methods = new LinkedHashMap<>();
+        for (Method method : boundClass.getMethods()) {
+            if (method.isAnnotationPresent(Configure.class)) {
+                String[] parameterNames = paranamer.lookupParameterNames(method);
+                Annotation[][] parameterAnnotations = method.getParameterAnnotations();
+                Set<String> expressions = new HashSet<>();
+                for (int i = 0; i < parameterAnnotations.length; i++) {
+                    String expression = "";
+                    for (Annotation parameterAnnotation : parameterAnnotations[i]) {
+                        if (parameterAnnotation.annotationType() == Configuration.class) {
+                            expression = ((Configuration) parameterAnnotation).value();
+                        }
+                    }
+                    expressions.add(parameterExpression(expression, parameterNames, i));
+                }
+                methods.put(method, expressions);
+            }
+        }
+        plan = new BindingPlan(fields, methods);
+        BindingPlan previous = bindingPlans.putIfAbsent(boundClass, plan);
+        return previous != null ? previous : plan;
+    }
+
+    /**
+     * Injects the members of a bound object whose keys are among the changed keys, all from the same snapshot.
+     */
+    private void refresh(ConfigurationSnapshot snapshot, LiveBinding binding, Object target, Set<String> changedKeys) {
+        synchronized (binding) {
+            for (Map.Entry<Field, String> field : binding.plan.fields.entrySet()) {
+                if (changedKeys.contains(field.getValue())) {
+                    injectField(snapshot, target, field.getKey(), true);
+                }
+            }
+            for (Map.Entry<Method, Set<String>> method : binding.plan.methods.entrySet()) {
+                if (!Collections.disjoint(changedKeys, method.getValue())) {
+                    injectMethod(snapshot, target, method.getKey());
+                }
+            }
+        }
+    }
+
+    static Object copyOf(Object primitiveArray) {
+        int length = Array.getLength(primitiveArray);
+        Object copy = Array.newInstance(primitiveArray.getClass().getComponentType(), length);
+        System.arraycopy(primitiveArray, 0, copy, 0, length);
+        return copy;
+    }
+
+    ValueConverterScope converters() {
+        return converters;
+    }
+
+    static boolean hasAnnotationDefaults(Configuration configurationAnnotation) {
         return !("N/A".equals(configurationAnnotation.defaultValue()) && configurationAnnotation.defaultValueFactory().equals(Configuration.EmptyValueFactory.class));
     }
+
+    static class ArrayKey {
+        private final Class<?> arrayType;
+        private final String expression;
+
+        private ArrayKey(Class<?> arrayType, String expression) {
+            this.arrayType = arrayType;
+            this.expression = expression;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ArrayKey)) return false;
+            ArrayKey that = (ArrayKey) o;
+            return arrayType == that.arrayType && expression.equals(that.expression);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * arrayType.hashCode() + expression.hashCode();
+        }
+    }
+
+    /**
+     * The members of a class injected with configuration, with the keys they are injected from.
+     */
+    private static class BindingPlan {
+        private final Map<Field, String> fields;
+        private final Map<Method, Set<String>> methods;
+
+        private BindingPlan(Map<Field, String> fields, Map<Method, Set<String>> methods) {
+            this.fields = fields;
+            this.methods = methods;
+        }
+    }
+
+    /**
+     * An object kept up to date by {@link #bind(Object)}, held weakly so binding does not keep it alive.
+     */
+    private static class LiveBinding {
+        private final WeakReference<Object> target;
+        private final BindingPlan plan;
+
+        private LiveBinding(Object target, BindingPlan plan) {
+            this.target = new WeakReference<>(target);
+            this.plan = plan;
+        }
+    }
+
+    /**
+     * A value set by {@link #override(String, String, String, long, TimeUnit)}, with the value as it was given.
+     */
+    private static class OverrideValue extends ConfigurationValue {
+        private final String rawValue;
+        private final long expiresAt;
+
+        private OverrideValue(CValue value, String tag, String rawValue, long expiresAt) {
+            super(value, tag);
+            this.rawValue = rawValue;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * The latest versions of the values of a configuration, shared by the configuration and all of its views.
+     * Version n is kept in slot n modulo the size until a later version takes the slot.
+     */
+    private static class VersionHistory {
+        private final ConfigurationSnapshot[] snapshots;
+
+        private VersionHistory(int size) {
+            this.snapshots = new ConfigurationSnapshot[size];
+        }
+
+        private synchronized void add(ConfigurationSnapshot snapshot) {
+            int slot = (int) (snapshot.version() % snapshots.length);
+            if (snapshots[slot] == null || snapshots[slot].version() < snapshot.version()) {
+                snapshots[slot] = snapshot.withoutCaches();
+            }
+        }
+
+        private synchronized ConfigurationSnapshot get(long version) {
+            ConfigurationSnapshot snapshot = snapshots[(int) (version % snapshots.length)];
+            return snapshot != null && snapshot.version() == version ? snapshot : null;
+        }
+
+        private synchronized List<Long> versions() {
+            List<Long> versions = new ArrayList<>();
+            for (ConfigurationSnapshot snapshot : snapshots) {
+                if (snapshot != null) {
+                    versions.add(snapshot.version());
+                }
+            }
+            Collections.sort(versions);
+            return versions;
+        }
+    }
+
+    /**
+     * The views of one configuration by their tags, shared by the configuration and all of its views.
+     * When there are too many, the least recently used views are dropped, except the configuration the views were
+     * made from and views with subscribers or live bindings. A view that gets its first subscriber after it was
+     * dropped is still held by its caller, so views with subscribers are also kept apart from the views by tags,
+     * and their subscribers go on getting changes.
+     */
+    private static class TagViews {
+        private final Map<List<String>, DefaultConstrettoConfiguration> views = new LinkedHashMap<>(16, 0.75f, true);
+        private final Set<DefaultConstrettoConfiguration> listening = Collections.newSetFromMap(new IdentityHashMap<DefaultConstrettoConfiguration, Boolean>());
+        private final int maxViews;
+
+        private TagViews(int maxViews) {
+            this.maxViews = maxViews;
+        }
+
+        private synchronized DefaultConstrettoConfiguration get(List<String> tags) {
+            return views.get(tags);
+        }
+
+        private synchronized void put(List<String> tags, DefaultConstrettoConfiguration view) {
+            views.put(tags, view);
+            for (Iterator<DefaultConstrettoConfiguration> oldest = views.values().iterator(); views.size() > maxViews && oldest.hasNext(); ) {
+                DefaultConstrettoConfiguration candidate = oldest.next();
+                if (candidate.root != null && !candidate.changes.hasSubscribers() && candidate.liveBindings.isEmpty()) {
+                    oldest.remove();
+                }
+            }
+        }
+
+        /**
+         * Keeps the view among the views to publish changes to, as it is getting a subscriber or a live binding.
+         */
+        private synchronized void listening(DefaultConstrettoConfiguration view) {
+            listening.add(view);
+        }
+
+        /**
+         * @return the views by tags and the views with subscribers or live bindings
+         */
+        private synchronized List<DefaultConstrettoConfiguration> values() {
+            Set<DefaultConstrettoConfiguration> values = Collections.newSetFromMap(new IdentityHashMap<DefaultConstrettoConfiguration, Boolean>());
+            values.addAll(views.values());
+            for (Iterator<DefaultConstrettoConfiguration> listeningViews = listening.iterator(); listeningViews.hasNext(); ) {
+                DefaultConstrettoConfiguration view = listeningViews.next();
+                if (!view.changes.hasSubscribers() && view.liveBindings.isEmpty()) {
+                    listeningViews.remove();
+                } else {
+                    values.add(view);
+                }
+            }
+            return new ArrayList<>(values);
+        }
+    }
 }
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.constretto.internal;
+
+import org.constretto.model.ConfigurationValue;
+
+import java.util.*;
+
+/**
+ * A read only map from keys to their tagged values, indexed by a minimal perfect hash over the key set.
+ * <p/>
+ * Keys are hashed into buckets of a few keys each, and every bucket stores the seed that places its keys in
+ * distinct free slots of the key and value arrays (hash and displace). A lookup reads the seed of its bucket,
+ * compares the fingerprint of the slot and then the key itself, without chained nodes or boxed entries.
+ *
+ * @author <a href="mailto:kaare.nilsen@gmail.com">Kaare Nilsen</a>
+ */
+public final class FrozenConfigurationMap extends AbstractMap<String, List<ConfigurationValue>> {
+    private static final int KEYS_PER_BUCKET = 4;
+    private static final int MAX_SEED = 1 << 24;
+
+    private final int[] seeds;
+    private final int[] fingerprints;
+    private final String[] keys;
+    private final Object[] values;
+    private Set<Entry<String, List<ConfigurationValue>>> entrySet;
+
+    private FrozenConfigurationMap(int[] seeds, int[] fingerprints, String[] keys, Object[] values) {
+        this.seeds = seeds;
+        this.fingerprints = fingerprints;
+        this.keys = keys;
+        this.values = values;
+    }
+
+    /**
+     * @param configuration the configuration to freeze
+     * @return a frozen copy of the configuration, or an unmodifiable copy if no perfect hash could be found
+     */
+    public static Map<String, List<ConfigurationValue>> freeze(Map<String, List<ConfigurationValue>> configuration) {
+        if (configuration instanceof FrozenConfigurationMap) {
+            return configuration;
+        }
+        int size = configuration.size();
+        String[] keys = configuration.keySet().toArray(new String[size]);
+        long[] hashes = new long[size];
+        int bucketCount = Math.max(1, size / KEYS_PER_BUCKET);
+        List<List<Integer>> buckets = new ArrayList<List<Integer>>(bucketCount);
+        for (int i = 0; i < bucketCount; i++) {
+            buckets.add(new ArrayList<Integer>(KEYS_PER_BUCKET));
+        }
+        for (int i = 0; i < size; i++) {
+            hashes[i] = hash(keys[i]);
+            buckets.get(bucket(hashes[i], bucketCount)).add(i);
+        }
+        Integer[] order = new Integer[bucketCount];
+        for (int i = 0; i < bucketCount; i++) {
+            order[i] = i;
+        }
+        final List<List<Integer>> bucketsBySize = buckets;
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return bucketsBySize.get(b).size() - bucketsBySize.get(a).size();
+            }
+        });
+
+        int[] seeds = new int[bucketCount];
+        int[] fingerprints = new int[size];
+        String[] frozenKeys = new String[size];
+        Object[] frozenValues = new Object[size];
+        boolean[] taken = new boolean[size];
+        int[] slots = new int[KEYS_PER_BUCKET * 4];
+        for (Integer bucketIndex : order) {
+            List<Integer> bucket = buckets.get(bucketIndex);
+            if (bucket.isEmpty()) {
+                break;
+            }
+            if (slots.length < bucket.size()) {
+                slots = new int[bucket.size()];
+            }
+            int seed = findSeed(bucket, hashes, taken, slots);
+            if (seed < 0) {
+                return Collections.unmodifiableMap(new HashMap<String, List<ConfigurationValue>>(configuration));
+            }
+            seeds[bucketIndex] = seed;
+            for (int i = 0; i < bucket.size(); i++) {
+                int key = bucket.get(i);
+                int slot = slots[i];
+                taken[slot] = true;
+                fingerprints[slot] = (int) hashes[key];
+                frozenKeys[slot] = keys[key];
+                frozenValues[slot] = compact(configuration.get(keys[key]));
+            }
+        }
+        return new FrozenConfigurationMap(seeds, fingerprints, frozenKeys, frozenValues);
+    }
+
+    private static int findSeed(List<Integer> bucket, long[] hashes, boolean[] taken, int[] slots) {
+        int size = taken.length;
+        for (int seed = 0; seed < MAX_SEED; seed++) {
+            boolean placed = true;
+            for (int i = 0; i < bucket.size() && placed; i++) {
+                int slot = slot(hashes[bucket.get(i)], seed, size);
+                placed = !taken[slot];
+                for (int j = 0; j < i && placed; j++) {
+                    placed = slots[j] != slot;
+                }
+                slots[i] = slot;
+            }
+            if (placed) {
+                return seed;
+            }
+        }
+        return -1;
+    }
+
+    private static List<ConfigurationValue> compact(List<ConfigurationValue> values) {
+        if (values.size() == 1) {
+            return Collections.singletonList(values.get(0));
+        }
+        return Collections.unmodifiableList(Arrays.asList(values.toArray(new ConfigurationValue[values.size()])));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<ConfigurationValue> get(Object key) {
+        int slot = indexOf(key);
+        return slot < 0 ? null : (List<ConfigurationValue>) values[slot];
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return keys.length;
+    }
+
+    @Override
+    public Set<Entry<String, List<ConfigurationValue>>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Entry<String, List<ConfigurationValue>>>() {
+                @Override
+                public Iterator<Entry<String, List<ConfigurationValue>>> iterator() {
+                    return new Iterator<Entry<String, List<ConfigurationValue>>>() {
+                        private int next;
+
+                        public boolean hasNext() {
+                            return next < keys.length;
+                        }
+
+                        @SuppressWarnings("unchecked")
+                        public Entry<String, List<ConfigurationValue>> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            int slot = next++;
+                            return new SimpleImmutableEntry<String, List<ConfigurationValue>>(keys[slot], (List<ConfigurationValue>) values[slot]);
+                        }
+
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return keys.length;
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    private int indexOf(Object key) {
+        if (!(key instanceof String) || keys.length == 0) {
+            return -1;
+        }
+        String name = (String) key;
+        long hash = hash(name);
+        int slot = slot(hash, seeds[bucket(hash, seeds.length)], keys.length);
+        if (fingerprints[slot] != (int) hash || !name.equals(keys[slot])) {
+            return -1;
+        }
+        return slot;
+    }
+
+    private static int bucket(long hash, int bucketCount) {
+        return (int) (((hash >>> 32) * bucketCount) >>> 32);
+    }
+
+    private static int slot(long hash, int seed, int size) {
+        long mixed = mix(hash + seed * 0x9E3779B97F4A7C15L);
+        return (int) (((mixed >>> 32) * size) >>> 32);
+    }
+
+    /**
+     * A 64 bit hash of the key. String.hashCode is not used since keys with equal hash codes could never be
+     * placed in distinct slots.
+     */
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+}
@@ -180,6 +180,28 @@ public abstract class GenericTypeResolver {
 		return typeVariableMap;
 	}
 
+	/**
+	 * Resolve the given type variable against the type variables bound by the given owner class,
+	 * falling back to its declared bound if the owner does not bind it.
+	 * @param typeVariable the type variable to resolve
+	 * @param ownerClass the class to resolve against, may be <code>null</code>
+	 * @return the resolved type
+	 */
+	public static Type resolveTypeVariable(TypeVariable typeVariable, Class ownerClass) {
+		Type resolved = (ownerClass != null ? getTypeVariableMap(ownerClass).get(typeVariable) : null);
+		while (resolved instanceof TypeVariable && ownerClass != null) {
+			Type next = getTypeVariableMap(ownerClass).get(resolved);
+			if (next == null || next.equals(resolved)) {
+				break;
+			}
+			resolved = next;
+		}
+		if (resolved == null || resolved instanceof TypeVariable) {
+			resolved = extractBoundForTypeVariable(resolved == null ? typeVariable : (TypeVariable) resolved);
+		}
+		return resolved;
+	}
+
 	/**
 	 * Extracts the bound <code>Type</code> for a given {@link java.lang.reflect.TypeVariable}.
 	 */
@@ -0,0 +1,400 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.constretto.internal;
+
+import org.constretto.model.ConfigurationValue;
+
+import java.util.*;
+
+/**
+ * A read only map from keys to their tagged values, stored in a persistent hash array mapped trie.
+ * <p/>
+ * Changing a key gives a new map that shares every node but the ones on the path to that key with the map it was
+ * made from, so a new version of a large configuration with a few changed keys costs memory for the changed keys
+ * only. Comparing two versions skips the nodes they share.
+ *
+ * @author <a href="mailto:kaare.nilsen@gmail.com">Kaare Nilsen</a>
+ * @since 3.0
+ */
+public final class PersistentConfigurationMap extends AbstractMap<String, List<ConfigurationValue>> {
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final PersistentConfigurationMap EMPTY = new PersistentConfigurationMap(BitmapNode.EMPTY, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentConfigurationMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    public static PersistentConfigurationMap empty() {
+        return EMPTY;
+    }
+
+    public static PersistentConfigurationMap of(Map<String, List<ConfigurationValue>> configuration) {
+        if (configuration instanceof PersistentConfigurationMap) {
+            return (PersistentConfigurationMap) configuration;
+        }
+        return EMPTY.update(configuration);
+    }
+
+    /**
+     * @return a map with the key set to the values, sharing all other keys with this map
+     */
+    public PersistentConfigurationMap with(String key, List<ConfigurationValue> values) {
+        int hash = hash(key);
+        Entry existing = root.find(key, hash, 0);
+        if (existing != null && existing.values == values) {
+            return this;
+        }
+        return new PersistentConfigurationMap(root.with(new Entry(key, hash, values), 0), existing == null ? size + 1 : size);
+    }
+
+    /**
+     * @return a map without the key, sharing all other keys with this map
+     */
+    public PersistentConfigurationMap without(String key) {
+        int hash = hash(key);
+        if (root.find(key, hash, 0) == null) {
+            return this;
+        }
+        Node updated = root.without(key, hash, 0);
+        return new PersistentConfigurationMap(updated == null ? BitmapNode.EMPTY : updated, size - 1);
+    }
+
+    /**
+     * Gives a map equal to the given configuration, keeping the nodes and values of this map for every key
+     * whose values are unchanged.
+     *
+     * @param configuration the new values of every key
+     * @return a map with the same keys and values as the configuration
+     */
+    public PersistentConfigurationMap update(Map<String, List<ConfigurationValue>> configuration) {
+        PersistentConfigurationMap updated = this;
+        for (Map.Entry<String, List<ConfigurationValue>> entry : configuration.entrySet()) {
+            List<ConfigurationValue> values = updated.get(entry.getKey());
+            if (values == null || !values.equals(entry.getValue())) {
+                updated = updated.with(entry.getKey(), entry.getValue());
+            }
+        }
+        if (updated.size != configuration.size()) {
+            for (String key : keySet()) {
+                if (!configuration.containsKey(key)) {
+                    updated = updated.without(key);
+                }
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * The keys whose values differ between this map and another, without looking into the nodes the maps share.
+     *
+     * @param other the map to compare with
+     * @return the keys that are in only one of the maps, or have different values in the two maps
+     */
+    public Set<String> changedKeys(PersistentConfigurationMap other) {
+        Set<String> changedKeys = new HashSet<String>();
+        diff(root, other.root, changedKeys);
+        return changedKeys;
+    }
+
+    @Override
+    public List<ConfigurationValue> get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        Entry entry = root.find((String) key, hash((String) key), 0);
+        return entry == null ? null : entry.values;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<Map.Entry<String, List<ConfigurationValue>>> entrySet() {
+        return new AbstractSet<Map.Entry<String, List<ConfigurationValue>>>() {
+            @Override
+            public Iterator<Map.Entry<String, List<ConfigurationValue>>> iterator() {
+                List<Map.Entry<String, List<ConfigurationValue>>> entries = new ArrayList<Map.Entry<String, List<ConfigurationValue>>>(size);
+                collect(root, entries);
+                return Collections.unmodifiableList(entries).iterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private static int hash(String key) {
+        int hash = key.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    private static void collect(Object slot, List<? super Entry> entries) {
+        if (slot instanceof Entry) {
+            entries.add((Entry) slot);
+        } else if (slot instanceof BitmapNode) {
+            for (Object child : ((BitmapNode) slot).slots) {
+                collect(child, entries);
+            }
+        } else if (slot instanceof CollisionNode) {
+            Collections.addAll(entries, ((CollisionNode) slot).entries);
+        }
+    }
+
+    private static void diff(Object slot, Object otherSlot, Set<String> changedKeys) {
+        if (slot == otherSlot) {
+            return;
+        }
+        if (slot instanceof BitmapNode && otherSlot instanceof BitmapNode) {
+            BitmapNode node = (BitmapNode) slot;
+            BitmapNode otherNode = (BitmapNode) otherSlot;
+            int bits = node.bitmap | otherNode.bitmap;
+            while (bits != 0) {
+                int bit = Integer.lowestOneBit(bits);
+                diff(node.slot(bit), otherNode.slot(bit), changedKeys);
+                bits &= ~bit;
+            }
+        } else if (slot instanceof Entry && otherSlot instanceof Entry && ((Entry) slot).key.equals(((Entry) otherSlot).key)) {
+            if (!((Entry) slot).values.equals(((Entry) otherSlot).values)) {
+                changedKeys.add(((Entry) slot).key);
+            }
+        } else {
+            List<Entry> entries = new ArrayList<Entry>();
+            collect(slot, entries);
+            Map<String, List<ConfigurationValue>> otherValues = new HashMap<String, List<ConfigurationValue>>();
+            List<Entry> otherEntries = new ArrayList<Entry>();
+            collect(otherSlot, otherEntries);
+            for (Entry otherEntry : otherEntries) {
+                otherValues.put(otherEntry.key, otherEntry.values);
+            }
+            for (Entry entry : entries) {
+                List<ConfigurationValue> otherValue = otherValues.remove(entry.key);
+                if (otherValue == null || !otherValue.equals(entry.values)) {
+                    changedKeys.add(entry.key);
+                }
+            }
+            changedKeys.addAll(otherValues.keySet());
+        }
+    }
+
+    private static final class Entry implements Map.Entry<String, List<ConfigurationValue>> {
+        private final String key;
+        private final int hash;
+        private final List<ConfigurationValue> values;
+
+        private Entry(String key, int hash, List<ConfigurationValue> values) {
+            this.key = key;
+            this.hash = hash;
+            this.values = values;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public List<ConfigurationValue> getValue() {
+            return values;
+        }
+
+        public List<ConfigurationValue> setValue(List<ConfigurationValue> value) {
+            throw new UnsupportedOperationException("The configuration can not be modified");
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) return false;
+            Map.Entry<?, ?> that = (Map.Entry<?, ?>) o;
+            return key.equals(that.getKey()) && values.equals(that.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode() ^ values.hashCode();
+        }
+    }
+
+    private static abstract class Node {
+        abstract Entry find(String key, int hash, int shift);
+
+        abstract Node with(Entry entry, int shift);
+
+        /**
+         * @return the node without the key, or null if the node would be empty
+         */
+        abstract Node without(String key, int hash, int shift);
+    }
+
+    /**
+     * A node with up to 32 slots, holding the slots in use only. A slot holds either an entry or a node one level down.
+     */
+    private static final class BitmapNode extends Node {
+        private static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        private final int bitmap;
+        private final Object[] slots;
+
+        private BitmapNode(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        private static int bit(int hash, int shift) {
+            return 1 << ((hash >>> shift) & MASK);
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        private Object slot(int bit) {
+            return (bitmap & bit) == 0 ? null : slots[index(bit)];
+        }
+
+        Entry find(String key, int hash, int shift) {
+            Object slot = slot(bit(hash, shift));
+            if (slot instanceof Entry) {
+                Entry entry = (Entry) slot;
+                return entry.hash == hash && entry.key.equals(key) ? entry : null;
+            }
+            return slot == null ? null : ((Node) slot).find(key, hash, shift + BITS);
+        }
+
+        Node with(Entry entry, int shift) {
+            int bit = bit(entry.hash, shift);
+            int index = index(bit);
+            if ((bitmap & bit) == 0) {
+                Object[] updated = new Object[slots.length + 1];
+                System.arraycopy(slots, 0, updated, 0, index);
+                updated[index] = entry;
+                System.arraycopy(slots, index, updated, index + 1, slots.length - index);
+                return new BitmapNode(bitmap | bit, updated);
+            }
+            Object slot = slots[index];
+            Object replacement;
+            if (slot instanceof Node) {
+                replacement = ((Node) slot).with(entry, shift + BITS);
+            } else if (((Entry) slot).key.equals(entry.key)) {
+                replacement = entry;
+            } else {
+                replacement = pair((Entry) slot, entry, shift + BITS);
+            }
+            Object[] updated = slots.clone();
+            updated[index] = replacement;
+            return new BitmapNode(bitmap, updated);
+        }
+
+        Node without(String key, int hash, int shift) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int index = index(bit);
+            Object slot = slots[index];
+            if (slot instanceof Node) {
+                Node updated = ((Node) slot).without(key, hash, shift + BITS);
+                if (updated == slot) {
+                    return this;
+                } else if (updated != null) {
+                    Object[] updatedSlots = slots.clone();
+                    updatedSlots[index] = updated;
+                    return new BitmapNode(bitmap, updatedSlots);
+                }
+            } else if (!((Entry) slot).key.equals(key)) {
+                return this;
+            }
+            if (slots.length == 1) {
+                return null;
+            }
+            Object[] updated = new Object[slots.length - 1];
+            System.arraycopy(slots, 0, updated, 0, index);
+            System.arraycopy(slots, index + 1, updated, index, slots.length - index - 1);
+            return new BitmapNode(bitmap & ~bit, updated);
+        }
+
+        private static Node pair(Entry first, Entry second, int shift) {
+            if (first.hash == second.hash) {
+                return new CollisionNode(first.hash, new Entry[]{first, second});
+            }
+            return EMPTY.with(first, shift).with(second, shift);
+        }
+    }
+
+    /**
+     * The entries of keys with the same hash.
+     */
+    private static final class CollisionNode extends Node {
+        private final int hash;
+        private final Entry[] entries;
+
+        private CollisionNode(int hash, Entry[] entries) {
+            this.hash = hash;
+            this.entries = entries;
+        }
+
+        Entry find(String key, int hash, int shift) {
+            for (Entry entry : entries) {
+                if (entry.key.equals(key)) {
+                    return entry;
+                }
+            }
+            return null;
+        }
+
+        Node with(Entry entry, int shift) {
+            if (entry.hash != hash) {
+                return new BitmapNode(BitmapNode.bit(hash, shift), new Object[]{this}).with(entry, shift);
+            }
+            for (int i = 0; i < entries.length; i++) {
+                if (entries[i].key.equals(entry.key)) {
+                    Entry[] updated = entries.clone();
+                    updated[i] = entry;
+                    return new CollisionNode(hash, updated);
+                }
+            }
+            Entry[] updated = Arrays.copyOf(entries, entries.length + 1);
+            updated[entries.length] = entry;
+            return new CollisionNode(hash, updated);
+        }
+
+        Node without(String key, int hash, int shift) {
+            for (int i = 0; i < entries.length; i++) {
+                if (entries[i].key.equals(key)) {
+                    if (entries.length == 1) {
+                        return null;
+                    }
+                    Entry[] updated = new Entry[entries.length - 1];
+                    System.arraycopy(entries, 0, updated, 0, i);
+                    System.arraycopy(entries, i + 1, updated, i, entries.length - i - 1);
+                    return new CollisionNode(hash, updated);
+                }
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.constretto.internal;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How often a store is read again by the {@link RefreshScheduler} of a configuration.
+ * <p/>
+ * Each delay is the interval spread randomly by the jitter, so many instances started together do not read a
+ * shared directory at the same moment. After failures the interval is doubled for every failure in a row, up to
+ * the longest backoff, until a refresh succeeds again.
+ *
+ * @author <a href="mailto:kaare.nilsen@gmail.com">Kaare Nilsen</a>
+ * @since 3.0
+ */
+public final class RefreshPolicy {
+    public static final double DEFAULT_JITTER = 0.1;
+    public static final int DEFAULT_BACKOFF_FACTOR = 32;
+
+    private final long interval;
+    private final double jitter;
+    private final long maxBackoff;
+
+    private RefreshPolicy(long interval, double jitter, long maxBackoff) {
+        this.interval = interval;
+        this.jitter = jitter;
+        this.maxBackoff = maxBackoff;
+    }
+
+    /**
+     * @param interval the time between refreshes
+     * @param unit     the unit of the interval
+     * @return a policy with the default jitter, backing off to {@value #DEFAULT_BACKOFF_FACTOR} times the interval
+     */
+    public static RefreshPolicy every(long interval, TimeUnit unit) {
+        long millis = unit.toMillis(interval);
+        if (millis <= 0) {
+            throw new IllegalArgumentException("The refresh interval must be at least a millisecond, was " + interval + " " + unit);
+        }
+        return new RefreshPolicy(millis, DEFAULT_JITTER, millis * DEFAULT_BACKOFF_FACTOR);
+    }
+
+    /**
+     * @param jitter the fraction of the interval each delay may be shorter or longer by, from 0 to 1
+     * @return the same policy with the jitter
+     */
+    public RefreshPolicy withJitter(double jitter) {
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("The jitter must be between 0 and 1, was " + jitter);
+        }
+        return new RefreshPolicy(interval, jitter, maxBackoff);
+    }
+
+    /**
+     * @param maxBackoff the longest time between refreshes after failures
+     * @param unit       the unit of the backoff
+     * @return the same policy with the longest backoff
+     */
+    public RefreshPolicy withMaxBackoff(long maxBackoff, TimeUnit unit) {
+        return new RefreshPolicy(interval, jitter, Math.max(interval, unit.toMillis(maxBackoff)));
+    }
+
+    /**
+     * @return the time between refreshes, in milliseconds
+     */
+    public long interval() {
+        return interval;
+    }
+
+    /**
+     * @param failures the number of failed refreshes in a row
+     * @param random   the source of the jitter
+     * @return the delay before the next refresh, in milliseconds
+     */
+    long delay(int failures, Random random) {
+        long delay = interval;
+        for (int i = 0; i < failures && delay < maxBackoff; i++) {
+            delay *= 2;
+        }
+        delay = Math.min(delay, Math.max(interval, maxBackoff));
+        long spread = (long) (delay * jitter * (2 * random.nextDouble() - 1));
+        return Math.max(1, delay + spread);
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.constretto.internal;
+
+import org.constretto.internal.store.CachingConfigurationStore;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads the stores of a configuration again on their own intervals, and reloads the configuration when a store
+ * gives other values than before.
+ * <p/>
+ * Each store is kept behind a {@link CachingConfigurationStore}, so reloading for one store serves the other
+ * refreshed stores from memory. The next refresh of a store is scheduled when its previous refresh is done, and
+ * a refresh asked for with {@link #refreshNow()} while one is running is skipped, so a store is never read by
+ * two refreshes at a time. The store may be shared with the schedulers of other configurations built from the same
+ * builder, so a configuration is reloaded when the store holds values it has not seen, whichever scheduler read
+ * them. The scheduler owns its threads until it is shut down.
+ * <p/>
+ * The configuration is held weakly, so the scheduler does not keep it alive. The first refresh after the
+ * configuration is collected shuts the scheduler down.
+ *
+ * @author <a href="mailto:kaare.nilsen@gmail.com">Kaare Nilsen</a>
+ * @since 3.0
+ */
+public final class RefreshScheduler {
+    private static final int THREADS = 2;
+    private static final AtomicInteger COUNT = new AtomicInteger();
+
+    private final WeakReference<DefaultConstrettoConfiguration> configuration;
+    private final List<RefreshedStore> stores = new CopyOnWriteArrayList<RefreshedStore>();
+    private final Random random = new Random();
+    private final ScheduledExecutorService executor;
+    private volatile boolean shutdown;
+
+    RefreshScheduler(DefaultConstrettoConfiguration configuration) {
+        this.configuration = new WeakReference<DefaultConstrettoConfiguration>(configuration);
+        final int scheduler = COUNT.incrementAndGet();
+        this.executor = Executors.newScheduledThreadPool(THREADS, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "constretto-refresh-" + scheduler + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Starts refreshing the store with the policy. The first refresh is after one interval, as the store was
+     * read when the configuration was built.
+     *
+     * @param store  the store to refresh
+     * @param policy how often to refresh it
+     */
+    public void schedule(CachingConfigurationStore store, RefreshPolicy policy) {
+        RefreshedStore refreshedStore = new RefreshedStore(store, policy);
+        stores.add(refreshedStore);
+        refreshedStore.scheduleNext();
+    }
+
+    /**
+     * Refreshes every store on the calling thread, skipping the stores that are being refreshed already.
+     *
+     * @return the number of stores whose values changed since the configuration last saw them
+     */
+    public int refreshNow() {
+        int changed = 0;
+        for (RefreshedStore store : stores) {
+            if (store.refresh()) {
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @return the stats of every store, in the order they were scheduled
+     */
+    public List<RefreshStats> stats() {
+        List<RefreshStats> stats = new ArrayList<RefreshStats>(stores.size());
+        for (RefreshedStore store : stores) {
+            stats.add(store.stats());
+        }
+        return Collections.unmodifiableList(stats);
+    }
+
+    /**
+     * Stops scheduling refreshes and ends the threads of the scheduler. A refresh that is running is finished.
+     */
+    public void shutdown() {
+        shutdown = true;
+        executor.shutdown();
+    }
+
+    /**
+     * @return whether the scheduler was shut down, or shut itself down as its configuration was collected
+     */
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    private final class RefreshedStore implements Runnable {
+        private final CachingConfigurationStore store;
+        private final RefreshPolicy policy;
+        private final AtomicBoolean running = new AtomicBoolean();
+        private final AtomicLong skipped = new AtomicLong();
+        private volatile long refreshes;
+        private volatile long changes;
+        private volatile long failures;
+        private volatile int consecutiveFailures;
+        private volatile long lastRefresh;
+        private volatile long nextDelay;
+        private volatile Exception lastFailure;
+        private volatile long seenVersion;
+
+        private RefreshedStore(CachingConfigurationStore store, RefreshPolicy policy) {
+            this.store = store;
+            this.policy = policy;
+            this.seenVersion = store.version();
+        }
+
+        public void run() {
+            try {
+                refresh();
+            } finally {
+                scheduleNext();
+            }
+        }
+
+        private void scheduleNext() {
+            if (shutdown) {
+                return;
+            }
+            synchronized (random) {
+                nextDelay = policy.delay(consecutiveFailures, random);
+            }
+            try {
+                executor.schedule(this, nextDelay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // shut down while the store was being refreshed
+            }
+        }
+
+        private boolean refresh() {
+            DefaultConstrettoConfiguration configuration = RefreshScheduler.this.configuration.get();
+            if (configuration == null) {
+                shutdown();
+                return false;
+            }
+            if (!running.compareAndSet(false, true)) {
+                skipped.incrementAndGet();
+                return false;
+            }
+            try {
+                refreshes++;
+                lastRefresh = System.currentTimeMillis();
+                store.refresh();
+                long version = store.version();
+                boolean changed = version != seenVersion;
+                if (!changed && store.lastFailure() != null) {
+                    failed(store.lastFailure());
+                    return false;
+                }
+                if (changed) {
+                    seenVersion = version;
+                    changes++;
+                    configuration.reload();
+                }
+                consecutiveFailures = 0;
+                lastFailure = null;
+                return changed;
+            } catch (RuntimeException e) {
+                failed(e);
+                return false;
+            } finally {
+                running.set(false);
+            }
+        }
+
+        private void failed(Exception e) {
+            failures++;
+            consecutiveFailures++;
+            lastFailure = e;
+        }
+
+        private RefreshStats stats() {
+            return new RefreshStats(store.store().getClass().getName(), refreshes, changes, failures, skipped.get(),
+                    consecutiveFailures, lastRefresh, nextDelay, lastFailure);
+        }
+    }
+}
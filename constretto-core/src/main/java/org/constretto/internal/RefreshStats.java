@@ -0,0 +1,116 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.constretto.internal;
+
+/**
+ * The refreshes of one store by a {@link RefreshScheduler}, as they were when the stats were taken.
+ *
+ * @author <a href="mailto:kaare.nilsen@gmail.com">Kaare Nilsen</a>
+ * @since 3.0
+ */
+public final class RefreshStats {
+    private final String store;
+    private final long refreshes;
+    private final long changes;
+    private final long failures;
+    private final long skipped;
+    private final int consecutiveFailures;
+    private final long lastRefresh;
+    private final long nextDelay;
+    private final Exception lastFailure;
+
+    RefreshStats(String store, long refreshes, long changes, long failures, long skipped, int consecutiveFailures,
+                 long lastRefresh, long nextDelay, Exception lastFailure) {
+        this.store = store;
+        this.refreshes = refreshes;
+        this.changes = changes;
+        this.failures = failures;
+        this.skipped = skipped;
+        this.consecutiveFailures = consecutiveFailures;
+        this.lastRefresh = lastRefresh;
+        this.nextDelay = nextDelay;
+        this.lastFailure = lastFailure;
+    }
+
+    /**
+     * @return the class name of the store
+     */
+    public String store() {
+        return store;
+    }
+
+    /**
+     * @return the number of times the store was read
+     */
+    public long refreshes() {
+        return refreshes;
+    }
+
+    /**
+     * @return the number of refreshes that gave other values, each reloading the configuration
+     */
+    public long changes() {
+        return changes;
+    }
+
+    /**
+     * @return the number of refreshes that failed
+     */
+    public long failures() {
+        return failures;
+    }
+
+    /**
+     * @return the number of refreshes skipped because a refresh of the store was already running
+     */
+    public long skipped() {
+        return skipped;
+    }
+
+    /**
+     * @return the number of the latest refreshes that failed, 0 if the last refresh succeeded
+     */
+    public int consecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /**
+     * @return the time the last refresh started, in milliseconds since the epoch, or 0 if the store was not refreshed
+     */
+    public long lastRefresh() {
+        return lastRefresh;
+    }
+
+    /**
+     * @return the delay scheduled before the next refresh, in milliseconds
+     */
+    public long nextDelay() {
+        return nextDelay;
+    }
+
+    /**
+     * @return why the last failed refresh failed, or <code>null</code> if the last refresh succeeded
+     */
+    public Exception lastFailure() {
+        return lastFailure;
+    }
+
+    @Override
+    public String toString() {
+        return store + "[refreshes=" + refreshes + ", changes=" + changes + ", failures=" + failures
+                + ", skipped=" + skipped + ", consecutiveFailures=" + consecutiveFailures + ", nextDelay=" + nextDelay + "ms]";
+    }
+}
@@ -27,7 +27,7 @@ public class ByteValueConverter implements ValueConverter<Byte> {
         try {
             return Byte.parseByte(value);
         } catch (NumberFormatException e) {
-            throw new ConstrettoConversionException(value, Byte.class, e);
+            throw new ConstrettoConversionException(value, Byte.class, e, false);
         }
     }
 }
\ No newline at end of file
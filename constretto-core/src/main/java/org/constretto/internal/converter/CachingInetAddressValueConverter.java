@@ -0,0 +1,176 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.constretto.internal.converter;
+
+import org.constretto.ValueConverter;
+import org.constretto.exception.ConstrettoConversionException;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Converts host names to addresses, caching both successful and failed lookups.
+ * <p/>
+ * Only the first lookup of a host blocks the caller. When a cached entry has expired the stale entry is returned,
+ * and the host is resolved again in the background. There is at most one refresh in flight per host.
+ * If a refresh fails for a host that has been resolved before, the last known address is kept and the refresh is
+ * retried after the negative ttl.
+ * <p/>
+ * Not registered by default, register it with {@link org.constretto.ConstrettoBuilder#registerConverter} or
+ * {@link ValueConverterRegistry#registerCustomConverter}.
+ *
+ * @author <a href="mailto:kaare.nilsen@gmail.com">Kaare Nilsen</a>
+ */
+public class CachingInetAddressValueConverter implements ValueConverter<InetAddress> {
+    public static final long DEFAULT_POSITIVE_TTL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    public static final long DEFAULT_NEGATIVE_TTL_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    private static final Executor DEFAULT_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "constretto-dns-refresh-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final Resolver resolver;
+    private final long positiveTtlNanos;
+    private final long negativeTtlNanos;
+    private final Executor executor;
+    private final Clock clock;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    public CachingInetAddressValueConverter() {
+        this(new SystemResolver(), DEFAULT_POSITIVE_TTL_MILLIS, DEFAULT_NEGATIVE_TTL_MILLIS);
+    }
+
+    public CachingInetAddressValueConverter(Resolver resolver, long positiveTtlMillis, long negativeTtlMillis) {
+        this(resolver, positiveTtlMillis, negativeTtlMillis, DEFAULT_EXECUTOR);
+    }
+
+    /**
+     * @param resolver          resolves host names, i.e. a stand-in for the system resolver in tests
+     * @param positiveTtlMillis how long a resolved address is used before it is refreshed
+     * @param negativeTtlMillis how long a failed lookup is remembered before it is retried
+     * @param executor          runs the background refreshes
+     */
+    public CachingInetAddressValueConverter(Resolver resolver, long positiveTtlMillis, long negativeTtlMillis, Executor executor) {
+        this(resolver, positiveTtlMillis, negativeTtlMillis, executor, new SystemClock());
+    }
+
+    CachingInetAddressValueConverter(Resolver resolver, long positiveTtlMillis, long negativeTtlMillis, Executor executor, Clock clock) {
+        this.resolver = resolver;
+        this.positiveTtlNanos = TimeUnit.MILLISECONDS.toNanos(positiveTtlMillis);
+        this.negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(negativeTtlMillis);
+        this.executor = executor;
+        this.clock = clock;
+    }
+
+    public InetAddress fromString(String value) throws ConstrettoConversionException {
+        Entry entry = entries.get(value);
+        if (entry == null) {
+            entry = resolve(value, null);
+            Entry existing = entries.putIfAbsent(value, entry);
+            if (existing != null) {
+                entry = existing;
+            }
+        } else if (clock.nanoTime() - entry.expiresAt > 0) {
+            refresh(value, entry);
+        }
+        if (entry.address == null) {
+            throw new ConstrettoConversionException(value, InetAddress.class, entry.failure, false);
+        }
+        return entry.address;
+    }
+
+    /**
+     * Forgets all cached lookups.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    private void refresh(final String host, final Entry stale) {
+        if (!stale.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        entries.replace(host, stale, resolve(host, stale));
+                    } finally {
+                        stale.refreshing.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            stale.refreshing.set(false);
+        }
+    }
+
+    private Entry resolve(String host, Entry previous) {
+        try {
+            return new Entry(resolver.resolve(host), null, clock.nanoTime() + positiveTtlNanos);
+        } catch (UnknownHostException e) {
+            if (previous != null && previous.address != null) {
+                return new Entry(previous.address, null, clock.nanoTime() + negativeTtlNanos);
+            }
+            return new Entry(null, e, clock.nanoTime() + negativeTtlNanos);
+        }
+    }
+
+    /**
+     * Resolves a host name to an address.
+     */
+    public interface Resolver {
+        InetAddress resolve(String host) throws UnknownHostException;
+    }
+
+    interface Clock {
+        long nanoTime();
+    }
+
+    private static class SystemResolver implements Resolver {
+        public InetAddress resolve(String host) throws UnknownHostException {
+            return InetAddress.getByName(host);
+        }
+    }
+
+    private static class SystemClock implements Clock {
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    }
+
+    private static class Entry {
+        private final InetAddress address;
+        private final UnknownHostException failure;
+        private final long expiresAt;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private Entry(InetAddress address, UnknownHostException failure, long expiresAt) {
+            this.address = address;
+            this.failure = failure;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
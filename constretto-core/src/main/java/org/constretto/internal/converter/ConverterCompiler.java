@@ -0,0 +1,375 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.constretto.internal.converter;
+
+import org.constretto.ValueConverter;
+import org.constretto.exception.ConstrettoConversionException;
+import org.constretto.exception.ConstrettoException;
+import org.constretto.internal.GenericTypeResolver;
+import org.constretto.model.CArray;
+import org.constretto.model.CObject;
+import org.constretto.model.CPrimitive;
+import org.constretto.model.CValue;
+
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Compiles a generic target type, like <code>Map&lt;String, List&lt;Duration&gt;&gt;</code>, into a tree of
+ * {@link CompiledConverter}s. Every node of the tree has its value converter resolved up front, so converting a
+ * value walks the tree once without looking up converters per element.
+ * <p/>
+ * Compiled trees are cached per type, and recompiled when a converter has been registered since they were compiled.
+ * Type variables are resolved with {@link GenericTypeResolver} against the owner class given when compiling.
+ *
+ * @author <a href="mailto:kaare.nilsen@gmail.com">Kaare Nilsen</a>
+ */
+public class ConverterCompiler {
+    private final ValueConverterScope scope;
+    private final ConcurrentMap<CompilationKey, Compiled> compiled = new ConcurrentHashMap<CompilationKey, Compiled>();
+
+    public ConverterCompiler(ValueConverterScope scope) {
+        this.scope = scope;
+    }
+
+    public CompiledConverter<?> compile(Type type) throws ConstrettoException {
+        return compile(type, null);
+    }
+
+    /**
+     * @param type       the target type
+     * @param ownerClass the class to resolve type variables in the target type against, may be null
+     * @return the compiled converter for the type
+     */
+    public CompiledConverter<?> compile(Type type, Class<?> ownerClass) throws ConstrettoException {
+        CompilationKey key = new CompilationKey(type, containsTypeVariable(type) ? ownerClass : null);
+        long version = ValueConverterScope.registrationCount();
+        Compiled entry = compiled.get(key);
+        if (entry == null || entry.version != version) {
+            entry = new Compiled(version, build(type, key.ownerClass));
+            compiled.put(key, entry);
+        }
+        return entry.converter;
+    }
+
+    private CompiledConverter<?> build(Type type, Class<?> ownerClass) {
+        if (type instanceof Class) {
+            Class<?> clazz = (Class<?>) type;
+            if (clazz.isArray()) {
+                CompiledConverter<?> primitiveArrayConverter = primitiveArrayConverter(clazz);
+                if (primitiveArrayConverter != null) {
+                    return primitiveArrayConverter;
+                }
+                return new ArrayConverter(clazz.getComponentType(), build(clazz.getComponentType(), ownerClass));
+            }
+            if (Map.class == clazz) {
+                return new MapConverter(leaf(String.class), leaf(String.class));
+            }
+            if (isCollection(clazz)) {
+                return new CollectionConverter(leaf(String.class), Set.class.isAssignableFrom(clazz));
+            }
+            return leaf(clazz);
+        } else if (type instanceof ParameterizedType) {
+            ParameterizedType parameterizedType = (ParameterizedType) type;
+            Class<?> rawType = (Class<?>) parameterizedType.getRawType();
+            Type[] arguments = parameterizedType.getActualTypeArguments();
+            if (Map.class == rawType) {
+                return new MapConverter(leaf(erase(arguments[0], ownerClass)), build(arguments[1], ownerClass));
+            }
+            if (isCollection(rawType)) {
+                return new CollectionConverter(build(arguments[0], ownerClass), Set.class.isAssignableFrom(rawType));
+            }
+            return leaf(rawType);
+        } else if (type instanceof GenericArrayType) {
+            Type componentType = ((GenericArrayType) type).getGenericComponentType();
+            return new ArrayConverter(erase(componentType, ownerClass), build(componentType, ownerClass));
+        } else if (type instanceof WildcardType) {
+            return build(((WildcardType) type).getUpperBounds()[0], ownerClass);
+        } else if (type instanceof TypeVariable) {
+            return build(GenericTypeResolver.resolveTypeVariable((TypeVariable) type, ownerClass), ownerClass);
+        }
+        throw new ConstrettoException("Can not convert to type: " + type);
+    }
+
+    /**
+     * Arrays of ints, longs and doubles are parsed straight into the array, without boxing each element, as long as
+     * the default converter for the component type is in use.
+     */
+    private CompiledConverter<?> primitiveArrayConverter(Class<?> arrayType) {
+        Class<?> componentType = arrayType.getComponentType();
+        ValueConverter<?> converter = scope.converterFor(componentType);
+        if (componentType == int.class && converter instanceof IntegerValueConverter) {
+            return new IntArrayConverter();
+        } else if (componentType == long.class && converter instanceof LongValueConverter) {
+            return new LongArrayConverter();
+        } else if (componentType == double.class && converter instanceof DoubleValueConverter) {
+            return new DoubleArrayConverter();
+        }
+        return null;
+    }
+
+    private LeafConverter leaf(Class<?> clazz) {
+        return new LeafConverter(clazz, scope.converterFor(clazz));
+    }
+
+    private boolean isCollection(Class<?> clazz) {
+        return clazz.isInterface() && (clazz.isAssignableFrom(List.class) || clazz.isAssignableFrom(Set.class));
+    }
+
+    private Class<?> erase(Type type, Class<?> ownerClass) {
+        if (type instanceof Class) {
+            return (Class<?>) type;
+        } else if (type instanceof ParameterizedType) {
+            return (Class<?>) ((ParameterizedType) type).getRawType();
+        } else if (type instanceof GenericArrayType) {
+            return Array.newInstance(erase(((GenericArrayType) type).getGenericComponentType(), ownerClass), 0).getClass();
+        } else if (type instanceof WildcardType) {
+            return erase(((WildcardType) type).getUpperBounds()[0], ownerClass);
+        } else if (type instanceof TypeVariable) {
+            return erase(GenericTypeResolver.resolveTypeVariable((TypeVariable) type, ownerClass), ownerClass);
+        }
+        return Object.class;
+    }
+
+    private static boolean containsTypeVariable(Type type) {
+        if (type instanceof TypeVariable) {
+            return true;
+        } else if (type instanceof ParameterizedType) {
+            for (Type argument : ((ParameterizedType) type).getActualTypeArguments()) {
+                if (containsTypeVariable(argument)) {
+                    return true;
+                }
+            }
+        } else if (type instanceof GenericArrayType) {
+            return containsTypeVariable(((GenericArrayType) type).getGenericComponentType());
+        } else if (type instanceof WildcardType) {
+            return containsTypeVariable(((WildcardType) type).getUpperBounds()[0]);
+        }
+        return false;
+    }
+
+    private class LeafConverter implements CompiledConverter<Object> {
+        private final Class<?> type;
+        private final ValueConverter<?> converter;
+
+        private LeafConverter(Class<?> type, ValueConverter<?> converter) {
+            this.type = type;
+            this.converter = converter;
+        }
+
+        public Object convert(CValue value) throws ConstrettoException {
+            if (value == null) {
+                return null;
+            }
+            if (value instanceof CPrimitive) {
+                return fromString(((CPrimitive) value).value());
+            }
+            // the value has more structure than the target type, convert it by its shape instead
+            return scope.convert(type, type, value);
+        }
+
+        @SuppressWarnings("unchecked")
+        private Object fromString(String value) throws ConstrettoException {
+            if (converter != null) {
+                return converter.fromString(value);
+            }
+            if (Enum.class.isAssignableFrom(type)) {
+                return ValueConverterRegistry.convertEnum((Class) type, value);
+            }
+            throw new ConstrettoException("No converter found for class: " + type.getName());
+        }
+    }
+
+    private static class CollectionConverter implements CompiledConverter<Collection<Object>> {
+        private final CompiledConverter<?> elementConverter;
+        private final boolean set;
+
+        private CollectionConverter(CompiledConverter<?> elementConverter, boolean set) {
+            this.elementConverter = elementConverter;
+            this.set = set;
+        }
+
+        public Collection<Object> convert(CValue value) throws ConstrettoException {
+            if (value == null) {
+                return null;
+            }
+            if (!(value instanceof CArray)) {
+                throw new ConstrettoConversionException(value.toString(), set ? Set.class : List.class, "expected an array");
+            }
+            List<CValue> elements = ((CArray) value).data();
+            Collection<Object> result = set ? new LinkedHashSet<Object>(elements.size() * 2) : new ArrayList<Object>(elements.size());
+            for (CValue element : elements) {
+                result.add(elementConverter.convert(element));
+            }
+            return result;
+        }
+    }
+
+    private static class MapConverter implements CompiledConverter<Map<Object, Object>> {
+        private final LeafConverter keyConverter;
+        private final CompiledConverter<?> valueConverter;
+
+        private MapConverter(LeafConverter keyConverter, CompiledConverter<?> valueConverter) {
+            this.keyConverter = keyConverter;
+            this.valueConverter = valueConverter;
+        }
+
+        public Map<Object, Object> convert(CValue value) throws ConstrettoException {
+            if (value == null) {
+                return null;
+            }
+            if (!(value instanceof CObject)) {
+                throw new ConstrettoConversionException(value.toString(), Map.class, "expected an object");
+            }
+            Map<String, CValue> entries = ((CObject) value).data();
+            Map<Object, Object> result = new HashMap<Object, Object>(entries.size() * 2);
+            for (Map.Entry<String, CValue> entry : entries.entrySet()) {
+                result.put(keyConverter.fromString(entry.getKey()), valueConverter.convert(entry.getValue()));
+            }
+            return result;
+        }
+    }
+
+    private static class ArrayConverter implements CompiledConverter<Object> {
+        private final Class<?> componentType;
+        private final CompiledConverter<?> elementConverter;
+
+        private ArrayConverter(Class<?> componentType, CompiledConverter<?> elementConverter) {
+            this.componentType = componentType;
+            this.elementConverter = elementConverter;
+        }
+
+        public Object convert(CValue value) throws ConstrettoException {
+            if (value == null) {
+                return null;
+            }
+            if (!(value instanceof CArray)) {
+                throw new ConstrettoConversionException(value.toString(), Array.newInstance(componentType, 0).getClass(), "expected an array");
+            }
+            List<CValue> elements = ((CArray) value).data();
+            Object result = Array.newInstance(componentType, elements.size());
+            for (int i = 0; i < elements.size(); i++) {
+                Array.set(result, i, elementConverter.convert(elements.get(i)));
+            }
+            return result;
+        }
+    }
+
+    private abstract static class PrimitiveArrayConverter implements CompiledConverter<Object> {
+        private final Class<?> arrayType;
+
+        private PrimitiveArrayConverter(Class<?> arrayType) {
+            this.arrayType = arrayType;
+        }
+
+        public Object convert(CValue value) throws ConstrettoException {
+            if (value == null) {
+                return null;
+            }
+            if (!(value instanceof CArray)) {
+                throw new ConstrettoConversionException(value.toString(), arrayType, "expected an array");
+            }
+            List<CValue> elements = ((CArray) value).data();
+            Object result = Array.newInstance(arrayType.getComponentType(), elements.size());
+            for (int i = 0; i < elements.size(); i++) {
+                CValue element = elements.get(i);
+                if (!(element instanceof CPrimitive)) {
+                    throw new ConstrettoConversionException(String.valueOf(element), arrayType.getComponentType(), "expected a number");
+                }
+                String number = ((CPrimitive) element).value();
+                try {
+                    set(result, i, number);
+                } catch (NumberFormatException e) {
+                    throw new ConstrettoConversionException(number, arrayType.getComponentType(), e, false);
+                }
+            }
+            return result;
+        }
+
+        protected abstract void set(Object array, int index, String value);
+    }
+
+    private static class IntArrayConverter extends PrimitiveArrayConverter {
+        private IntArrayConverter() {
+            super(int[].class);
+        }
+
+        protected void set(Object array, int index, String value) {
+            ((int[]) array)[index] = Integer.parseInt(value);
+        }
+    }
+
+    private static class LongArrayConverter extends PrimitiveArrayConverter {
+        private LongArrayConverter() {
+            super(long[].class);
+        }
+
+        protected void set(Object array, int index, String value) {
+            long[] longs = (long[]) array;
+            try {
+                longs[index] = Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                // hex and octal notations, as accepted by LongValueConverter
+                longs[index] = Long.decode(value);
+            }
+        }
+    }
+
+    private static class DoubleArrayConverter extends PrimitiveArrayConverter {
+        private DoubleArrayConverter() {
+            super(double[].class);
+        }
+
+        protected void set(Object array, int index, String value) {
+            ((double[]) array)[index] = Double.parseDouble(value);
+        }
+    }
+
+    private static class CompilationKey {
+        private final Type type;
+        private final Class<?> ownerClass;
+
+        private CompilationKey(Type type, Class<?> ownerClass) {
+            this.type = type;
+            this.ownerClass = ownerClass;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof CompilationKey)) return false;
+            CompilationKey that = (CompilationKey) o;
+            return type.equals(that.type) && (ownerClass == null ? that.ownerClass == null : ownerClass.equals(that.ownerClass));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * type.hashCode() + (ownerClass != null ? ownerClass.hashCode() : 0);
+        }
+    }
+
+    private static class Compiled {
+        private final long version;
+        private final CompiledConverter<?> converter;
+
+        private Compiled(long version, CompiledConverter<?> converter) {
+            this.version = version;
+            this.converter = converter;
+        }
+    }
+}
@@ -27,7 +27,7 @@ public class DoubleValueConverter implements ValueConverter<Double> {
         try {
             return Double.parseDouble(value);
         } catch (NumberFormatException e) {
-            throw new ConstrettoConversionException(value, Double.class, e);
+            throw new ConstrettoConversionException(value, Double.class, e, false);
         }
     }
 }
\ No newline at end of file
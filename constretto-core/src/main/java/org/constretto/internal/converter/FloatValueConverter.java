@@ -27,7 +27,7 @@ public class FloatValueConverter implements ValueConverter<Float> {
         try {
             return Float.parseFloat(value);
         } catch (NumberFormatException e) {
-            throw new ConstrettoConversionException(value, Float.class, e);
+            throw new ConstrettoConversionException(value, Float.class, e, false);
         }
     }
 
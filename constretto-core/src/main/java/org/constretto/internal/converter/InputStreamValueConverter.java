@@ -2,7 +2,6 @@ package org.constretto.internal.converter;
 
 import org.constretto.ValueConverter;
 import org.constretto.exception.ConstrettoConversionException;
-import org.constretto.model.Resource;
 
 import java.io.InputStream;
 
@@ -10,8 +9,17 @@ import java.io.InputStream;
  * @author <a href="mailto:thor.aage.eldby@arktekk.no">Thor Åge Eldby (teldby)</a>
  */
 public class InputStreamValueConverter implements ValueConverter<InputStream> {
+    private final ResourceContentCache cache;
+
+    public InputStreamValueConverter() {
+        this(ResourceContentCache.shared());
+    }
+
+    public InputStreamValueConverter(ResourceContentCache cache) {
+        this.cache = cache;
+    }
 
     public InputStream fromString(String resourceName) throws ConstrettoConversionException {
-        return Resource.create(resourceName).getInputStream();
+        return cache.open(resourceName);
     }
-}
\ No newline at end of file
+}
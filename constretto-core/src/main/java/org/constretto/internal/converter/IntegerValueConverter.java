@@ -27,7 +27,7 @@ public class IntegerValueConverter implements ValueConverter<Integer> {
         try {
             return Integer.parseInt(value);
         } catch (NumberFormatException e) {
-            throw new ConstrettoConversionException(value, Integer.class, e);
+            throw new ConstrettoConversionException(value, Integer.class, e, false);
         }
     }
 }
\ No newline at end of file
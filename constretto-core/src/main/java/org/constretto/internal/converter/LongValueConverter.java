@@ -27,7 +27,7 @@ public class LongValueConverter implements ValueConverter<Long> {
         try {
             return Long.decode(value);
         } catch (NumberFormatException e) {
-            throw new ConstrettoConversionException(value, Long.class, e);
+            throw new ConstrettoConversionException(value, Long.class, e, false);
         }
     }
 }
\ No newline at end of file
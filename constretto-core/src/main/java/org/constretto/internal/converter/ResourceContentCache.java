@@ -0,0 +1,292 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.constretto.internal.converter;
+
+import org.constretto.exception.ConstrettoException;
+import org.constretto.model.Resource;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Caches the content of resources referenced by configuration values, so converting the same resource name again
+ * does not read and parse it again.
+ * <p/>
+ * Content is keyed by resource name and the modification stamp of the resource, and is read again when the stamp
+ * changes. Resources without a known modification stamp, like urls, are never cached. When watching for changes,
+ * resources backed by a file are invalidated by a file system watcher instead, and their stamp is not checked on
+ * every lookup.
+ * <p/>
+ * Callers never get hold of the cached content itself, streams and properties are handed out as copies.
+ *
+ * @author <a href="mailto:kaare.nilsen@gmail.com">Kaare Nilsen</a>
+ */
+public class ResourceContentCache implements Closeable {
+    public static final int DEFAULT_MAX_CACHED_BYTES = 1024 * 1024;
+    private static final ResourceContentCache SHARED = new ResourceContentCache(false, DEFAULT_MAX_CACHED_BYTES);
+
+    private final ConcurrentMap<String, Content> contents = new ConcurrentHashMap<String, Content>();
+    private final int maxCachedBytes;
+    private final WatchService watchService;
+    private final Set<Path> watchedDirectories = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param watchForChanges whether to watch file backed resources for changes instead of checking their stamp
+     * @param maxCachedBytes  resources larger than this are read on every conversion
+     */
+    public ResourceContentCache(boolean watchForChanges, int maxCachedBytes) {
+        this.maxCachedBytes = maxCachedBytes;
+        this.watchService = watchForChanges ? newWatchService() : null;
+        if (watchService != null) {
+            Thread watcher = new Thread(new Runnable() {
+                public void run() {
+                    watch();
+                }
+            }, "constretto-resource-watcher");
+            watcher.setDaemon(true);
+            watcher.start();
+        }
+    }
+
+    /**
+     * @return the cache used by the default converters
+     */
+    public static ResourceContentCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Resources that are not cached, because their stamp is unknown or they are larger than the maximum cached size,
+     * are streamed from the resource instead of being read into memory first.
+     *
+     * @return a new stream over the content of the resource, or null if the resource does not exist
+     */
+    public InputStream open(String resourceName) throws ConstrettoException {
+        Content cached = contents.get(resourceName);
+        if (cached != null && cached.watched != null) {
+            return new ByteArrayInputStream(cached.bytes);
+        }
+        Resource resource = Resource.create(resourceName);
+        long stamp = resource.lastModified();
+        if (stamp == Resource.UNKNOWN_MODIFICATION) {
+            return resource.getInputStream();
+        }
+        if (cached != null && cached.stamp == stamp) {
+            return new ByteArrayInputStream(cached.bytes);
+        }
+        Path watched = watch(resource.getFile());
+        InputStream stream = resource.getInputStream();
+        if (stream == null) {
+            contents.remove(resourceName);
+            return null;
+        }
+        byte[] head = read(resource, stream, (long) maxCachedBytes + 1);
+        if (head.length > maxCachedBytes) {
+            return new SequenceInputStream(new ByteArrayInputStream(head), stream);
+        }
+        cache(resourceName, resource, new Content(stamp, head, watched));
+        return new ByteArrayInputStream(head);
+    }
+
+    /**
+     * @return a copy of the properties in the resource, read as xml if the name ends with ".xml"
+     */
+    public Properties properties(String resourceName) throws ConstrettoException, IOException {
+        Content content = content(resourceName);
+        if (content == null) {
+            throw new FileNotFoundException(resourceName);
+        }
+        Properties copy = new Properties();
+        copy.putAll(content.properties(resourceName));
+        return copy;
+    }
+
+    public void invalidate(String resourceName) {
+        contents.remove(resourceName);
+    }
+
+    public void clear() {
+        contents.clear();
+    }
+
+    public void close() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    private Content content(String resourceName) throws ConstrettoException {
+        Content cached = contents.get(resourceName);
+        if (cached != null && cached.watched != null) {
+            return cached;
+        }
+        Resource resource = Resource.create(resourceName);
+        long stamp = resource.lastModified();
+        if (cached != null && stamp != Resource.UNKNOWN_MODIFICATION && cached.stamp == stamp) {
+            return cached;
+        }
+        Path watched = stamp != Resource.UNKNOWN_MODIFICATION ? watch(resource.getFile()) : null;
+        InputStream stream = resource.getInputStream();
+        if (stream == null) {
+            contents.remove(resourceName);
+            return null;
+        }
+        Content content = new Content(stamp, read(resource, stream, Long.MAX_VALUE), watched);
+        if (stamp != Resource.UNKNOWN_MODIFICATION && content.bytes.length <= maxCachedBytes) {
+            cache(resourceName, resource, content);
+        }
+        return content;
+    }
+
+    private void cache(String resourceName, Resource resource, Content content) {
+        contents.put(resourceName, content);
+        if (content.watched != null && resource.lastModified() != content.stamp) {
+            // changed while it was read, the change may have been signalled before the content was cached
+            contents.remove(resourceName, content);
+        }
+    }
+
+    /**
+     * Reads the stream until it ends or the limit is reached. The stream is closed unless the limit is reached
+     * before it ends.
+     */
+    private static byte[] read(Resource resource, InputStream stream, long limit) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        try {
+            int read = 0;
+            while (out.size() < limit && (read = stream.read(buffer, 0, (int) Math.min(buffer.length, limit - out.size()))) != -1) {
+                out.write(buffer, 0, read);
+            }
+            if (read == -1) {
+                stream.close();
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            closeQuietly(stream);
+            throw new ConstrettoException("Could not read " + resource, e);
+        }
+    }
+
+    private static void closeQuietly(InputStream stream) {
+        try {
+            stream.close();
+        } catch (IOException e) {
+            // already failing
+        }
+    }
+
+    /**
+     * @return the path of the watched file, or null if the file can not be watched
+     */
+    private Path watch(File file) {
+        if (watchService == null || file == null) {
+            return null;
+        }
+        Path path = file.getAbsoluteFile().toPath();
+        Path directory = path.getParent();
+        if (directory == null) {
+            return null;
+        }
+        if (watchedDirectories.contains(directory)) {
+            return path;
+        }
+        try {
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.OVERFLOW);
+            watchedDirectories.add(directory);
+            return path;
+        } catch (IOException e) {
+            return null;
+        } catch (ClosedWatchServiceException e) {
+            return null;
+        }
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                Path directory = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        invalidateDirectory(directory, null);
+                    } else {
+                        invalidateDirectory(directory, directory.resolve((Path) event.context()));
+                    }
+                }
+                if (!key.reset()) {
+                    watchedDirectories.remove(directory);
+                    invalidateDirectory(directory, null);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // closed, stop watching
+        }
+    }
+
+    private void invalidateDirectory(Path directory, Path changed) {
+        for (Iterator<Map.Entry<String, Content>> entries = contents.entrySet().iterator(); entries.hasNext(); ) {
+            Path path = entries.next().getValue().watched;
+            if (path != null && (changed == null ? directory.equals(path.getParent()) : changed.equals(path))) {
+                entries.remove();
+            }
+        }
+    }
+
+    private static WatchService newWatchService() {
+        try {
+            return FileSystems.getDefault().newWatchService();
+        } catch (IOException e) {
+            throw new ConstrettoException("Could not watch resources for changes", e);
+        }
+    }
+
+    private static class Content {
+        private final long stamp;
+        private final byte[] bytes;
+        private final Path watched;
+        private volatile Properties properties;
+
+        private Content(long stamp, byte[] bytes, Path watched) {
+            this.stamp = stamp;
+            this.bytes = bytes;
+            this.watched = watched;
+        }
+
+        private Properties properties(String resourceName) throws IOException {
+            Properties parsed = properties;
+            if (parsed == null) {
+                parsed = new Properties();
+                if (resourceName.endsWith(".xml")) {
+                    parsed.loadFromXML(new ByteArrayInputStream(bytes));
+                } else {
+                    parsed.load(new ByteArrayInputStream(bytes));
+                }
+                properties = parsed;
+            }
+            return parsed;
+        }
+    }
+}
@@ -27,7 +27,7 @@ public class ShortValueConverter implements ValueConverter<Short> {
         try {
             return Short.parseShort(value);
         } catch (NumberFormatException e) {
-            throw new ConstrettoConversionException(value, Short.class, e);
+            throw new ConstrettoConversionException(value, Short.class, e, false);
         }
     }
 }
\ No newline at end of file
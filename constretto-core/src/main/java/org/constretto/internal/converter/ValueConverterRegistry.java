@@ -24,101 +24,87 @@ import org.constretto.model.CPrimitive;
 import org.constretto.model.CValue;
 
 import java.io.File;
+import java.io.InputStream;
 import java.net.InetAddress;
 import java.net.URI;
 import java.net.URL;
+import java.time.Duration;
 import java.util.*;
 
 /**
+ * The global value converters. Converters registered here are used by every configuration, unless a
+ * configuration has its own {@link ValueConverterScope} with a converter for the same class.
+ *
  * @author <a href="mailto:kaare.nilsen@gmail.com">Kaare Nilsen</a>
  */
 public class ValueConverterRegistry {
-    private static final Map<Class<?>, ValueConverter<?>> converters = new HashMap<Class<?>, ValueConverter<?>>() {
+    private static final ValueConverterScope converters = new ValueConverterScope(null) {
         {
-            put(Boolean.class, new BooleanValueConverter());
-            put(boolean.class, new BooleanValueConverter());
-            put(Float.class, new FloatValueConverter());
-            put(float.class, new FloatValueConverter());
-            put(Double.class, new DoubleValueConverter());
-            put(double.class, new DoubleValueConverter());
-            put(Long.class, new LongValueConverter());
-            put(long.class, new LongValueConverter());
-            put(Integer.class, new IntegerValueConverter());
-            put(int.class, new IntegerValueConverter());
-            put(Byte.class, new ByteValueConverter());
-            put(byte.class, new ByteValueConverter());
-            put(Short.class, new ShortValueConverter());
-            put(short.class, new ShortValueConverter());
-            put(String.class, new StringValueConverter());
-            put(File.class, new FileValueConverter());
-            put(Locale.class, new LocaleValueConverter());
-            put(Properties.class, new PropertyFileValueConverter());
-            put(InputStreamValueConverter.class, new InputStreamValueConverter());
-            put(InetAddress.class, new InetAddressValueConverter());
-            put(URI.class, new UriValueConverter());
-            put(URL.class, new UrlValueConverter());
+            registerConverter(Boolean.class, new BooleanValueConverter());
+            registerConverter(boolean.class, new BooleanValueConverter());
+            registerConverter(Float.class, new FloatValueConverter());
+            registerConverter(float.class, new FloatValueConverter());
+            registerConverter(Double.class, new DoubleValueConverter());
+            registerConverter(double.class, new DoubleValueConverter());
+            registerConverter(Long.class, new LongValueConverter());
+            registerConverter(long.class, new LongValueConverter());
+            registerConverter(Integer.class, new IntegerValueConverter());
+            registerConverter(int.class, new IntegerValueConverter());
+            registerConverter(Byte.class, new ByteValueConverter());
+            registerConverter(byte.class, new ByteValueConverter());
+            registerConverter(Short.class, new ShortValueConverter());
+            registerConverter(short.class, new ShortValueConverter());
+            registerConverter(String.class, new StringValueConverter());
+            registerConverter(File.class, new FileValueConverter());
+            registerConverter(Locale.class, new LocaleValueConverter());
+            registerConverter(Properties.class, new PropertyFileValueConverter());
+            registerConverter(InputStream.class, new InputStreamValueConverter());
+            registerConverter(InetAddress.class, new InetAddressValueConverter());
+            registerConverter(URI.class, new UriValueConverter());
+            registerConverter(URL.class, new UrlValueConverter());
+            registerConverter(Duration.class, new DurationValueConverter());
         }
     };
 
     public static void registerCustomConverter(Class<?> converterFor, ValueConverter<?> converter) {
-        converters.put(converterFor, converter);
+        converters.registerConverter(converterFor, converter);
     }
 
-    @SuppressWarnings("unchecked")
-    public static <K, V> Object convert(Class<V> valueClazz, Class<K> keyClazz, CValue value) throws ConstrettoException {
-        if (value instanceof CPrimitive) {
-            return convertPrimitive(valueClazz, (CPrimitive) value);
-        } else if (value instanceof CArray) {
-            return convertList(valueClazz, (CArray) value);
-        } else if (value instanceof CObject) {
-            return convertMap(keyClazz, valueClazz, (CObject) value);
-        } else {
-            throw new ConstrettoException("invalid datatype, parsing haz failed");
-        }
+    /**
+     * @return a new scope for converters only used by a single configuration, falling back to the global converters
+     */
+    public static ValueConverterScope newScope() {
+        return new ValueConverterScope(converters);
+    }
 
+    /**
+     * @return the scope holding the global converters
+     */
+    public static ValueConverterScope globalScope() {
+        return converters;
+    }
+
+    public static <K, V> Object convert(Class<V> valueClazz, Class<K> keyClazz, CValue value) throws ConstrettoException {
+        return converters.convert(valueClazz, keyClazz, value);
     }
 
-    @SuppressWarnings("unchecked")
     public static <T> List<T> convertList(Class<T> clazz, CArray list) throws ConstrettoException {
-        List<T> result = new ArrayList<T>();
-        for (CValue value : list.data()) {
-            result.add((T) convert(clazz, clazz, value));
-        }
-        return result;
+        return converters.convertList(clazz, list);
     }
 
-    @SuppressWarnings("unchecked")
     public static <T> T convertPrimitive(Class<T> clazz, CPrimitive value) throws ConstrettoException {
-        if (!converters.containsKey(clazz)) {
-            if (!Enum.class.isAssignableFrom(clazz)) {
-                throw new ConstrettoException("No converter found for class: " + clazz.getName());
-            }
-
-            return (T) convertEnum((Class) clazz, value.value());
-        }
-        ValueConverter<?> converter = converters.get(clazz);
-        return (T) converter.fromString(value.value());
+        return converters.convertPrimitive(clazz, value);
     }
 
-    @SuppressWarnings("unchecked")
     public static <K, V> Map<K, V> convertMap(Class<K> keyClazz, Class<V> valueClazz, CObject value) throws ConstrettoException {
-        if (!converters.containsKey(keyClazz)) {
-            throw new ConstrettoException("No converter found for class: " + keyClazz.getName());
-        }
-        Map<K, V> result = new HashMap<K, V>();
-        ValueConverter<K> keyConverter = (ValueConverter<K>) converters.get(keyClazz);
-
-        for (Map.Entry<String, CValue> valueEntry : value.data().entrySet()) {
-            result.put(keyConverter.fromString(valueEntry.getKey()), (V) convert(valueClazz, keyClazz, valueEntry.getValue()));
-        }
-        return result;
+        return converters.convertMap(keyClazz, valueClazz, value);
     }
 
     public static <T extends Enum<T>> T convertEnum(Class<T> clazz, String value) {
         try {
             return Enum.valueOf(clazz, value);
         } catch (IllegalArgumentException e) {
-            throw new ConstrettoConversionException(value, clazz, e);
+            throw new ConstrettoConversionException(value, clazz, e, false);
         }
     }
 }
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.constretto.internal.converter;
+
+import org.constretto.ValueConverter;
+import org.constretto.exception.ConstrettoException;
+import org.constretto.model.CArray;
+import org.constretto.model.CObject;
+import org.constretto.model.CPrimitive;
+import org.constretto.model.CValue;
+
+import java.lang.reflect.Type;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A set of value converters that is safe to register converters in while other threads are converting.
+ * <p/>
+ * A converter is found by looking for the target class itself, in this scope and then in the parent scope. If
+ * none is registered for it, a converter registered for a subtype of the target class is used, since the values
+ * it makes can be assigned to the target; a converter for a supertype is never used, as its values may not fit.
+ * When a scope has converters for more than one subtype, none of them is chosen.
+ * The resolved converter is cached per target class, and the caches are invalidated whenever a converter is
+ * registered in any scope. Generic target types are converted through converter trees compiled by
+ * {@link ConverterCompiler}.
+ *
+ * @author <a href="mailto:kaare.nilsen@gmail.com">Kaare Nilsen</a>
+ */
+public class ValueConverterScope {
+    private static final AtomicLong registrations = new AtomicLong();
+
+    private final ValueConverterScope parent;
+    private final ConverterCompiler compiler = new ConverterCompiler(this);
+    private final ConcurrentMap<Class<?>, ValueConverter<?>> converters = new ConcurrentHashMap<Class<?>, ValueConverter<?>>();
+    private final ClassValue<ResolvedConverter> resolvedConverters = new ClassValue<ResolvedConverter>() {
+        @Override
+        protected ResolvedConverter computeValue(Class<?> type) {
+            long version = registrations.get();
+            return new ResolvedConverter(version, resolve(type));
+        }
+    };
+
+    /**
+     * @param parent the scope to fall back to, or null for a root scope
+     */
+    public ValueConverterScope(ValueConverterScope parent) {
+        this.parent = parent;
+    }
+
+    public void registerConverter(Class<?> converterFor, ValueConverter<?> converter) {
+        converters.put(converterFor, converter);
+        registrations.incrementAndGet();
+    }
+
+    /**
+     * @param targetClass the class to find a converter for
+     * @return the converter for the class or for its only registered subtype, or null if there is none
+     */
+    public ValueConverter<?> converterFor(Class<?> targetClass) {
+        ResolvedConverter resolved = resolvedConverters.get(targetClass);
+        if (resolved.version != registrations.get()) {
+            resolvedConverters.remove(targetClass);
+            resolved = resolvedConverters.get(targetClass);
+        }
+        return resolved.converter;
+    }
+
+    /**
+     * @param targetType the generic type to convert to, like <code>Map&lt;String, List&lt;Integer&gt;&gt;</code>
+     * @param ownerClass the class to resolve type variables in the target type against, may be null
+     * @return a converter for the type, compiled once and cached
+     */
+    public CompiledConverter<?> compile(Type targetType, Class<?> ownerClass) throws ConstrettoException {
+        return compiler.compile(targetType, ownerClass);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <K, V> Object convert(Class<V> valueClazz, Class<K> keyClazz, CValue value) throws ConstrettoException {
+        if (value instanceof CPrimitive) {
+            return convertPrimitive(valueClazz, (CPrimitive) value);
+        } else if (value instanceof CArray) {
+            return convertList(valueClazz, (CArray) value);
+        } else if (value instanceof CObject) {
+            return convertMap(keyClazz, valueClazz, (CObject) value);
+        } else {
+            throw new ConstrettoException("invalid datatype, parsing haz failed");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> List<T> convertList(Class<T> clazz, CArray list) throws ConstrettoException {
+        List<T> result = new ArrayList<T>();
+        for (CValue value : list.data()) {
+            result.add((T) convert(clazz, clazz, value));
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T convertPrimitive(Class<T> clazz, CPrimitive value) throws ConstrettoException {
+        ValueConverter<?> converter = converterFor(clazz);
+        if (converter == null) {
+            if (!Enum.class.isAssignableFrom(clazz)) {
+                throw new ConstrettoException("No converter found for class: " + clazz.getName());
+            }
+            return (T) ValueConverterRegistry.convertEnum((Class) clazz, value.value());
+        }
+        return (T) converter.fromString(value.value());
+    }
+
+    @SuppressWarnings("unchecked")
+    public <K, V> Map<K, V> convertMap(Class<K> keyClazz, Class<V> valueClazz, CObject value) throws ConstrettoException {
+        ValueConverter<K> keyConverter = (ValueConverter<K>) converterFor(keyClazz);
+        if (keyConverter == null) {
+            throw new ConstrettoException("No converter found for class: " + keyClazz.getName());
+        }
+        Map<K, V> result = new HashMap<K, V>();
+        for (Map.Entry<String, CValue> valueEntry : value.data().entrySet()) {
+            result.put(keyConverter.fromString(valueEntry.getKey()), (V) convert(valueClazz, keyClazz, valueEntry.getValue()));
+        }
+        return result;
+    }
+
+    static long registrationCount() {
+        return registrations.get();
+    }
+
+    private ValueConverter<?> resolve(Class<?> targetClass) {
+        ValueConverter<?> converter = registeredFor(targetClass);
+        return converter != null ? converter : registeredForSubtypeOf(targetClass);
+    }
+
+    private ValueConverter<?> registeredForSubtypeOf(Class<?> targetClass) {
+        ValueConverter<?> found = null;
+        for (Map.Entry<Class<?>, ValueConverter<?>> entry : converters.entrySet()) {
+            if (entry.getKey() != targetClass && targetClass.isAssignableFrom(entry.getKey())) {
+                if (found != null) {
+                    return null;
+                }
+                found = entry.getValue();
+            }
+        }
+        if (found == null && parent != null) {
+            found = parent.registeredForSubtypeOf(targetClass);
+        }
+        return found;
+    }
+
+    private ValueConverter<?> registeredFor(Class<?> type) {
+        ValueConverter<?> converter = converters.get(type);
+        if (converter == null && parent != null) {
+            converter = parent.registeredFor(type);
+        }
+        return converter;
+    }
+
+    private static class ResolvedConverter {
+        private final long version;
+        private final ValueConverter<?> converter;
+
+        private ResolvedConverter(long version, ValueConverter<?> converter) {
+            this.version = version;
+            this.converter = converter;
+        }
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.constretto.internal.store;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import org.constretto.ConfigurationStore;
+import org.constretto.Subscription;
+import org.constretto.exception.ConstrettoException;
+import org.constretto.model.CValue;
+import org.constretto.model.TaggedPropertySet;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps the last values read from another store in a local file, so a configuration can start from them when
+ * the store is slow or down.
+ * <p/>
+ * The first parse is served from the file if there is one, and the store is read again in the background. A
+ * refresh only replaces the values when the store could be read and gave other values than the ones in use;
+ * a failing store leaves the last good values in place. The values are written to the file each time they
+ * are replaced. Configurations built from this store see refreshed values when they are reloaded, for instance
+ * from a listener added with {@link #onRefresh(Runnable)}.
+ * <p/>
+ * Values are kept in the file as strings, like the properties of {@link TaggedPropertySet#getProperties()}, except
+ * for the values of an {@link EncryptedPropertiesStore} that are kept encrypted, on the form ENC(...), and are
+ * decrypted on access again when read back from the file. Values are compared in the same form, so a refresh does
+ * not decrypt them. An encrypted store decrypting its values on load does not keep the encrypted values, and can
+ * not be cached in a file. Without a file the values are only kept in memory, which is how the builder keeps the
+ * stores it refreshes periodically, so a configuration reloaded for one store does not read the others again.
+ *
+ * @author <a href="mailto:kaare.nilsen@gmail.com">Kaare Nilsen</a>
+ * @since 3.0
+ */
+public class CachingConfigurationStore implements ConfigurationStore {
+    public static final Charset DEFAULT_CHARSET = Charset.forName("UTF-8");
+    private static final Executor DEFAULT_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "constretto-store-refresh-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final ConfigurationStore store;
+    private final File cacheFile;
+    private final Executor executor;
+    private final AtomicReference<List<TaggedPropertySet>> current = new AtomicReference<List<TaggedPropertySet>>();
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<Runnable>();
+    private volatile Exception lastFailure;
+    private volatile long version;
+
+    /**
+     * @param store the store to read values from, keeping the last values read in memory only
+     */
+    public CachingConfigurationStore(ConfigurationStore store) {
+        this(store, null, DEFAULT_EXECUTOR);
+    }
+
+    /**
+     * @param store     the store to read values from
+     * @param cacheFile the file to keep the last values read in
+     */
+    public CachingConfigurationStore(ConfigurationStore store, File cacheFile) {
+        this(store, cacheFile, DEFAULT_EXECUTOR);
+    }
+
+    /**
+     * @param store     the store to read values from
+     * @param cacheFile the file to keep the last values read in, or <code>null</code> to keep them in memory only
+     * @param executor  the executor to read the store on after the values are served from the file
+     */
+    public CachingConfigurationStore(ConfigurationStore store, File cacheFile, Executor executor) {
+        if (cacheFile != null && store instanceof EncryptedPropertiesStore && ((EncryptedPropertiesStore) store).decryptsOnLoad()) {
+            throw new ConstrettoException("Can not keep the values of an encrypted store decrypting on load in the cache file "
+                    + cacheFile + ", the values would be written decrypted. Decrypt on access instead");
+        }
+        this.store = store;
+        this.cacheFile = cacheFile;
+        this.executor = executor;
+    }
+
+    public Collection<TaggedPropertySet> parseConfiguration() {
+        List<TaggedPropertySet> propertySets = current.get();
+        if (propertySets != null) {
+            return propertySets;
+        }
+        List<TaggedPropertySet> cached = readCache();
+        if (cached != null) {
+            if (current.compareAndSet(null, cached)) {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        refresh();
+                    }
+                });
+            }
+            return current.get();
+        }
+        refreshFromStore();
+        return current.get();
+    }
+
+    /**
+     * @return the values in use, or else the values in the cache file, without reading the store; <code>null</code> if there are none
+     */
+    public Collection<TaggedPropertySet> cached() {
+        List<TaggedPropertySet> propertySets = current.get();
+        return propertySets != null ? propertySets : readCache();
+    }
+
+    /**
+     * Reads the store again, and replaces the values in use if the store gave other values.
+     * Refreshes of the same store run one at a time.
+     *
+     * @return true if the values were replaced, false if they were unchanged or the store could not be read
+     */
+    public boolean refresh() {
+        try {
+            return refreshFromStore();
+        } catch (RuntimeException e) {
+            lastFailure = e;
+            return false;
+        }
+    }
+
+    private synchronized boolean refreshFromStore() {
+        List<TaggedPropertySet> fresh = new ArrayList<TaggedPropertySet>(store.parseConfiguration());
+        lastFailure = null;
+        List<TaggedPropertySet> previous = current.get();
+        if (previous != null && propertiesOf(previous).equals(propertiesOf(fresh))) {
+            return false;
+        }
+        current.set(Collections.unmodifiableList(fresh));
+        version++;
+        try {
+            writeCache(fresh);
+        } catch (ConstrettoException e) {
+            lastFailure = e;
+        }
+        if (previous != null) {
+            for (Runnable listener : listeners) {
+                listener.run();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Runs the listener each time a refresh replaces the values.
+     *
+     * @param listener the listener to run, on the thread doing the refresh
+     * @return the subscription to cancel to stop running the listener
+     */
+    public Subscription onRefresh(final Runnable listener) {
+        listeners.add(listener);
+        return new Subscription() {
+            public void cancel() {
+                listeners.remove(listener);
+            }
+        };
+    }
+
+    /**
+     * @return the number of times the values in use have been replaced, so each of several configurations built from
+     * this store can tell whether it has seen the latest values, whichever of them refreshed the store
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * @return the store the values are read from
+     */
+    public ConfigurationStore store() {
+        return store;
+    }
+
+    /**
+     * @return why the last refresh could not read the store or write the file, or <code>null</code> if it succeeded
+     */
+    public Exception lastFailure() {
+        return lastFailure;
+    }
+
+    private static List<Map.Entry<String, Map<String, String>>> propertiesOf(List<TaggedPropertySet> propertySets) {
+        List<Map.Entry<String, Map<String, String>>> properties = new ArrayList<Map.Entry<String, Map<String, String>>>();
+        for (TaggedPropertySet propertySet : propertySets) {
+            properties.add(new AbstractMap.SimpleImmutableEntry<String, Map<String, String>>(propertySet.tag(), rawPropertiesOf(propertySet)));
+        }
+        return properties;
+    }
+
+    /**
+     * @return the properties of the set, with encrypted values kept encrypted
+     */
+    private static Map<String, String> rawPropertiesOf(TaggedPropertySet propertySet) {
+        if (!propertySet.isParsed()) {
+            return propertySet.getProperties();
+        }
+        Map<String, String> properties = new HashMap<String, String>();
+        for (Map.Entry<String, CValue> entry : propertySet.getValues().entrySet()) {
+            CValue value = entry.getValue();
+            properties.put(entry.getKey(), value instanceof EncryptedValue ? ((EncryptedValue) value).encryptedValue() : String.valueOf(value));
+        }
+        return properties;
+    }
+
+    private List<TaggedPropertySet> readCache() {
+        if (cacheFile == null || !cacheFile.isFile()) {
+            return null;
+        }
+        List<TaggedPropertySet> propertySets = new ArrayList<TaggedPropertySet>();
+        try (JsonReader reader = new JsonReader(new InputStreamReader(new FileInputStream(cacheFile), DEFAULT_CHARSET))) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                String tag = null;
+                Map<String, String> properties = new HashMap<String, String>();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if ("tag".equals(name)) {
+                        tag = reader.nextString();
+                    } else if ("properties".equals(name)) {
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            properties.put(reader.nextName(), reader.nextString());
+                        }
+                        reader.endObject();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                if (store instanceof EncryptedPropertiesStore) {
+                    propertySets.add(((EncryptedPropertiesStore) store).createPropertySet(tag, properties));
+                } else {
+                    propertySets.add(new TaggedPropertySet(tag, Collections.unmodifiableMap(properties), store.getClass()));
+                }
+            }
+            reader.endArray();
+        } catch (IOException e) {
+            return null;
+        } catch (RuntimeException e) {
+            return null;
+        }
+        return Collections.unmodifiableList(propertySets);
+    }
+
+    private void writeCache(List<TaggedPropertySet> propertySets) {
+        if (cacheFile == null) {
+            return;
+        }
+        File directory = cacheFile.getAbsoluteFile().getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new ConstrettoException("Could not create the directory of the cache file " + cacheFile);
+        }
+        File tempFile = new File(cacheFile.getPath() + ".tmp");
+        try (JsonWriter writer = new JsonWriter(new OutputStreamWriter(new FileOutputStream(tempFile), DEFAULT_CHARSET))) {
+            writer.beginArray();
+            for (TaggedPropertySet propertySet : propertySets) {
+                writer.beginObject();
+                writer.name("tag").value(propertySet.tag());
+                writer.name("properties").beginObject();
+                for (Map.Entry<String, String> entry : new TreeMap<String, String>(rawPropertiesOf(propertySet)).entrySet()) {
+                    writer.name(entry.getKey()).value(entry.getValue());
+                }
+                writer.endObject();
+                writer.endObject();
+            }
+            writer.endArray();
+        } catch (IOException e) {
+            throw new ConstrettoException("Could not write the cache file " + cacheFile, e);
+        }
+        try {
+            try {
+                Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            throw new ConstrettoException("Could not write the cache file " + cacheFile, e);
+        }
+    }
+}
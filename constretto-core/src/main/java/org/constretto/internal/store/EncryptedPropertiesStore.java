@@ -1,19 +1,52 @@
 package org.constretto.internal.store;
 
+import org.constretto.model.CValue;
+import org.constretto.model.GsonParser;
+import org.constretto.model.Parser;
+import org.constretto.model.Resource;
+import org.constretto.model.TaggedPropertySet;
 import org.jasypt.encryption.pbe.PBEStringEncryptor;
+import org.jasypt.encryption.pbe.PooledPBEStringEncryptor;
 import org.jasypt.encryption.pbe.StandardPBEStringEncryptor;
 import org.jasypt.properties.EncryptableProperties;
+import org.jasypt.properties.PropertyValueEncryptionUtils;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 /**
  * Has support for jasypt encrypted properties.
  * See  <a href="http://www.jasypt.org/cli.html">Jasypt CLI</a> and <a href="http://www.jasypt.org/encrypting-configuration.html">Jasypt Configuration Files</a>
+ * <p/>
+ * By default values are decrypted when the properties are read. Using {@link DecryptionMode#ON_ACCESS} the
+ * values are kept encrypted in the configuration and decrypted the first time they are looked up, while
+ * {@link DecryptionMode#PARALLEL_WARMUP} decrypts all of them in parallel when the configuration is built.
+ * In both cases the decrypted value is cached for the lifetime of the built configuration.
  *
  * @author Ole-Martin Mørk (olemartin@openadex.com)
  */
 public class EncryptedPropertiesStore extends PropertiesStore {
     private final PBEStringEncryptor encryptor;
+    private final DecryptionMode decryptionMode;
+    private final Parser parser = new GsonParser();
+
+    public enum DecryptionMode {
+        /**
+         * Decrypts values when the properties are read
+         */
+        ON_LOAD,
+        /**
+         * Keeps values encrypted until they are first looked up
+         */
+        ON_ACCESS,
+        /**
+         * Keeps values encrypted in the store, but decrypts them in parallel when the configuration is built
+         */
+        PARALLEL_WARMUP
+    }
 
     /**
      * Creates a new instance
@@ -21,8 +54,29 @@ public class EncryptedPropertiesStore extends PropertiesStore {
      * @param passwordProperty the name of the system property to read from
      */
     public EncryptedPropertiesStore(String passwordProperty) {
-        encryptor = new StandardPBEStringEncryptor();
-        encryptor.setPassword(getFromSystemPropertyOrSystemEnv(passwordProperty));
+        this(passwordProperty, DecryptionMode.ON_LOAD);
+    }
+
+    /**
+     * Creates a new instance
+     *
+     * @param passwordProperty the name of the system property to read from
+     * @param decryptionMode   when encrypted values should be decrypted
+     */
+    public EncryptedPropertiesStore(String passwordProperty, DecryptionMode decryptionMode) {
+        String password = getFromSystemPropertyOrSystemEnv(passwordProperty);
+        if (decryptionMode == DecryptionMode.ON_LOAD) {
+            StandardPBEStringEncryptor standardEncryptor = new StandardPBEStringEncryptor();
+            standardEncryptor.setPassword(password);
+            this.encryptor = standardEncryptor;
+        } else {
+            // a standard encryptor decrypts one value at a time, a pool of them lets values be decrypted in parallel
+            PooledPBEStringEncryptor pooledEncryptor = new PooledPBEStringEncryptor();
+            pooledEncryptor.setPoolSize(Runtime.getRuntime().availableProcessors());
+            pooledEncryptor.setPassword(password);
+            this.encryptor = pooledEncryptor;
+        }
+        this.decryptionMode = decryptionMode;
     }
 
 
@@ -34,14 +88,64 @@ public class EncryptedPropertiesStore extends PropertiesStore {
         return password;
     }
 
+    @Override
+    public EncryptedPropertiesStore addResource(Resource resource) {
+        super.addResource(resource);
+        return this;
+    }
+
+    @Override
+    public List<TaggedPropertySet> parseConfiguration() {
+        List<TaggedPropertySet> taggedPropertySets = super.parseConfiguration();
+        if (decryptionMode == DecryptionMode.PARALLEL_WARMUP) {
+            List<EncryptedValue> encryptedValues = new ArrayList<EncryptedValue>();
+            for (TaggedPropertySet taggedPropertySet : taggedPropertySets) {
+                for (CValue value : taggedPropertySet.getValues().values()) {
+                    if (value instanceof EncryptedValue) {
+                        encryptedValues.add((EncryptedValue) value);
+                    }
+                }
+            }
+            encryptedValues.parallelStream().forEach(EncryptedValue::value);
+        }
+        return taggedPropertySets;
+    }
+
+    /**
+     * @return true if the values are decrypted when the properties are read, so the encrypted values are not kept
+     */
+    boolean decryptsOnLoad() {
+        return decryptionMode == DecryptionMode.ON_LOAD;
+    }
+
     /**
      * Uses jasypt to parse the properties
      *
      * @param props the properties currently read
-     * @return an instance of {@link org.jasypt.properties.EncryptableProperties}
+     * @return an instance of {@link org.jasypt.properties.EncryptableProperties}, or the argument when decryption
+     * is deferred
      */
     @Override
     protected Properties parseProperties(Properties props) {
-        return new EncryptableProperties(props, encryptor);
+        if (decryptionMode == DecryptionMode.ON_LOAD) {
+            return new EncryptableProperties(props, encryptor);
+        }
+        return props;
+    }
+
+    @Override
+    protected TaggedPropertySet createPropertySet(String tag, Map<String, String> properties) {
+        if (decryptionMode == DecryptionMode.ON_LOAD) {
+            return super.createPropertySet(tag, properties);
+        }
+        Map<String, CValue> values = new HashMap<String, CValue>();
+        for (Map.Entry<String, String> entry : properties.entrySet()) {
+            if (PropertyValueEncryptionUtils.isEncryptedValue(entry.getValue())) {
+                values.put(entry.getKey(), new EncryptedValue(entry.getValue(), encryptor));
+            } else {
+                values.put(entry.getKey(), parser.parse(entry.getValue()));
+            }
+        }
+        return TaggedPropertySet.parsed(tag, values, getClass());
     }
-}
\ No newline at end of file
+}
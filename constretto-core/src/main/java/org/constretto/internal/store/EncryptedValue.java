@@ -0,0 +1,63 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.constretto.internal.store;
+
+import org.constretto.model.CPrimitive;
+import org.jasypt.encryption.StringEncryptor;
+import org.jasypt.properties.PropertyValueEncryptionUtils;
+
+/**
+ * A primitive holding a jasypt encrypted value on the form ENC(...). The value is decrypted the first time it is
+ * read, and the plain text is kept for the lifetime of this instance.
+ */
+class EncryptedValue extends CPrimitive {
+    private final StringEncryptor encryptor;
+    private volatile String decrypted;
+
+    EncryptedValue(String encryptedValue, StringEncryptor encryptor) {
+        super(encryptedValue);
+        this.encryptor = encryptor;
+    }
+
+    /**
+     * @return the value on the form ENC(...), without decrypting it
+     */
+    String encryptedValue() {
+        return super.value();
+    }
+
+    /**
+     * @return true if the value has been decrypted
+     */
+    boolean isDecrypted() {
+        return decrypted != null;
+    }
+
+    @Override
+    public String value() {
+        String result = decrypted;
+        if (result == null) {
+            result = PropertyValueEncryptionUtils.decrypt(super.value(), encryptor);
+            decrypted = result;
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return value();
+    }
+}
@@ -1,17 +1,26 @@
 package org.constretto.internal.store;
 
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import org.constretto.ConfigurationStore;
 import org.constretto.exception.ConstrettoException;
-import org.constretto.model.Resource;
-import org.constretto.model.TaggedPropertySet;
+import org.constretto.model.*;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.nio.charset.Charset;
 import java.util.*;
 
 import static java.util.Collections.addAll;
 
+/**
+ * Reads json documents as configuration values. Each resource is read exactly once per parse using a streaming
+ * reader, and the resulting value tree is shared between all the tags the resource is registered with.
+ * <p/>
+ * Resources added with {@link #addFlattenedResource(Resource, String, String...)} have their nested objects
+ * flattened into dotted keys, i.e. <code>{"a":{"b":1}}</code> added with the key "root" becomes "root.a.b".
+ */
 public class JsonStore implements ConfigurationStore {
     public static final Charset DEFAULT_CHARSET = Charset.forName("UTF-8");
     private Map<String, TaggedResource> resources;
@@ -27,9 +36,17 @@ public class JsonStore implements ConfigurationStore {
     }
 
     public JsonStore addResource(Resource resource, String key, String... tags) {
+        return addResource(resource, key, false, tags);
+    }
+
+    public JsonStore addFlattenedResource(Resource resource, String key, String... tags) {
+        return addResource(resource, key, true, tags);
+    }
+
+    private JsonStore addResource(Resource resource, String key, boolean flatten, String... tags) {
         List<String> tagList = new ArrayList<String>();
         addAll(tagList, tags);
-        return new JsonStore(this, key, new TaggedResource(resource, tagList));
+        return new JsonStore(this, key, new TaggedResource(resource, tagList, flatten));
     }
 
     public Collection<TaggedPropertySet> parseConfiguration() {
@@ -37,15 +54,12 @@ public class JsonStore implements ConfigurationStore {
         for (Map.Entry<String, TaggedResource> entry : resources.entrySet()) {
             TaggedResource taggedResource = entry.getValue();
             if (taggedResource.resource.exists()) {
+                Map<String, CValue> values = readValues(entry.getKey(), taggedResource);
                 if (taggedResource.tags.isEmpty()) {
-                    HashMap<String, String> property = new HashMap<String, String>();
-                    property.put(entry.getKey(), readJson(taggedResource.resource));
-                    properties.add(new TaggedPropertySet(property, JsonStore.class));
+                    properties.add(TaggedPropertySet.parsed(ConfigurationValue.DEFAULT_TAG, values, JsonStore.class));
                 } else {
                     for (String tag : taggedResource.tags) {
-                        HashMap<String, String> property = new HashMap<String, String>();
-                        property.put(entry.getKey(), readJson(taggedResource.resource));
-                        properties.add(new TaggedPropertySet(tag, property, JsonStore.class));
+                        properties.add(TaggedPropertySet.parsed(tag, values, JsonStore.class));
                     }
                 }
             }
@@ -53,28 +67,84 @@ public class JsonStore implements ConfigurationStore {
         return properties;
     }
 
-    private String readJson(Resource resource) {
-        try {
-            StringBuilder out = new StringBuilder();
-            byte[] b = new byte[4096];
-            InputStream inputStream = resource.getInputStream();
-            for (int n; (n = inputStream.read(b)) != -1; ) {
-                out.append(new String(b, 0, n, DEFAULT_CHARSET));
+    private Map<String, CValue> readValues(String key, TaggedResource taggedResource) {
+        CValue value = readJson(taggedResource.resource);
+        Map<String, CValue> values = new HashMap<String, CValue>();
+        if (taggedResource.flatten) {
+            flatten(key, value, values);
+        } else if (value != null) {
+            values.put(key, value);
+        }
+        return Collections.unmodifiableMap(values);
+    }
+
+    private void flatten(String path, CValue value, Map<String, CValue> values) {
+        if (value instanceof CObject) {
+            for (Map.Entry<String, CValue> entry : ((CObject) value).data().entrySet()) {
+                flatten(path + "." + entry.getKey(), entry.getValue(), values);
             }
-            return out.toString();
+        } else if (value != null) {
+            values.put(path, value);
+        }
+    }
+
+    private CValue readJson(Resource resource) {
+        try (Reader reader = new InputStreamReader(resource.getInputStream(), DEFAULT_CHARSET)) {
+            JsonReader jsonReader = new JsonReader(reader);
+            jsonReader.setLenient(true);
+            CValue value = readValue(jsonReader);
+            if (jsonReader.peek() != JsonToken.END_DOCUMENT) {
+                throw new ConstrettoException("Could not read json from " + resource + ", found more content after the document at " + jsonReader.getPath());
+            }
+            return value;
         } catch (IOException e) {
-            throw new ConstrettoException("Could not read json file", e);
+            throw new ConstrettoException("Could not read json from " + resource, e);
+        } catch (IllegalStateException e) {
+            throw new ConstrettoException("Could not read json from " + resource, e);
         }
+    }
 
+    private CValue readValue(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        switch (token) {
+            case BEGIN_OBJECT:
+                Map<String, CValue> data = new HashMap<String, CValue>();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    data.put(name, readValue(reader));
+                }
+                reader.endObject();
+                return new CObject(data);
+            case BEGIN_ARRAY:
+                List<CValue> elements = new ArrayList<CValue>();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    elements.add(readValue(reader));
+                }
+                reader.endArray();
+                return new CArray(elements);
+            case BOOLEAN:
+                return new CPrimitive(String.valueOf(reader.nextBoolean()));
+            case NULL:
+                reader.nextNull();
+                return null;
+            case END_DOCUMENT:
+                return null;
+            default:
+                return new CPrimitive(reader.nextString());
+        }
     }
 
     private static class TaggedResource {
         public final Resource resource;
         public final List<String> tags = new ArrayList<String>();
+        public final boolean flatten;
 
-        private TaggedResource(Resource resource, List<String> tags) {
+        private TaggedResource(Resource resource, List<String> tags, boolean flatten) {
             this.tags.addAll(tags);
             this.resource = resource;
+            this.flatten = flatten;
         }
     }
 }
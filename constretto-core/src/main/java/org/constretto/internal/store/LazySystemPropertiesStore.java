@@ -0,0 +1,94 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.constretto.internal.store;
+
+import org.constretto.OnDemandConfigurationStore;
+import org.constretto.model.ConfigurationValue;
+import org.constretto.model.GsonParser;
+import org.constretto.model.Parser;
+import org.constretto.model.TaggedPropertySet;
+
+import java.util.*;
+
+/**
+ * Looks up system properties and environment variables one key at a time instead of copying all of them into the
+ * configuration. As with {@link SystemPropertiesStore}, system properties win over environment variables.
+ * <p/>
+ * With relaxed keys enabled, a key not found as is will also be looked up among the environment variables using
+ * the usual naming convention, i.e. "db.url" and "db-url" both match the variable DB_URL.
+ */
+public class LazySystemPropertiesStore implements OnDemandConfigurationStore {
+    private final Map<String, String> environment;
+    private final Map<String, String> relaxedEnvironmentKeys;
+    private final Parser parser = new GsonParser();
+
+    public LazySystemPropertiesStore() {
+        this(false);
+    }
+
+    public LazySystemPropertiesStore(boolean relaxedKeys) {
+        this(relaxedKeys, System.getenv());
+    }
+
+    LazySystemPropertiesStore(boolean relaxedKeys, Map<String, String> environment) {
+        this.environment = environment;
+        if (relaxedKeys) {
+            Map<String, String> index = new HashMap<String, String>();
+            for (String name : environment.keySet()) {
+                index.put(relaxedKey(name), name);
+            }
+            this.relaxedEnvironmentKeys = index;
+        } else {
+            this.relaxedEnvironmentKeys = Collections.emptyMap();
+        }
+    }
+
+    public Collection<TaggedPropertySet> parseConfiguration() {
+        return Collections.emptyList();
+    }
+
+    public List<ConfigurationValue> lookup(String key) {
+        String value = System.getProperty(key);
+        if (value == null) {
+            value = environment.get(key);
+        }
+        if (value == null && !relaxedEnvironmentKeys.isEmpty()) {
+            String name = relaxedEnvironmentKeys.get(relaxedKey(key));
+            if (name != null) {
+                value = environment.get(name);
+            }
+        }
+        if (value == null) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(new ConfigurationValue(parser.parse(value), ConfigurationValue.ALL_TAG));
+    }
+
+    public Set<String> keys() {
+        Set<String> keys = new HashSet<String>(environment.keySet());
+        keys.addAll(System.getProperties().stringPropertyNames());
+        return keys;
+    }
+
+    private static String relaxedKey(String key) {
+        StringBuilder relaxed = new StringBuilder(key.length());
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            relaxed.append(Character.isLetterOrDigit(c) ? Character.toUpperCase(c) : '_');
+        }
+        return relaxed.toString();
+    }
+}
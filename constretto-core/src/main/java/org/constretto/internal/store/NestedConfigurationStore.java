@@ -1,14 +1,26 @@
 package org.constretto.internal.store;
 
+import org.constretto.ConfigurationOverride;
 import org.constretto.ConfigurationStore;
 import org.constretto.ConstrettoConfiguration;
+import org.constretto.OnDemandConfigurationStore;
+import org.constretto.internal.DefaultConstrettoConfiguration;
+import org.constretto.model.ConfigurationValue;
 import org.constretto.model.TaggedPropertySet;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 /**
  * A special kind of ConfigurationStore that contains a nested ConstrettoConfiguration instance.
+ * <p/>
+ * Configurations built by constretto are not parsed as a store, but layered by reference: the builder shares
+ * their tagged values with the new configuration, so every tag variant is kept and nothing is copied or parsed
+ * again. Other implementations are read through {@link #parseConfiguration()}, with their values resolved
+ * under their own tags.
  *
  * @author zapodot
  * @since 3.0
@@ -26,4 +38,45 @@ public class NestedConfigurationStore implements ConfigurationStore {
 
         return Arrays.asList(new TaggedPropertySet(configuration.asMap(), getClass()));
     }
+
+    /**
+     * @return the current tagged values of the nested configuration, or <code>null</code> if it can only be parsed
+     */
+    public Map<String, List<ConfigurationValue>> taggedValues() {
+        if (configuration instanceof DefaultConstrettoConfiguration) {
+            return ((DefaultConstrettoConfiguration) configuration).taggedValues();
+        }
+        return null;
+    }
+
+    /**
+     * @return the overrides of the nested configuration if its values are layered by reference, otherwise they are
+     * already resolved in the parsed values
+     */
+    public List<ConfigurationOverride> overrides() {
+        if (configuration instanceof DefaultConstrettoConfiguration) {
+            return configuration.overrides();
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return the tags the nested configuration resolves its values with, in order of precedence
+     */
+    public List<String> tags() {
+        if (configuration instanceof DefaultConstrettoConfiguration) {
+            return ((DefaultConstrettoConfiguration) configuration).snapshot().tags();
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return the stores the nested configuration looks up values in when they are needed
+     */
+    public List<OnDemandConfigurationStore> onDemandStores() {
+        if (configuration instanceof DefaultConstrettoConfiguration) {
+            return ((DefaultConstrettoConfiguration) configuration).onDemandStores();
+        }
+        return Collections.emptyList();
+    }
 }
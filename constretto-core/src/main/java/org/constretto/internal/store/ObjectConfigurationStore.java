@@ -15,27 +15,40 @@
  */
 package org.constretto.internal.store;
 
-import org.apache.commons.beanutils.PropertyUtils;
 import org.constretto.ConfigurationStore;
 import org.constretto.annotation.ConfigurationSource;
 import org.constretto.exception.ConstrettoException;
 import org.constretto.internal.ConstrettoUtils;
-import org.constretto.model.ConfigurationValue;
-import org.constretto.model.TaggedPropertySet;
-import org.reflections.Reflections;
-import org.reflections.scanners.MethodParameterScanner;
-import org.reflections.scanners.TypeAnnotationsScanner;
-import org.reflections.util.ClasspathHelper;
-import org.reflections.util.ConfigurationBuilder;
-
-import java.beans.PropertyDescriptor;
+import org.constretto.model.*;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.*;
 
 /**
+ * Uses the bean properties of plain java objects as configuration. The getters of each class are looked up once
+ * and kept as method handles, so adding objects of an already seen class is cheap.
+ * <p/>
+ * String properties are parsed like any other configuration value. Properties of primitive, enum, collection,
+ * array and map types are handed over as values directly, without being turned into json first.
+ *
  * @author <a href="mailto:kaare.nilsen@gmail.com">Kaare Nilsen</a>
  */
 public class ObjectConfigurationStore implements ConfigurationStore {
+    private static final MethodType ACCESSOR_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final ClassValue<AccessorPlan> ACCESSOR_PLANS = new ClassValue<AccessorPlan>() {
+        @Override
+        protected AccessorPlan computeValue(Class<?> type) {
+            return new AccessorPlan(type);
+        }
+    };
+
     private final List<Object> configurationObjects;
+    private final Parser parser = new GsonParser();
 
     public ObjectConfigurationStore() {
         configurationObjects = new ArrayList<>();
@@ -51,63 +64,156 @@ public class ObjectConfigurationStore implements ConfigurationStore {
     }
 
     public Collection<TaggedPropertySet> parseConfiguration() {
-        Map<String, TaggedPropertySet> propertySets = new HashMap<>();
+        Map<String, Map<String, CValue>> valuesByTag = new LinkedHashMap<>();
 
         for (Object configurationObject : configurationObjects) {
-            TaggedPropertySet taggedPropertySet = createPropertySetForObject(configurationObject);
-            if (propertySets.containsKey(taggedPropertySet.tag())) {
-                TaggedPropertySet orginialSet = propertySets.get(taggedPropertySet.tag());
-                orginialSet.getProperties().putAll(taggedPropertySet.getProperties());
-                propertySets.put(taggedPropertySet.tag(), orginialSet);
-            } else {
-                propertySets.put(taggedPropertySet.tag(), taggedPropertySet);
+            AccessorPlan plan = ACCESSOR_PLANS.get(configurationObject.getClass());
+            Map<String, CValue> values = valuesByTag.get(plan.tag);
+            if (values == null) {
+                values = new HashMap<>();
+                valuesByTag.put(plan.tag, values);
             }
+            plan.readInto(configurationObject, values, parser);
         }
 
-        return propertySets.values();
+        List<TaggedPropertySet> propertySets = new ArrayList<>(valuesByTag.size());
+        for (Map.Entry<String, Map<String, CValue>> entry : valuesByTag.entrySet()) {
+            propertySets.add(TaggedPropertySet.parsed(entry.getKey(), entry.getValue(), getClass()));
+        }
+        return propertySets;
     }
 
-    private Reflections createReflections() {
-        final ConfigurationBuilder configurationBuilder = new ConfigurationBuilder();
-        configurationBuilder.setScanners(new TypeAnnotationsScanner(), new MethodParameterScanner());
-        for (Object configurationObject : configurationObjects) {
-            configurationBuilder.addUrls(ClasspathHelper.forClass(configurationObject.getClass(), configurationObject.getClass().getClassLoader()));
+    private static CValue toValue(Object value, Parser parser) {
+        if (value == null) {
+            return null;
+        } else if (value instanceof CValue) {
+            return (CValue) value;
+        } else if (value instanceof CharSequence) {
+            return parser.parse(value.toString());
+        } else if (value instanceof Number || value instanceof Boolean || value instanceof Character) {
+            return new CPrimitive(value.toString());
+        } else if (value instanceof Enum) {
+            return new CPrimitive(((Enum<?>) value).name());
+        } else if (value instanceof Collection) {
+            List<CValue> elements = new ArrayList<>(((Collection<?>) value).size());
+            for (Object element : (Collection<?>) value) {
+                elements.add(toValue(element, parser));
+            }
+            return new CArray(elements);
+        } else if (value.getClass().isArray()) {
+            int length = Array.getLength(value);
+            List<CValue> elements = new ArrayList<>(length);
+            for (int i = 0; i < length; i++) {
+                elements.add(toValue(Array.get(value, i), parser));
+            }
+            return new CArray(elements);
+        } else if (value instanceof Map) {
+            Map<String, CValue> data = new HashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                data.put(String.valueOf(entry.getKey()), toValue(entry.getValue(), parser));
+            }
+            return new CObject(data);
+        }
+        return null;
+    }
+
+    private static boolean isSupportedType(Class<?> type) {
+        return type == Object.class
+                || type.isPrimitive()
+                || type.isArray()
+                || CharSequence.class.isAssignableFrom(type)
+                || Number.class.isAssignableFrom(type)
+                || Boolean.class == type
+                || Character.class == type
+                || type.isEnum()
+                || CValue.class.isAssignableFrom(type)
+                || Collection.class.isAssignableFrom(type)
+                || Map.class.isAssignableFrom(type);
+    }
+
+    private static String propertyName(Method method) {
+        String name = method.getName();
+        String property = name.startsWith("is") ? name.substring(2) : name.substring(3);
+        if (property.length() > 1 && Character.isUpperCase(property.charAt(0)) && Character.isUpperCase(property.charAt(1))) {
+            return property;
         }
-        return new Reflections(configurationBuilder);
+        return Character.toLowerCase(property.charAt(0)) + property.substring(1);
     }
 
-    private TaggedPropertySet createPropertySetForObject(Object configurationObject) {
-        String tag = ConfigurationValue.DEFAULT_TAG;
-        String basePath = "";
-        Map<String, String> properties = new HashMap<String, String>();
-        if (configurationObject.getClass().isAnnotationPresent(ConfigurationSource.class)) {
-            ConfigurationSource configurationAnnotation = configurationObject.getClass().getAnnotation(ConfigurationSource.class);
-            tag = configurationAnnotation.tag();
-            if (tag.equals("")) {
-                tag = ConfigurationValue.DEFAULT_TAG;
+    private static boolean isGetter(Method method) {
+        if (Modifier.isStatic(method.getModifiers()) || method.getParameterTypes().length != 0 || method.getDeclaringClass() == Object.class) {
+            return false;
+        }
+        String name = method.getName();
+        if (name.startsWith("get") && name.length() > 3) {
+            return method.getReturnType() != void.class;
+        }
+        return name.startsWith("is") && name.length() > 2 && method.getReturnType() == boolean.class;
+    }
+
+    private static MethodHandle accessorFor(Method method) {
+        try {
+            return MethodHandles.publicLookup().unreflect(method).asType(ACCESSOR_TYPE);
+        } catch (IllegalAccessException e) {
+            try {
+                method.setAccessible(true);
+                return MethodHandles.lookup().unreflect(method).asType(ACCESSOR_TYPE);
+            } catch (IllegalAccessException | RuntimeException inaccessible) {
+                return null;
             }
-            basePath = configurationAnnotation.basePath();
         }
+    }
 
+    /**
+     * The tag, base path and property accessors of a class, computed once per class
+     */
+    private static class AccessorPlan {
+        private final String tag;
+        private final String[] paths;
+        private final MethodHandle[] accessors;
 
-        for (PropertyDescriptor propertyDescriptor : PropertyUtils.getPropertyDescriptors(configurationObject)) {
-            boolean canRead = propertyDescriptor.getReadMethod() != null;
-            boolean isString = propertyDescriptor.getPropertyType().isAssignableFrom(String.class);
-            if (canRead && isString) {
-                String path = propertyDescriptor.getName();
-                try {
-                    String value = (String) PropertyUtils.getProperty(configurationObject, path);
-                    if (!ConstrettoUtils.isEmpty(basePath)) {
-                        path = basePath + "." + path;
-                    }
-                    properties.put(path, value);
-                } catch (Exception e) {
-                    throw new ConstrettoException("Could not access data in field", e);
+        private AccessorPlan(Class<?> type) {
+            String tag = ConfigurationValue.DEFAULT_TAG;
+            String basePath = "";
+            if (type.isAnnotationPresent(ConfigurationSource.class)) {
+                ConfigurationSource configurationAnnotation = type.getAnnotation(ConfigurationSource.class);
+                if (!configurationAnnotation.tag().equals("")) {
+                    tag = configurationAnnotation.tag();
                 }
+                basePath = configurationAnnotation.basePath();
             }
+            this.tag = tag;
 
+            Map<String, MethodHandle> accessorsByPath = new TreeMap<>();
+            for (Method method : type.getMethods()) {
+                if (isGetter(method) && isSupportedType(method.getReturnType())) {
+                    MethodHandle accessor = accessorFor(method);
+                    if (accessor != null) {
+                        String path = propertyName(method);
+                        if (!ConstrettoUtils.isEmpty(basePath)) {
+                            path = basePath + "." + path;
+                        }
+                        accessorsByPath.put(path, accessor);
+                    }
+                }
+            }
+            this.paths = accessorsByPath.keySet().toArray(new String[accessorsByPath.size()]);
+            this.accessors = accessorsByPath.values().toArray(new MethodHandle[accessorsByPath.size()]);
         }
 
-        return new TaggedPropertySet(tag, properties, getClass());
+        private void readInto(Object configurationObject, Map<String, CValue> values, Parser parser) {
+            for (int i = 0; i < accessors.length; i++) {
+                Object value;
+                try {
+                    value = (Object) accessors[i].invokeExact(configurationObject);
+                } catch (Throwable e) {
+                    throw new ConstrettoException("Could not access data in field", e);
+                }
+                CValue cValue = toValue(value, parser);
+                if (cValue != null) {
+                    values.put(paths[i], cValue);
+                }
+            }
+        }
     }
 }
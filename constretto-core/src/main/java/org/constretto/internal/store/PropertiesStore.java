@@ -18,6 +18,7 @@ package org.constretto.internal.store;
 import org.constretto.ConfigurationStore;
 import org.constretto.exception.ConstrettoException;
 import org.constretto.internal.ConstrettoUtils;
+import org.constretto.model.ConfigurationValue;
 import org.constretto.model.Resource;
 import org.constretto.model.TaggedPropertySet;
 
@@ -116,15 +117,26 @@ public class PropertiesStore implements ConfigurationStore {
         List<TaggedPropertySet> taggedPropertySets = new ArrayList<TaggedPropertySet>();
         Set<String> tags = getTags(this.properties);
         for (String tag : tags) {
-            taggedPropertySets.add(new TaggedPropertySet(tag, getPropertiesByTag(tag, this.properties), getClass()));
+            taggedPropertySets.add(createPropertySet(tag, getPropertiesByTag(tag, this.properties)));
         }
         Map<String, String> unTaggedProperties = getUnTaggedProperties(this.properties);
         if (!unTaggedProperties.isEmpty()) {
-            taggedPropertySets.add(new TaggedPropertySet(getUnTaggedProperties(this.properties), getClass()));
+            taggedPropertySets.add(createPropertySet(ConfigurationValue.DEFAULT_TAG, unTaggedProperties));
         }
         return taggedPropertySets;
     }
 
+    /**
+     * Used by subclasses that wants to control how the values of a tag is handed over to the builder
+     *
+     * @param tag        the tag of the properties
+     * @param properties the properties with the tag
+     * @return a new property set
+     */
+    protected TaggedPropertySet createPropertySet(String tag, Map<String, String> properties) {
+        return new TaggedPropertySet(tag, properties, getClass());
+    }
+
     private boolean isTag(String key) {
         return key.startsWith(TAG_PREFIX);
     }
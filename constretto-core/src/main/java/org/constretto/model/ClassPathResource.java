@@ -10,7 +10,11 @@
  */
 package org.constretto.model;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
 
 /**
  * @author <a href="mailto:kaare.nilsen@gmail.com">Kaare Nilsen</a>
@@ -22,14 +26,50 @@ public class ClassPathResource extends Resource {
 
     @Override
     public InputStream getInputStream() {
-        ClassLoader classLoader = this.getClass().getClassLoader();
-        String location;
+        return this.getClass().getClassLoader().getResourceAsStream(location());
+    }
+
+    @Override
+    public File getFile() {
+        URL url = this.getClass().getClassLoader().getResource(location());
+        if (url == null || !"file".equals(url.getProtocol())) {
+            return null;
+        }
+        try {
+            return new File(url.toURI());
+        } catch (URISyntaxException e) {
+            return null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Resources inside jars are stamped with the time of the jar entry.
+     */
+    @Override
+    public long lastModified() {
+        File file = getFile();
+        if (file != null) {
+            return file.lastModified();
+        }
+        URL url = this.getClass().getClassLoader().getResource(location());
+        if (url == null) {
+            return UNKNOWN_MODIFICATION;
+        }
+        try {
+            return url.openConnection().getLastModified();
+        } catch (IOException e) {
+            return UNKNOWN_MODIFICATION;
+        }
+    }
+
+    private String location() {
         if (path.startsWith(CLASSPATH_PREFIX)) {
-            location = path.substring(CLASSPATH_PREFIX.length(), path.length());
+            return path.substring(CLASSPATH_PREFIX.length(), path.length());
         } else {
-            location = path;
+            return path;
         }
-        return classLoader.getResourceAsStream(location);
     }
 
     @Override
@@ -45,6 +45,18 @@ public class ConfigurationValue {
         return tag;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ConfigurationValue)) return false;
+        ConfigurationValue that = (ConfigurationValue) o;
+        return tag.equals(that.tag) && (value == null ? that.value == null : value.equals(that.value));
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * tag.hashCode() + (value == null ? 0 : value.hashCode());
+    }
 
     public String toString() {
         return "ConfigurationValue{" +
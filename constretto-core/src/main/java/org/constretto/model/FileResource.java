@@ -40,6 +40,11 @@ public class FileResource extends Resource {
         }
     }
 
+    @Override
+    public File getFile() {
+        return new File(extractFileNameFromFileResource(path));
+    }
+
     private String extractFileNameFromFileResource(String path) {
         String fileName;
         if (path.startsWith(FILE_PREFIX)) {
@@ -12,6 +12,7 @@ package org.constretto.model;
 
 import org.constretto.exception.ConstrettoException;
 
+import java.io.File;
 import java.io.InputStream;
 
 /**
@@ -20,6 +21,7 @@ import java.io.InputStream;
 public abstract class Resource {
     public static final String CLASSPATH_PREFIX = "classpath:";
     public static final String FILE_PREFIX = "file:";
+    public static final long UNKNOWN_MODIFICATION = 0L;
     final String path;
 
     protected Resource(String path) {
@@ -44,6 +46,23 @@ public abstract class Resource {
 
     public abstract InputStream getInputStream();
 
+    /**
+     * @return the file backing this resource, or null if the resource is not a file on disk
+     */
+    public File getFile() {
+        return null;
+    }
+
+    /**
+     * A stamp that changes whenever the content of the resource changes.
+     *
+     * @return the time the resource was last modified, or {@link #UNKNOWN_MODIFICATION} if it can not be told
+     */
+    public long lastModified() {
+        File file = getFile();
+        return file != null ? file.lastModified() : UNKNOWN_MODIFICATION;
+    }
+
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder();
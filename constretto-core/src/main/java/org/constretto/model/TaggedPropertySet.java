@@ -17,6 +17,8 @@ package org.constretto.model;
 
 import org.constretto.ConfigurationStore;
 
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -25,11 +27,13 @@ import java.util.Map;
 public class TaggedPropertySet {
     private final Class<? extends ConfigurationStore> storeClass;
     private final String tag;
-    private final Map<String, String> properties;
+    private final Map<String, CValue> values;
+    private Map<String, String> properties;
 
     public TaggedPropertySet(Map<String, String> properties, Class<? extends ConfigurationStore> storeClass) {
         this.tag = ConfigurationValue.DEFAULT_TAG;
         this.properties = properties;
+        this.values = null;
         this.storeClass = storeClass;
     }
 
@@ -39,10 +43,55 @@ public class TaggedPropertySet {
         }
         this.tag = tag;
         this.properties = properties;
+        this.values = null;
         this.storeClass = storeClass;
     }
 
+    private TaggedPropertySet(String tag, Map<String, String> properties, Map<String, CValue> values, Class<? extends ConfigurationStore> storeClass) {
+        if (tag == null){
+            throw new IllegalArgumentException("Tag cannot be null");
+        }
+        this.tag = tag;
+        this.properties = properties;
+        this.values = values;
+        this.storeClass = storeClass;
+    }
+
+    /**
+     * Creates a property set from values that the store has already parsed. The builder will use the values as is,
+     * so several sets may share the same parsed tree without it being serialized and parsed again for each tag.
+     *
+     * @param tag        the tag of the values
+     * @param values     the parsed values by key
+     * @param storeClass the store producing the values
+     * @return a new property set backed by the parsed values
+     */
+    public static TaggedPropertySet parsed(String tag, Map<String, CValue> values, Class<? extends ConfigurationStore> storeClass) {
+        return new TaggedPropertySet(tag, null, values, storeClass);
+    }
+
+    /**
+     * @return true if this set carries values that has already been parsed by the store
+     */
+    public boolean isParsed() {
+        return values != null;
+    }
+
+    /**
+     * @return the parsed values of this set, or null if the set only has raw string properties
+     */
+    public Map<String, CValue> getValues() {
+        return values;
+    }
+
     public Map<String, String> getProperties() {
+        if (properties == null && values != null) {
+            Map<String, String> stringValues = new HashMap<String, String>();
+            for (Map.Entry<String, CValue> entry : values.entrySet()) {
+                stringValues.put(entry.getKey(), String.valueOf(entry.getValue()));
+            }
+            properties = Collections.unmodifiableMap(stringValues);
+        }
         return properties;
     }
 
@@ -2,11 +2,29 @@ package org.constretto;
 
 import org.constretto.configs.TaggedConfig;
 import org.constretto.configs.UntaggedConfig;
+import org.constretto.exception.ConstrettoException;
+import org.constretto.internal.DefaultConstrettoConfiguration;
+import org.constretto.internal.store.CachingConfigurationStore;
+import org.constretto.model.CPrimitive;
+import org.constretto.model.ConfigurationValue;
+import org.constretto.model.Resource;
+import org.constretto.model.TaggedPropertySet;
 import org.constretto.resolver.ConfigurationContextResolver;
 import org.constretto.resolver.PredefinedConfigurationContextResolver;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 import static org.junit.Assert.*;
 
@@ -17,6 +35,9 @@ public class ConstrettoBuilderTest {
 
     public static final ConfigurationContextResolver STATIC_CONTEXT_RESOLVER = PredefinedConfigurationContextResolver.usingTags(TaggedConfig.TAG);
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Test
     public void testWithSystemProperties() throws Exception {
         final Map<String, String> configuration = ConstrettoBuilder.withSystemProperties().getConfiguration().asMap();
@@ -49,5 +70,189 @@ public class ConstrettoBuilderTest {
 
     }
 
+    @Test
+    public void testExistingConfigurationKeepsItsTags() throws Exception {
+        final ConstrettoConfiguration module = ConstrettoBuilder.empty(PredefinedConfigurationContextResolver.usingTags("production"))
+                .createPropertiesStore()
+                .addResource(Resource.create("classpath:test.properties"))
+                .done()
+                .getConfiguration();
+
+        final ConstrettoConfiguration configuration = ConstrettoBuilder.fromExistingConfiguration(module, PredefinedConfigurationContextResolver.empty()).getConfiguration();
+
+        assertEquals("user1", configuration.evaluateToString("somedb.username"));
+        assertEquals("user2", configuration.withTags("systest").evaluateToString("somedb.username"));
+        assertEquals("user0", configuration.withTags().evaluateToString("somedb.username"));
+        assertEquals("http://constretto.org/child", configuration.evaluateToString("url.child"));
+    }
+
+    @Test
+    public void testExistingConfigurationsAreLayeredWithoutCopying() throws Exception {
+        final ConstrettoConfiguration module = ConstrettoBuilder.empty(PredefinedConfigurationContextResolver.usingTags("production"))
+                .createPropertiesStore()
+                .addResource(Resource.create("classpath:test.properties"))
+                .done()
+                .getConfiguration();
+        ConstrettoConfiguration configuration = module;
+        for (int level = 0; level < 5; level++) {
+            configuration = ConstrettoBuilder.empty(PredefinedConfigurationContextResolver.empty())
+                    .addExistingConfiguration(configuration)
+                    .createObjectConfigurationStore()
+                    .addObject(new UntaggedConfig())
+                    .done()
+                    .getConfiguration();
+        }
+
+        final List<ConfigurationValue> shared = ((DefaultConstrettoConfiguration) module).snapshot().configuration().get("somedb.username");
+        assertSame(shared, ((DefaultConstrettoConfiguration) configuration).snapshot().configuration().get("somedb.username"));
+        assertEquals("user1", configuration.evaluateToString("somedb.username"));
+        assertEquals(UntaggedConfig.UNTAGGED_VALUE, configuration.evaluateToString("value"));
+    }
+
+    @Test
+    public void testReloadTakesTheCurrentValuesOfExistingConfiguration() throws Exception {
+        final ConstrettoConfiguration module = ConstrettoBuilder.empty(PredefinedConfigurationContextResolver.usingTags("production"))
+                .createPropertiesStore()
+                .addResource(Resource.create("classpath:test.properties"))
+                .done()
+                .getConfiguration();
+        final ConstrettoConfiguration configuration = ConstrettoBuilder.fromExistingConfiguration(module, PredefinedConfigurationContextResolver.empty()).getConfiguration();
+
+        ((DefaultConstrettoConfiguration) module).update(Collections.singletonMap("somedb.username",
+                Collections.singletonList(new ConfigurationValue(new CPrimitive("changed"), ConfigurationValue.DEFAULT_TAG))));
+        assertEquals("user1", configuration.evaluateToString("somedb.username"));
+        configuration.reload();
+        assertEquals("changed", configuration.evaluateToString("somedb.username"));
+    }
+
+    @Test
+    public void testOverridesOfExistingConfigurationTakePrecedence() throws Exception {
+        final ConstrettoConfiguration module = ConstrettoBuilder.empty(PredefinedConfigurationContextResolver.usingTags("production"))
+                .createPropertiesStore()
+                .addResource(Resource.create("classpath:test.properties"))
+                .done()
+                .getConfiguration();
+        module.override("somedb.username", "overridden");
+        module.override("url.child", "expiring", null, 300, TimeUnit.MILLISECONDS);
+        assertEquals("overridden", module.evaluateToString("somedb.username"));
+
+        final ConstrettoConfiguration configuration = ConstrettoBuilder.fromExistingConfiguration(module, PredefinedConfigurationContextResolver.empty()).getConfiguration();
+
+        assertEquals("overridden", configuration.evaluateToString("somedb.username"));
+        assertEquals("expiring", configuration.evaluateToString("url.child"));
+        long deadline = System.currentTimeMillis() + 5000;
+        while ("expiring".equals(configuration.evaluateToString("url.child")) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals("http://constretto.org/child", configuration.evaluateToString("url.child"));
+    }
+
+    @Test
+    public void testAsyncConfigurationSkipsStoresPastTheirDeadline() throws Exception {
+        final HangingStore hanging = new HangingStore("hanging");
+        try {
+            final CompletableFuture<ConstrettoConfiguration> future = ConstrettoBuilder.empty(STATIC_CONTEXT_RESOLVER)
+                    .createPropertiesStore()
+                    .addResource(Resource.create("classpath:test.properties"))
+                    .done()
+                    .addConfigurationStore(hanging, 50, TimeUnit.MILLISECONDS, TimeoutPolicy.SKIP)
+                    .getConfigurationAsync();
+
+            final ConstrettoConfiguration configuration = future.get(5, TimeUnit.SECONDS);
+            assertEquals("user0", configuration.evaluateToString("somedb.username"));
+            assertFalse(configuration.hasValue("hanging"));
+        } finally {
+            hanging.release.countDown();
+        }
+    }
 
-}
\ No newline at end of file
+    @Test
+    public void testAsyncConfigurationIsNotBuiltOnTheDeadlineThread() throws Exception {
+        final HangingStore hanging = new HangingStore("hanging");
+        try {
+            final CompletableFuture<String> thread = ConstrettoBuilder.empty(STATIC_CONTEXT_RESOLVER)
+                    .addConfigurationStore(hanging, 200, TimeUnit.MILLISECONDS, TimeoutPolicy.SKIP)
+                    .getConfigurationAsync()
+                    .thenApply(new Function<ConstrettoConfiguration, String>() {
+                        public String apply(ConstrettoConfiguration configuration) {
+                            return Thread.currentThread().getName();
+                        }
+                    });
+
+            assertNotEquals("constretto-store-deadlines", thread.get(5, TimeUnit.SECONDS));
+        } finally {
+            hanging.release.countDown();
+        }
+    }
+
+    @Test
+    public void testAsyncConfigurationFailsForStoresPastTheirDeadline() throws Exception {
+        final HangingStore hanging = new HangingStore("hanging");
+        try {
+            final CompletableFuture<ConstrettoConfiguration> future = ConstrettoBuilder.empty(STATIC_CONTEXT_RESOLVER)
+                    .storeTimeout(50, TimeUnit.MILLISECONDS, TimeoutPolicy.FAIL)
+                    .addConfigurationStore(hanging)
+                    .getConfigurationAsync();
+
+            future.get(5, TimeUnit.SECONDS);
+            fail("The configuration should not be built");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ConstrettoException);
+        } finally {
+            hanging.release.countDown();
+        }
+    }
+
+    @Test
+    public void testAsyncConfigurationUsesCachedValuesForStoresPastTheirDeadline() throws Exception {
+        final File cacheFile = new File(folder.getRoot(), "remote.json");
+        final HangingStore remote = new HangingStore("remote");
+        remote.release.countDown();
+        ConstrettoBuilder.empty(STATIC_CONTEXT_RESOLVER)
+                .addConfigurationStore(new CachingConfigurationStore(remote, cacheFile))
+                .getConfiguration();
+
+        final HangingStore hanging = new HangingStore("remote");
+        try {
+            final ConstrettoConfiguration configuration = ConstrettoBuilder.empty(STATIC_CONTEXT_RESOLVER)
+                    .addConfigurationStore(new CachingConfigurationStore(hanging, cacheFile), 50, TimeUnit.MILLISECONDS, TimeoutPolicy.USE_CACHE)
+                    .getConfigurationAsync()
+                    .get(5, TimeUnit.SECONDS);
+
+            assertEquals("remote", configuration.evaluateToString("remote"));
+        } finally {
+            hanging.release.countDown();
+        }
+    }
+
+    @Test
+    public void testAsyncConfigurationWaitsForStoresWithoutDeadline() throws Exception {
+        final HangingStore slow = new HangingStore("slow");
+        final CompletableFuture<ConstrettoConfiguration> future = ConstrettoBuilder.empty(STATIC_CONTEXT_RESOLVER)
+                .addConfigurationStore(slow)
+                .getConfigurationAsync();
+
+        assertFalse(future.isDone());
+        slow.release.countDown();
+
+        assertEquals("slow", future.get(5, TimeUnit.SECONDS).evaluateToString("slow"));
+    }
+
+    private static class HangingStore implements ConfigurationStore {
+        private final String key;
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        private HangingStore(String key) {
+            this.key = key;
+        }
+
+        public Collection<TaggedPropertySet> parseConfiguration() {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Collections.singletonList(new TaggedPropertySet(Collections.singletonMap(key, key), getClass()));
+        }
+    }
+}
@@ -1,14 +1,19 @@
 package org.constretto;
 
+import org.constretto.annotation.Configuration;
+import org.constretto.exception.ConstrettoConversionException;
 import org.constretto.exception.ConstrettoExpressionException;
 import org.constretto.model.ClassPathResource;
 import org.constretto.model.Resource;
 import org.junit.Test;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
@@ -94,6 +99,54 @@ public class ConstrettoConfigurationTest {
         assertEquals(2,props.size());
     }
 
+    @Test
+    public void nestedGenericTypesAreConverted() throws Exception {
+        ConstrettoConfiguration configuration = new ConstrettoBuilder(false)
+                .createPropertiesStore()
+                .addResource(new ClassPathResource("nested-generics.properties"))
+                .done()
+                .getConfiguration();
+
+        NestedGenerics nestedGenerics = configuration.as(NestedGenerics.class);
+        List<Map<String, Integer>> weights = configuration.evaluateToType(NestedGenerics.class.getDeclaredField("weights").getGenericType(), "weights");
+
+        assertEquals(Arrays.asList(Duration.ofSeconds(1), Duration.ofMinutes(2)), nestedGenerics.routes.get("north"));
+        assertEquals(Arrays.asList(Duration.ofSeconds(10)), nestedGenerics.routes.get("south"));
+        assertEquals(Integer.valueOf(3), nestedGenerics.weights.get(1).get("c"));
+        assertEquals(nestedGenerics.weights, weights);
+    }
+
+    @Test
+    public void primitiveArraysAreParsedWithoutBoxing() {
+        ConstrettoConfiguration configuration = new ConstrettoBuilder(false)
+                .createPropertiesStore()
+                .addResource(new ClassPathResource("nested-generics.properties"))
+                .done()
+                .getConfiguration();
+
+        assertArrayEquals(new int[]{1, 5, 10, 50}, configuration.evaluateToIntArray("buckets"));
+        assertArrayEquals(new long[]{10000000000L, 16L}, configuration.evaluateToLongArray("shards"));
+        assertArrayEquals(new double[]{0.5, 1.25}, configuration.evaluateToDoubleArray("rates"), 0);
+
+        int[] buckets = configuration.evaluateToIntArray("buckets");
+        buckets[0] = 42;
+        assertEquals(1, configuration.evaluateToIntArray("buckets")[0]);
+
+        PrimitiveArrays primitiveArrays = configuration.as(PrimitiveArrays.class);
+        assertArrayEquals(new int[]{1, 5, 10, 50}, primitiveArrays.buckets);
+        assertArrayEquals(new double[]{0.5, 1.25}, primitiveArrays.rates, 0);
+    }
+
+    @Test(expected = ConstrettoConversionException.class)
+    public void primitiveArrayOfNonNumbersFails() {
+        new ConstrettoBuilder(false)
+                .createPropertiesStore()
+                .addResource(new ClassPathResource("test-with-array-and-map.properties"))
+                .done()
+                .getConfiguration()
+                .evaluateToIntArray("simple-map");
+    }
+
     @Test
     public void getConfiguration_iniStoreWithoutOverride() {
         ConstrettoConfiguration configuration = new ConstrettoBuilder()
@@ -155,4 +208,20 @@ public class ConstrettoConfigurationTest {
         assertEquals(configuration.evaluateToString("key3"), "value3-override2");
         System.clearProperty(ConstrettoBuilder.OVERRIDES);
     }
+
+    public static class PrimitiveArrays {
+        @Configuration
+        int[] buckets;
+
+        @Configuration
+        double[] rates;
+    }
+
+    public static class NestedGenerics {
+        @Configuration
+        Map<String, List<Duration>> routes;
+
+        @Configuration
+        List<Map<String, Integer>> weights;
+    }
 }
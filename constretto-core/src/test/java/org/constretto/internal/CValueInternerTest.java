@@ -0,0 +1,78 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.constretto.internal;
+
+import org.constretto.ConstrettoBuilder;
+import org.constretto.ConstrettoConfiguration;
+import org.constretto.model.*;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:kaare.nilsen@gmail.com">Kaare Nilsen</a>
+ */
+public class CValueInternerTest {
+    private final CValueInterner interner = new CValueInterner();
+
+    @Test
+    public void equalValuesShareOneInstance() {
+        CValue first = interner.intern(new CPrimitive("db.example.com"));
+        CValue second = interner.intern(new CPrimitive("db.example.com"));
+
+        assertSame(first, second);
+        assertEquals(1, interner.size());
+    }
+
+    @Test
+    public void elementsOfArraysAndObjectsAreShared() {
+        CValue host = interner.intern(new CPrimitive("db.example.com"));
+        CArray hosts = (CArray) interner.intern(new CArray(Arrays.<CValue>asList(new CPrimitive("db.example.com"), new CPrimitive("backup"))));
+        Map<String, CValue> data = new HashMap<String, CValue>();
+        data.put("host", new CPrimitive("db.example.com"));
+        CObject object = (CObject) interner.intern(new CObject(data));
+
+        assertSame(host, hosts.data().get(0));
+        assertSame(host, object.data().get("host"));
+        assertSame(hosts, interner.intern(new CArray(Arrays.<CValue>asList(new CPrimitive("db.example.com"), new CPrimitive("backup")))));
+    }
+
+    @Test
+    public void valuesWithVariablesAreNotShared() {
+        CValue first = interner.intern(new CPrimitive("#{base}/path"));
+        CValue second = interner.intern(new CPrimitive("#{base}/path"));
+
+        assertNotSame(first, second);
+        assertEquals(0, interner.size());
+    }
+
+    @Test
+    public void valuesRepeatedForSeveralTagsAreSharedByTheBuilder() {
+        ConstrettoConfiguration configuration = new ConstrettoBuilder(false)
+                .createPropertiesStore()
+                .addResource(new ClassPathResource("repeated-values.properties"))
+                .done()
+                .addCurrentTag("dev")
+                .getConfiguration();
+
+        assertSame(configuration.evaluate("timeout"), configuration.evaluate("retry.timeout"));
+        assertSame(configuration.evaluate("hosts"), configuration.evaluate("backup.hosts"));
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.constretto.internal;
+
+import org.constretto.ConfigurationChange;
+import org.constretto.Subscription;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:kaare.nilsen@gmail.com">Kaare Nilsen</a>
+ */
+public class ChangePublisherTest {
+    private final QueuedExecutor executor = new QueuedExecutor();
+    private final ChangePublisher publisher = new ChangePublisher(executor);
+    private final List<ConfigurationChange> delivered = new ArrayList<ConfigurationChange>();
+    private final Consumer<ConfigurationChange> collector = new Consumer<ConfigurationChange>() {
+        public void accept(ConfigurationChange change) {
+            delivered.add(change);
+        }
+    };
+
+    @Test
+    public void changesWaitingForDeliveryAreMerged() {
+        publisher.subscribe(collector, null);
+
+        publisher.publish(change(0, 1, "a"));
+        publisher.publish(change(1, 2, "b"));
+        publisher.publish(change(2, 3, "a", "c"));
+
+        assertEquals(1, executor.tasks.size());
+        executor.runAll();
+        assertEquals(1, delivered.size());
+        assertEquals(0, delivered.get(0).fromVersion());
+        assertEquals(3, delivered.get(0).toVersion());
+        assertEquals(new TreeSet<String>(Arrays.asList("a", "b", "c")), delivered.get(0).keys());
+    }
+
+    @Test
+    public void keySubscribersOnlyGetChangesOfTheirKey() {
+        publisher.subscribe(collector, "b");
+
+        publisher.publish(change(0, 1, "a"));
+        assertTrue(executor.tasks.isEmpty());
+
+        publisher.publish(change(1, 2, "a", "b"));
+        executor.runAll();
+        assertEquals(1, delivered.size());
+    }
+
+    @Test
+    public void cancelledSubscriptionsGetNoMoreChanges() {
+        Subscription subscription = publisher.subscribe(collector, null);
+        publisher.publish(change(0, 1, "a"));
+
+        subscription.cancel();
+        executor.runAll();
+        publisher.publish(change(1, 2, "a"));
+
+        assertTrue(executor.tasks.isEmpty());
+        assertTrue(delivered.isEmpty());
+        assertFalse(publisher.hasSubscribers());
+    }
+
+    @Test
+    public void failingSubscribersGetLaterChanges() {
+        final List<Throwable> failures = new ArrayList<Throwable>();
+        Thread.UncaughtExceptionHandler handler = Thread.currentThread().getUncaughtExceptionHandler();
+        Thread.currentThread().setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+            public void uncaughtException(Thread thread, Throwable throwable) {
+                failures.add(throwable);
+            }
+        });
+        try {
+            publisher.subscribe(new Consumer<ConfigurationChange>() {
+                public void accept(ConfigurationChange change) {
+                    delivered.add(change);
+                    throw new IllegalStateException("failed");
+                }
+            }, null);
+
+            publisher.publish(change(0, 1, "a"));
+            executor.runAll();
+            publisher.publish(change(1, 2, "a"));
+            executor.runAll();
+        } finally {
+            Thread.currentThread().setUncaughtExceptionHandler(handler);
+        }
+
+        assertEquals(2, delivered.size());
+        assertEquals(2, failures.size());
+    }
+
+    private static ConfigurationChange change(long from, long to, String... keys) {
+        return new ConfigurationChange(from, to, new HashSet<String>(Arrays.asList(keys)));
+    }
+
+    private static class QueuedExecutor implements Executor {
+        private final Deque<Runnable> tasks = new ArrayDeque<Runnable>();
+
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        private void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.poll().run();
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.constretto.internal;
+
+import org.constretto.ConstrettoBuilder;
+import org.constretto.model.ConfigurationValue;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.constretto.internal.ConfigurationMapFixture.*;
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:kaare.nilsen@gmail.com">Kaare Nilsen</a>
+ */
+public class CompactConfigurationMapTest {
+
+    @Test
+    public void keysAroundBlockBoundariesAreFound() {
+        int block = CompactConfigurationMap.BLOCK_SIZE;
+        for (int size : new int[]{1, block - 1, block, block + 1, 3 * block, 3 * block + 1}) {
+            List<String> keys = new ArrayList<String>();
+            List<String> misses = new ArrayList<String>(Arrays.asList("", "a", "key.", "key.999", "z"));
+            for (int i = 0; i < size; i++) {
+                keys.add(String.format("key.%03d", i));
+                // sorts between this key and the next, so misses are tried at the end of every block
+                misses.add(String.format("key.%03d.after", i));
+            }
+            Map<String, List<ConfigurationValue>> configuration = configuration(keys);
+
+            assertSameMapping(configuration, CompactConfigurationMap.compact(configuration), misses);
+        }
+    }
+
+    @Test
+    public void longSharedPrefixesAreFrontCoded() {
+        String prefix = repeat('x', 200);
+        String longPrefix = repeat('y', 20000);
+        Map<String, List<ConfigurationValue>> configuration = configuration(Arrays.asList(
+                prefix + "a", prefix + "b", prefix + "b" + repeat('z', 300),
+                longPrefix + "a", longPrefix + "b",
+                "blåbær.ære", "blåbær.øl", ""));
+
+        CompactConfigurationMap compact = CompactConfigurationMap.compact(configuration);
+
+        // prefix and suffix lengths above 127 take more than one byte
+        assertSameMapping(configuration, compact, Arrays.asList(prefix, prefix + "c", prefix + "b" + repeat('z', 299),
+                longPrefix, longPrefix + "c", repeat('y', 19999) + "a", "blåbær.", "blåbær.æ"));
+    }
+
+    @Test
+    public void equalValuesAreSharedBetweenKeys() {
+        Map<String, List<ConfigurationValue>> configuration = new HashMap<String, List<ConfigurationValue>>();
+        configuration.put("customer.1.beta", values("true"));
+        configuration.put("customer.2.beta", values("true"));
+        configuration.put("customer.1.url", values("#{base}/1"));
+        configuration.put("customer.2.url", values("#{base}/1"));
+
+        CompactConfigurationMap compact = CompactConfigurationMap.compact(configuration);
+
+        assertSame(compact.get("customer.1.beta").get(0), compact.get("customer.2.beta").get(0));
+        assertNotSame(compact.get("customer.1.url").get(0), compact.get("customer.2.url").get(0));
+    }
+
+    @Test
+    public void footprintOfCompactLayoutIsSmaller() {
+        Map<String, List<ConfigurationValue>> configuration = new HashMap<String, List<ConfigurationValue>>();
+        for (int i = 0; i < 10000; i++) {
+            configuration.put("customer." + i + ".feature.new-checkout", values(i % 3 == 0 ? "true" : "false"));
+        }
+        ConfigurationFootprint footprint = ConfigurationFootprint.of(configuration);
+
+        assertEquals(10000, footprint.getKeys());
+        assertEquals(2, footprint.getDistinctValues());
+        assertTrue(footprint.toString(), footprint.getCompactBytes() * 4 < footprint.getHashMapBytes());
+    }
+
+    @Test
+    public void compactConfigurationResolvesLikeTheBuiltConfiguration() {
+        ConstrettoBuilder builder = builder();
+
+        assertResolvesLike(builder.getConfiguration(), builder.getCompactConfiguration());
+        assertTrue(builder.getFootprintReport().getKeys() > 0);
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
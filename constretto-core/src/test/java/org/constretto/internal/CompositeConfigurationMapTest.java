@@ -0,0 +1,77 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.constretto.internal;
+
+import org.constretto.model.CPrimitive;
+import org.constretto.model.ConfigurationValue;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:kaare.nilsen@gmail.com">Kaare Nilsen</a>
+ */
+public class CompositeConfigurationMapTest {
+
+    @Test
+    public void valuesOfEveryLayerAreJoinedInOrder() {
+        Map<String, List<ConfigurationValue>> parent = new HashMap<String, List<ConfigurationValue>>();
+        parent.put("key", Arrays.asList(value("parent", "production")));
+        parent.put("parent.only", Arrays.asList(value("parent only", ConfigurationValue.DEFAULT_TAG)));
+        Map<String, List<ConfigurationValue>> child = new HashMap<String, List<ConfigurationValue>>();
+        child.put("key", Arrays.asList(value("child", ConfigurationValue.DEFAULT_TAG)));
+
+        Map<String, List<ConfigurationValue>> composed = compose(parent, child);
+
+        assertTrue(composed instanceof CompositeConfigurationMap);
+        assertEquals(2, composed.get("key").size());
+        assertEquals("parent", composed.get("key").get(0).value().toString());
+        assertEquals("child", composed.get("key").get(1).value().toString());
+        assertSame(parent.get("parent.only"), composed.get("parent.only"));
+        assertNull(composed.get("missing"));
+        assertEquals(new HashSet<String>(Arrays.asList("key", "parent.only")), composed.keySet());
+        assertEquals(2, composed.entrySet().size());
+    }
+
+    @Test
+    public void nestedCompositesAreSplicedIn() {
+        Map<String, List<ConfigurationValue>> first = Collections.singletonMap("first", Arrays.asList(value("1", ConfigurationValue.DEFAULT_TAG)));
+        Map<String, List<ConfigurationValue>> second = Collections.singletonMap("second", Arrays.asList(value("2", ConfigurationValue.DEFAULT_TAG)));
+        Map<String, List<ConfigurationValue>> third = Collections.singletonMap("third", Arrays.asList(value("3", ConfigurationValue.DEFAULT_TAG)));
+
+        Map<String, List<ConfigurationValue>> composed = compose(compose(first, second), third);
+
+        assertEquals(Arrays.asList(first, second, third), ((CompositeConfigurationMap) composed).layers());
+    }
+
+    @Test
+    public void singleLayerIsNotWrapped() {
+        Map<String, List<ConfigurationValue>> only = Collections.singletonMap("key", Arrays.asList(value("1", ConfigurationValue.DEFAULT_TAG)));
+
+        assertSame(only, compose(only, new HashMap<String, List<ConfigurationValue>>()));
+    }
+
+    @SafeVarargs
+    private static Map<String, List<ConfigurationValue>> compose(Map<String, List<ConfigurationValue>>... layers) {
+        return CompositeConfigurationMap.compose(Arrays.asList(layers));
+    }
+
+    private static ConfigurationValue value(String value, String tag) {
+        return new ConfigurationValue(new CPrimitive(value), tag);
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.constretto.internal;
+
+import org.constretto.annotation.Configuration;
+import org.constretto.exception.ConstrettoException;
+import org.constretto.exception.ConstrettoExpressionException;
+import org.constretto.model.ConfigurationValue;
+import org.constretto.model.GsonParser;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:kaare.nilsen@gmail.com">Kaare Nilsen</a>
+ */
+public class ConfigurationInterfaceViewTest {
+
+    @Test
+    public void interfacesAreImplementedFromTheConfiguration() {
+        DefaultConstrettoConfiguration configuration = new DefaultConstrettoConfiguration(values("10", "[8080,8081]"));
+
+        PoolSettings settings = configuration.as(PoolSettings.class);
+
+        assertEquals(10, settings.getSize());
+        assertEquals("db", settings.name());
+        assertTrue(settings.isEnabled());
+        assertEquals(30, settings.timeout());
+        assertEquals(Arrays.asList(8080, 8081), settings.getPorts());
+        assertArrayEquals(new int[]{8080, 8081}, settings.portArray());
+    }
+
+    @Test
+    public void viewsFollowReloadsAndConvertOncePerVersion() {
+        DefaultConstrettoConfiguration configuration = new DefaultConstrettoConfiguration(values("10", "[8080]"));
+        PoolSettings settings = configuration.as(PoolSettings.class);
+        List<Integer> ports = settings.getPorts();
+        assertSame(ports, settings.getPorts());
+
+        settings.portArray()[0] = 1;
+        assertEquals(8080, settings.portArray()[0]);
+
+        configuration.update(values("20", "[9090]"));
+
+        assertEquals(20, settings.getSize());
+        assertEquals(Collections.singletonList(9090), settings.getPorts());
+    }
+
+    @Test(expected = ConstrettoExpressionException.class)
+    public void missingKeysAreFoundWhenTheViewIsCreated() {
+        new DefaultConstrettoConfiguration(new HashMap<String, List<ConfigurationValue>>()).as(PoolSettings.class);
+    }
+
+    @Test(expected = ConstrettoException.class)
+    public void methodsWithParametersAreRejected() {
+        new DefaultConstrettoConfiguration(values("10", "[8080]")).as(Lookup.class);
+    }
+
+    @Test
+    public void defaultMethodsAreCalledOnTheView() {
+        DefaultConstrettoConfiguration configuration = new DefaultConstrettoConfiguration(values("10", "[8080]"));
+
+        DescribedPoolSettings settings = configuration.as(DescribedPoolSettings.class);
+
+        assertEquals("pool db of 10", settings.describe("pool"));
+        configuration.update(values("20", "[8080]"));
+        assertEquals("pool db of 20", settings.describe("pool"));
+    }
+
+    private static Map<String, List<ConfigurationValue>> values(String size, String ports) {
+        GsonParser parser = new GsonParser();
+        Map<String, List<ConfigurationValue>> values = new HashMap<String, List<ConfigurationValue>>();
+        values.put("size", Collections.singletonList(new ConfigurationValue(parser.parse(size))));
+        values.put("pool.name", Collections.singletonList(new ConfigurationValue(parser.parse("db"))));
+        values.put("enabled", Collections.singletonList(new ConfigurationValue(parser.parse("true"))));
+        values.put("ports", Collections.singletonList(new ConfigurationValue(parser.parse(ports))));
+        return values;
+    }
+
+    public interface PoolSettings {
+        int getSize();
+
+        @Configuration("pool.name")
+        String name();
+
+        boolean isEnabled();
+
+        @Configuration(value = "pool.timeout", defaultValue = "30")
+        int timeout();
+
+        List<Integer> getPorts();
+
+        @Configuration("ports")
+        int[] portArray();
+    }
+
+    public interface DescribedPoolSettings extends PoolSettings {
+        default String describe(String prefix) {
+            return prefix + " " + name() + " of " + getSize();
+        }
+    }
+
+    public interface Lookup {
+        String value(String key);
+    }
+}
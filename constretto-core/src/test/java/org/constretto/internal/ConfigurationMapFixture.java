@@ -0,0 +1,94 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.constretto.internal;
+
+import org.constretto.ConstrettoBuilder;
+import org.constretto.ConstrettoConfiguration;
+import org.constretto.model.CPrimitive;
+import org.constretto.model.ClassPathResource;
+import org.constretto.model.ConfigurationValue;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Configurations and assertions shared by the tests of the different configuration map layouts.
+ *
+ * @author <a href="mailto:kaare.nilsen@gmail.com">Kaare Nilsen</a>
+ */
+final class ConfigurationMapFixture {
+
+    private ConfigurationMapFixture() {
+    }
+
+    static List<ConfigurationValue> values(String value) {
+        List<ConfigurationValue> values = new ArrayList<ConfigurationValue>();
+        values.add(new ConfigurationValue(new CPrimitive(value)));
+        return values;
+    }
+
+    /**
+     * @return a configuration with the keys "key.0" to "key.n" mapped to "value.0" to "value.n"
+     */
+    static Map<String, List<ConfigurationValue>> configuration(int size) {
+        Map<String, List<ConfigurationValue>> configuration = new HashMap<String, List<ConfigurationValue>>();
+        for (int i = 0; i < size; i++) {
+            configuration.put("key." + i, values("value." + i));
+        }
+        return configuration;
+    }
+
+    static Map<String, List<ConfigurationValue>> configuration(Collection<String> keys) {
+        Map<String, List<ConfigurationValue>> configuration = new HashMap<String, List<ConfigurationValue>>();
+        for (String key : keys) {
+            configuration.put(key, values("value of " + key));
+        }
+        return configuration;
+    }
+
+    /**
+     * Asserts that the map holds exactly the keys and values of the configuration, and none of the misses.
+     */
+    static void assertSameMapping(Map<String, List<ConfigurationValue>> configuration, Map<String, List<ConfigurationValue>> map,
+                                  Collection<String> misses) {
+        assertEquals(configuration.size(), map.size());
+        for (Map.Entry<String, List<ConfigurationValue>> entry : configuration.entrySet()) {
+            assertEquals(entry.getKey(), entry.getValue(), map.get(entry.getKey()));
+        }
+        for (String miss : misses) {
+            assertNull(miss, map.get(miss));
+            assertFalse(miss, map.containsKey(miss));
+        }
+        assertEquals(configuration.keySet(), map.keySet());
+    }
+
+    /**
+     * @return a builder for test.properties, tagged for production
+     */
+    static ConstrettoBuilder builder() {
+        return new ConstrettoBuilder(false)
+                .createPropertiesStore()
+                .addResource(new ClassPathResource("test.properties"))
+                .done()
+                .addCurrentTag("production");
+    }
+
+    static void assertResolvesLike(ConstrettoConfiguration configuration, ConstrettoConfiguration layout) {
+        assertEquals(configuration.asMap(), layout.asMap());
+        assertEquals(configuration.evaluateToString("somedb.username"), layout.evaluateToString("somedb.username"));
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.constretto.internal;
+
+import org.constretto.ConfigurationChange;
+import org.constretto.ConfigurationOverride;
+import org.constretto.ConstrettoBuilder;
+import org.constretto.ConstrettoConfiguration;
+import org.constretto.model.Resource;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:kaare.nilsen@gmail.com">Kaare Nilsen</a>
+ */
+public class ConfigurationOverridesTest {
+    private ConstrettoConfiguration configuration;
+
+    @Before
+    public void loadConfiguration() {
+        configuration = new ConstrettoBuilder(false)
+                .addCurrentTag("production")
+                .createPropertiesStore()
+                .addResource(Resource.create("classpath:test.properties"))
+                .done()
+                .getConfiguration();
+    }
+
+    @Test
+    public void overridesTakePrecedenceOverStoredValues() {
+        configuration.override("somedb.username", "incident");
+        assertEquals("incident", configuration.evaluateToString("somedb.username"));
+        assertEquals("incident", configuration.withTags("systest").evaluateToString("somedb.username"));
+
+        assertTrue(configuration.removeOverride("somedb.username", null));
+        assertFalse(configuration.removeOverride("somedb.username", null));
+        assertEquals("user1", configuration.evaluateToString("somedb.username"));
+        assertEquals("user2", configuration.withTags("systest").evaluateToString("somedb.username"));
+    }
+
+    @Test
+    public void taggedOverridesOnlyApplyWithTheirTag() {
+        configuration.override("somedb.username", "everywhere");
+        configuration.override("somedb.username", "systest only", "systest", 0, TimeUnit.SECONDS);
+
+        assertEquals("everywhere", configuration.evaluateToString("somedb.username"));
+        assertEquals("systest only", configuration.withTags("systest").evaluateToString("somedb.username"));
+        assertEquals(Arrays.asList("everywhere", "systest only"), valuesOf(configuration.overrides()));
+    }
+
+    @Test
+    public void overridesAreSeenByKeysReferringToThem() {
+        configuration.override("base-url", "http://example.org");
+
+        assertEquals("http://example.org/child", configuration.evaluateToString("url.child"));
+        assertEquals("http://example.org", configuration.asMap().get("base-url"));
+    }
+
+    @Test
+    public void overridesExpire() throws Exception {
+        configuration.override("somedb.username", "temporary", null, 50, TimeUnit.MILLISECONDS);
+        assertEquals("temporary", configuration.evaluateToString("somedb.username"));
+        assertTrue(configuration.overrides().get(0).expiresAt() > 0);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!configuration.overrides().isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(configuration.overrides().isEmpty());
+        assertEquals("user1", configuration.evaluateToString("somedb.username"));
+    }
+
+    @Test
+    public void clearingOverridesIsPublishedAsAChange() throws Exception {
+        configuration.override("somedb.username", "incident");
+        configuration.override("newkey", "added");
+        final BlockingQueue<ConfigurationChange> changes = new LinkedBlockingQueue<ConfigurationChange>();
+        configuration.subscribe(new Consumer<ConfigurationChange>() {
+            public void accept(ConfigurationChange change) {
+                changes.add(change);
+            }
+        });
+
+        configuration.clearOverrides();
+
+        assertTrue(configuration.overrides().isEmpty());
+        assertFalse(configuration.hasValue("newkey"));
+        assertEquals(Arrays.asList("newkey", "somedb.username"), Arrays.asList(changes.poll(5, TimeUnit.SECONDS).keys().toArray()));
+    }
+
+    private static List<String> valuesOf(List<ConfigurationOverride> overrides) {
+        String[] values = new String[overrides.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = overrides.get(i).value();
+        }
+        Arrays.sort(values);
+        return Arrays.asList(values);
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.constretto.internal;
+
+import org.constretto.BatchResult;
+import org.constretto.ConfigurationChange;
+import org.constretto.ConfigurationStore;
+import org.constretto.ConstrettoBuilder;
+import org.constretto.ConstrettoConfiguration;
+import org.constretto.annotation.Configuration;
+import org.constretto.exception.ConstrettoException;
+import org.constretto.model.CPrimitive;
+import org.constretto.model.ConfigurationValue;
+import org.constretto.model.TaggedPropertySet;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:kaare.nilsen@gmail.com">Kaare Nilsen</a>
+ */
+public class ConfigurationSnapshotTest {
+    private static final List<String> KEYS = Arrays.asList("first", "second", "both");
+
+    @Test
+    public void reloadReadsTheStoresAgain() {
+        GenerationStore store = new GenerationStore();
+        ConstrettoConfiguration configuration = new ConstrettoBuilder(false).addConfigurationStore(store).getConfiguration();
+        ConstrettoConfiguration eu = configuration.withTags("eu");
+
+        assertEquals("1-1", configuration.evaluateToString("both"));
+        assertEquals("1-eu1", eu.evaluateToString("both"));
+
+        configuration.reload();
+
+        assertEquals("2-2", configuration.evaluateToString("both"));
+        assertEquals("2-eu2", eu.evaluateToString("both"));
+        assertSame(eu, configuration.withTags("eu"));
+    }
+
+    @Test
+    public void snapshotsDoNotChange() {
+        DefaultConstrettoConfiguration configuration = (DefaultConstrettoConfiguration) new ConstrettoBuilder(false)
+                .addConfigurationStore(new GenerationStore())
+                .getConfiguration();
+        ConfigurationSnapshot before = configuration.snapshot();
+
+        configuration.reload();
+        ConfigurationSnapshot after = configuration.snapshot();
+
+        assertEquals(before.version() + 1, after.version());
+        assertEquals("1", before.configuration().get("first").get(0).value().toString());
+        assertEquals("2", after.configuration().get("first").get(0).value().toString());
+        assertEquals(before.tags(), after.tags());
+    }
+
+    @Test(expected = ConstrettoException.class)
+    public void configurationsNotLoadedFromStoresCanNotBeReloaded() {
+        new DefaultConstrettoConfiguration(new HashMap<String, List<ConfigurationValue>>()).reload();
+    }
+
+    @Test
+    public void lookupsNeverMixValuesFromDifferentLoads() throws Exception {
+        final ConstrettoConfiguration configuration = new ConstrettoBuilder(false)
+                .addConfigurationStore(new GenerationStore())
+                .getConfiguration();
+        final ConstrettoConfiguration eu = configuration.withTags("eu");
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicInteger reads = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+        try {
+            List<Future<?>> readers = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                final boolean useView = i % 2 == 1;
+                readers.add(executor.submit(new Callable<Void>() {
+                    public Void call() {
+                        while (running.get()) {
+                            if (useView) {
+                                Generation generation = eu.as(Generation.class);
+                                assertEquals(generation.first + "-eu" + generation.first, generation.both);
+                                assertEquals("eu" + generation.first, generation.second);
+                            } else {
+                                BatchResult<String> batch = configuration.evaluateAll(String.class, KEYS);
+                                assertEquals(batch.get("first"), batch.get("second"));
+                                assertEquals(batch.get("first") + "-" + batch.get("second"), batch.get("both"));
+                            }
+                            reads.incrementAndGet();
+                        }
+                        return null;
+                    }
+                }));
+            }
+            Future<?> writer = executor.submit(new Callable<Void>() {
+                public Void call() {
+                    for (int i = 0; i < 500; i++) {
+                        configuration.reload();
+                    }
+                    return null;
+                }
+            });
+            writer.get(30, TimeUnit.SECONDS);
+            running.set(false);
+            for (Future<?> reader : readers) {
+                reader.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertTrue(reads.get() > 0);
+        assertEquals("501-501", configuration.evaluateToString("both"));
+        assertEquals("501-eu501", eu.evaluateToString("both"));
+    }
+
+    @Test
+    public void changedKeysFollowVariables() {
+        Map<String, List<ConfigurationValue>> before = values("host", "a", "url", "http://#{host}", "page", "#{url}/page", "other", "x");
+        Map<String, List<ConfigurationValue>> after = values("host", "b", "url", "http://#{host}", "page", "#{url}/page", "other", "x");
+        ConfigurationSnapshot snapshot = new ConfigurationSnapshot(before, Collections.<String>emptyList());
+
+        Set<String> changedKeys = snapshot.withConfiguration(after).changedKeys(snapshot);
+
+        assertEquals(new HashSet<>(Arrays.asList("host", "url", "page")), changedKeys);
+    }
+
+    @Test
+    public void changedKeysAreResolvedWithTheTagsOfTheSnapshot() {
+        Map<String, List<ConfigurationValue>> before = values("host", "a");
+        before.get("host").add(new ConfigurationValue(new CPrimitive("eu-a"), "eu"));
+        Map<String, List<ConfigurationValue>> after = values("host", "a");
+        after.get("host").add(new ConfigurationValue(new CPrimitive("eu-b"), "eu"));
+        ConfigurationSnapshot snapshot = new ConfigurationSnapshot(before, Collections.<String>emptyList());
+        ConfigurationSnapshot updated = snapshot.withConfiguration(after);
+
+        assertTrue(updated.changedKeys(snapshot).isEmpty());
+        List<String> eu = Collections.singletonList("eu");
+        assertEquals(Collections.singleton("host"), updated.withTags(eu).changedKeys(snapshot.withTags(eu)));
+    }
+
+    @Test
+    public void subscribersGetChangedValues() throws Exception {
+        DefaultConstrettoConfiguration configuration = new DefaultConstrettoConfiguration(values("pool.size", "10", "pool.name", "db"));
+        final BlockingQueue<Integer> sizes = new LinkedBlockingQueue<>();
+        final BlockingQueue<ConfigurationChange> changes = new LinkedBlockingQueue<>();
+        configuration.subscribe("pool.size", Integer.class, new Consumer<Integer>() {
+            public void accept(Integer size) {
+                sizes.add(size);
+            }
+        });
+        configuration.subscribe(new Consumer<ConfigurationChange>() {
+            public void accept(ConfigurationChange change) {
+                changes.add(change);
+            }
+        });
+
+        configuration.update(values("pool.size", "10", "pool.name", "reporting"));
+        configuration.update(values("pool.size", "20", "pool.name", "reporting"));
+
+        assertEquals(Integer.valueOf(20), sizes.poll(5, TimeUnit.SECONDS));
+        ConfigurationChange change = changes.poll(5, TimeUnit.SECONDS);
+        if (change.toVersion() == 1) {
+            change = change.merge(changes.poll(5, TimeUnit.SECONDS));
+        }
+        assertEquals(0, change.fromVersion());
+        assertEquals(2, change.toVersion());
+        assertEquals(new TreeSet<>(Arrays.asList("pool.name", "pool.size")), change.keys());
+        assertNull(sizes.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void earlierVersionsCanBeBroughtBack() throws Exception {
+        GenerationStore store = new GenerationStore();
+        DefaultConstrettoConfiguration configuration = (DefaultConstrettoConfiguration) new ConstrettoBuilder(false)
+                .addConfigurationStore(store)
+                .getConfiguration();
+        for (int i = 0; i < DefaultConstrettoConfiguration.VERSION_HISTORY + 2; i++) {
+            configuration.reload();
+        }
+        List<Long> versions = configuration.versions();
+        assertEquals(DefaultConstrettoConfiguration.VERSION_HISTORY, versions.size());
+        assertEquals(Long.valueOf(DefaultConstrettoConfiguration.VERSION_HISTORY + 2), versions.get(versions.size() - 1));
+        assertNull(configuration.snapshot(0));
+
+        final BlockingQueue<ConfigurationChange> changes = new LinkedBlockingQueue<>();
+        configuration.subscribe(new Consumer<ConfigurationChange>() {
+            public void accept(ConfigurationChange change) {
+                changes.add(change);
+            }
+        });
+        long version = versions.get(0);
+        assertEquals(String.valueOf(version + 1), configuration.snapshot(version).configuration().get("first").get(0).value().toString());
+        configuration.rollback(version);
+
+        assertEquals(String.valueOf(version + 1), configuration.evaluateToString("first"));
+        assertEquals(versions.get(versions.size() - 1) + 1, configuration.snapshot().version());
+        assertEquals(new TreeSet<>(KEYS), changes.poll(5, TimeUnit.SECONDS).keys());
+    }
+
+    @Test(expected = ConstrettoException.class)
+    public void versionsNoLongerKeptCanNotBeBroughtBack() {
+        DefaultConstrettoConfiguration configuration = new DefaultConstrettoConfiguration(values("first", "1"));
+        for (int i = 0; i < DefaultConstrettoConfiguration.VERSION_HISTORY; i++) {
+            configuration.update(values("first", String.valueOf(i + 2)));
+        }
+        configuration.rollback(0);
+    }
+
+    public static class Generation {
+        @Configuration
+        public String first;
+        @Configuration
+        public String second;
+        @Configuration
+        public String both;
+    }
+
+    private static Map<String, List<ConfigurationValue>> values(String... keysAndValues) {
+        Map<String, List<ConfigurationValue>> values = new HashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            List<ConfigurationValue> tagged = new ArrayList<>();
+            tagged.add(new ConfigurationValue(new CPrimitive(keysAndValues[i + 1])));
+            values.put(keysAndValues[i], tagged);
+        }
+        return values;
+    }
+
+    /**
+     * Gives every key the number of times the store has been read.
+     */
+    private static class GenerationStore implements ConfigurationStore {
+        private final AtomicInteger reads = new AtomicInteger();
+
+        public Collection<TaggedPropertySet> parseConfiguration() {
+            String generation = String.valueOf(reads.incrementAndGet());
+            Map<String, String> properties = new HashMap<>();
+            properties.put("first", generation);
+            properties.put("second", generation);
+            properties.put("both", "#{first}-#{second}");
+            Map<String, String> euProperties = new HashMap<>();
+            euProperties.put("second", "eu" + generation);
+            return Arrays.asList(new TaggedPropertySet(properties, GenerationStore.class),
+                    new TaggedPropertySet("eu", euProperties, GenerationStore.class));
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.constretto.internal;
+
+import org.constretto.ConstrettoBuilder;
+import org.constretto.model.ConfigurationValue;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.constretto.internal.ConfigurationMapFixture.*;
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:kaare.nilsen@gmail.com">Kaare Nilsen</a>
+ */
+public class FrozenConfigurationMapTest {
+
+    @Test
+    public void seedsPlaceEveryKeyInItsOwnSlot() {
+        // small sizes put more keys than average in a single bucket, so the seed search has to separate them
+        for (int size = 1; size <= 40; size++) {
+            Map<String, List<ConfigurationValue>> configuration = configuration(size);
+
+            Map<String, List<ConfigurationValue>> frozen = FrozenConfigurationMap.freeze(configuration);
+
+            assertTrue(frozen instanceof FrozenConfigurationMap);
+            assertSameMapping(configuration, frozen, Collections.<String>emptyList());
+        }
+    }
+
+    @Test
+    public void missesAreRejectedByTheFingerprint() {
+        // every slot of the minimal perfect hash is taken, so every miss lands on a slot holding another key
+        List<String> misses = new ArrayList<String>();
+        for (int i = 0; i < 1000; i++) {
+            misses.add("key." + i + ".port");
+            misses.add("KEY." + i);
+        }
+        for (int size : new int[]{1, 2, 100000}) {
+            Map<String, List<ConfigurationValue>> configuration = configuration(size);
+
+            Map<String, List<ConfigurationValue>> frozen = FrozenConfigurationMap.freeze(configuration);
+
+            assertTrue(frozen instanceof FrozenConfigurationMap);
+            assertSameMapping(configuration, frozen, misses);
+            assertFalse(frozen.containsKey(1));
+        }
+    }
+
+    @Test
+    public void keysWithEqualHashCodesAreSeparated() {
+        Map<String, List<ConfigurationValue>> configuration = new HashMap<String, List<ConfigurationValue>>();
+        configuration.put("Aa", values("first"));
+        configuration.put("BB", values("second"));
+
+        Map<String, List<ConfigurationValue>> frozen = FrozenConfigurationMap.freeze(configuration);
+
+        assertEquals("first", frozen.get("Aa").get(0).value().toString());
+        assertEquals("second", frozen.get("BB").get(0).value().toString());
+        assertFalse(frozen.containsKey("AaBB"));
+    }
+
+    @Test
+    public void emptyConfigurationCanBeFrozen() {
+        Map<String, List<ConfigurationValue>> frozen = FrozenConfigurationMap.freeze(new HashMap<String, List<ConfigurationValue>>());
+
+        assertTrue(frozen.isEmpty());
+        assertNull(frozen.get("any"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void frozenConfigurationCanNotBeChanged() {
+        FrozenConfigurationMap.freeze(Collections.singletonMap("key", values("value"))).put("other", values("value"));
+    }
+
+    @Test
+    public void frozenConfigurationResolvesLikeTheBuiltConfiguration() {
+        ConstrettoBuilder builder = builder();
+
+        assertResolvesLike(builder.getConfiguration(), builder.getFrozenConfiguration());
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.constretto.internal;
+
+import org.constretto.ConstrettoConfiguration;
+import org.constretto.Subscription;
+import org.constretto.annotation.Configuration;
+import org.constretto.annotation.Configure;
+import org.constretto.model.CPrimitive;
+import org.constretto.model.ConfigurationValue;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:kaare.nilsen@gmail.com">Kaare Nilsen</a>
+ */
+public class LiveBindingTest {
+
+    @Test
+    public void onlyChangedMembersAreInjectedAgain() throws Exception {
+        DefaultConstrettoConfiguration configuration = new DefaultConstrettoConfiguration(values("10", "db", "1000"));
+        Pool pool = new Pool();
+        configuration.bind(pool);
+        assertEquals(10, pool.size);
+        assertEquals(1, pool.timeoutCalls);
+        pool.name = "renamed";
+
+        configuration.update(values("20", "db", "1000"));
+        awaitSize(pool, 20);
+        assertEquals("renamed", pool.name);
+        assertEquals(1, pool.timeoutCalls);
+
+        configuration.update(values("20", "db", "2000"));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pool.timeout != 2000 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(2000, pool.timeout);
+        assertEquals(2, pool.timeoutCalls);
+        assertEquals("renamed", pool.name);
+    }
+
+    @Test
+    public void cancelledBindingsAreNotInjected() throws Exception {
+        DefaultConstrettoConfiguration configuration = new DefaultConstrettoConfiguration(values("10", "db", "1000"));
+        Pool pool = new Pool();
+        Subscription subscription = configuration.bind(pool);
+        Pool other = new Pool();
+        configuration.bind(other);
+
+        subscription.cancel();
+        configuration.update(values("30", "db", "1000"));
+
+        awaitSize(other, 30);
+        assertEquals(10, pool.size);
+    }
+
+    @Test
+    public void cancellingTheLastBindingStopsListeningForChanges() throws Exception {
+        DefaultConstrettoConfiguration configuration = new DefaultConstrettoConfiguration(values("10", "db", "1000"));
+        ConstrettoConfiguration view = configuration.withTags("bound");
+        Subscription first = view.bind(new Pool());
+        Subscription second = view.bind(new Pool());
+
+        first.cancel();
+        second.cancel();
+        for (int i = 0; i < DefaultConstrettoConfiguration.MAX_TAG_VIEWS; i++) {
+            configuration.withTags("tenant-" + i);
+        }
+
+        // a view still listening for changes would have been kept
+        assertNotSame(view, configuration.withTags("bound"));
+    }
+
+    @Test
+    public void optionalFieldsOfRemovedKeysAreReset() throws Exception {
+        Map<String, List<ConfigurationValue>> values = values("10", "db", "1000");
+        values.put("client.name", Collections.singletonList(new ConfigurationValue(new CPrimitive("checkout"))));
+        values.put("client.retries", Collections.singletonList(new ConfigurationValue(new CPrimitive("5"))));
+        DefaultConstrettoConfiguration configuration = new DefaultConstrettoConfiguration(values);
+        Client client = new Client();
+        configuration.bind(client);
+        assertEquals("checkout", client.name);
+        assertEquals(5, client.retries);
+
+        configuration.update(values("10", "db", "1000"));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while ((client.name != null || client.retries != 3) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertNull(client.name);
+        assertEquals(3, client.retries);
+    }
+
+    private static void awaitSize(Pool pool, int size) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pool.size != size && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(size, pool.size);
+    }
+
+    private static Map<String, List<ConfigurationValue>> values(String size, String name, String timeout) {
+        Map<String, List<ConfigurationValue>> values = new HashMap<String, List<ConfigurationValue>>();
+        values.put("pool.size", Collections.singletonList(new ConfigurationValue(new CPrimitive(size))));
+        values.put("pool.name", Collections.singletonList(new ConfigurationValue(new CPrimitive(name))));
+        values.put("pool.timeout", Collections.singletonList(new ConfigurationValue(new CPrimitive(timeout))));
+        return values;
+    }
+
+    public static class Pool {
+        @Configuration("pool.size")
+        volatile int size;
+        @Configuration("pool.name")
+        volatile String name;
+        volatile int timeout;
+        volatile int timeoutCalls;
+
+        @Configure
+        public void configure(@Configuration("pool.timeout") int timeout) {
+            this.timeout = timeout;
+            timeoutCalls++;
+        }
+    }
+
+    public static class Client {
+        @Configuration(value = "client.name", required = false)
+        volatile String name;
+        @Configuration(value = "client.retries", defaultValue = "3")
+        volatile int retries;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.constretto.internal;
+
+import org.constretto.model.ConfigurationValue;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.constretto.internal.ConfigurationMapFixture.*;
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:kaare.nilsen@gmail.com">Kaare Nilsen</a>
+ */
+public class PersistentConfigurationMapTest {
+
+    @Test
+    public void holdsTheSameKeysAndValuesAsTheConfiguration() {
+        Map<String, List<ConfigurationValue>> configuration = configuration(5000);
+        configuration.put("Aa", values("colliding"));
+        configuration.put("BB", values("colliding too"));
+
+        PersistentConfigurationMap map = PersistentConfigurationMap.of(configuration);
+
+        assertEquals(configuration, map);
+        assertEquals(configuration.size(), map.size());
+        assertEquals("colliding", map.get("Aa").get(0).value().toString());
+        assertEquals("colliding too", map.get("BB").get(0).value().toString());
+        assertNull(map.get("missing"));
+    }
+
+    @Test
+    public void changesLeaveEarlierVersionsIntact() {
+        PersistentConfigurationMap map = PersistentConfigurationMap.of(configuration(1000));
+
+        PersistentConfigurationMap changed = map.with("key.1", values("changed")).without("key.2").with("key.new", values("new"));
+
+        assertEquals("value.1", map.get("key.1").get(0).value().toString());
+        assertTrue(map.containsKey("key.2"));
+        assertFalse(map.containsKey("key.new"));
+        assertEquals("changed", changed.get("key.1").get(0).value().toString());
+        assertFalse(changed.containsKey("key.2"));
+        assertEquals(1000, changed.size());
+        assertEquals(new HashSet<String>(Arrays.asList("key.1", "key.2", "key.new")), changed.changedKeys(map));
+    }
+
+    @Test
+    public void updatesKeepTheValuesOfUnchangedKeys() {
+        Map<String, List<ConfigurationValue>> configuration = configuration(1000);
+        PersistentConfigurationMap map = PersistentConfigurationMap.of(configuration);
+        Map<String, List<ConfigurationValue>> reloaded = configuration(1000);
+        reloaded.put("key.7", values("changed"));
+        reloaded.remove("key.8");
+
+        PersistentConfigurationMap updated = map.update(reloaded);
+
+        assertEquals(reloaded, updated);
+        assertSame(map.get("key.1"), updated.get("key.1"));
+        assertNotSame(reloaded.get("key.1"), updated.get("key.1"));
+        assertEquals(new HashSet<String>(Arrays.asList("key.7", "key.8")), updated.changedKeys(map));
+        assertTrue(map.update(configuration(1000)).changedKeys(map).isEmpty());
+    }
+
+    @Test
+    public void removingEveryKeyGivesAnEmptyMap() {
+        PersistentConfigurationMap map = PersistentConfigurationMap.of(configuration(100));
+        for (int i = 0; i < 100; i++) {
+            map = map.without("key." + i);
+        }
+        assertTrue(map.isEmpty());
+        assertEquals(Collections.emptyMap(), map);
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.constretto.internal;
+
+import org.constretto.ConfigurationStore;
+import org.constretto.ConstrettoBuilder;
+import org.constretto.ConstrettoConfiguration;
+import org.constretto.exception.ConstrettoException;
+import org.constretto.model.TaggedPropertySet;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:kaare.nilsen@gmail.com">Kaare Nilsen</a>
+ */
+public class RefreshSchedulerTest {
+
+    @Test
+    public void changedStoresReloadTheConfiguration() throws Exception {
+        RemoteStore remote = new RemoteStore("first");
+        RemoteStore other = new RemoteStore("other.value", "other");
+        ConstrettoConfiguration configuration = new ConstrettoBuilder(false)
+                .addRefreshedConfigurationStore(remote, 10, TimeUnit.MILLISECONDS)
+                .addRefreshedConfigurationStore(other, 1, TimeUnit.HOURS)
+                .getConfiguration();
+        RefreshScheduler scheduler = ((DefaultConstrettoConfiguration) configuration).refreshScheduler();
+        try {
+            assertEquals("first", configuration.evaluateToString("value"));
+
+            remote.value = "second";
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!"second".equals(configuration.evaluateToString("value")) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            assertEquals("second", configuration.evaluateToString("value"));
+            RefreshStats stats = scheduler.stats().get(0);
+            assertEquals(RemoteStore.class.getName(), stats.store());
+            assertTrue(stats.refreshes() >= 1);
+            assertEquals(1, stats.changes());
+            assertEquals(1, other.reads);
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void collectedConfigurationsStopTheirRefreshes() throws Exception {
+        ConstrettoConfiguration configuration = new ConstrettoBuilder(false)
+                .addRefreshedConfigurationStore(new RemoteStore("first"), 10, TimeUnit.MILLISECONDS)
+                .getConfiguration();
+        RefreshScheduler scheduler = ((DefaultConstrettoConfiguration) configuration).refreshScheduler();
+        configuration = null;
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!scheduler.isShutdown() && System.currentTimeMillis() < deadline) {
+            System.gc();
+            Thread.sleep(20);
+        }
+
+        assertTrue(scheduler.isShutdown());
+    }
+
+    @Test
+    public void everyConfigurationBuiltFromTheBuilderIsReloaded() throws Exception {
+        RemoteStore remote = new RemoteStore("first");
+        ConstrettoBuilder builder = new ConstrettoBuilder(false).addRefreshedConfigurationStore(remote, 1, TimeUnit.HOURS);
+        DefaultConstrettoConfiguration first = (DefaultConstrettoConfiguration) builder.getConfiguration();
+        DefaultConstrettoConfiguration second = (DefaultConstrettoConfiguration) builder.getConfiguration();
+        try {
+            remote.value = "second";
+
+            assertEquals(1, first.refreshScheduler().refreshNow());
+            assertEquals(1, second.refreshScheduler().refreshNow());
+
+            assertEquals("second", first.evaluateToString("value"));
+            assertEquals("second", second.evaluateToString("value"));
+            assertEquals(0, second.refreshScheduler().refreshNow());
+        } finally {
+            first.refreshScheduler().shutdown();
+            second.refreshScheduler().shutdown();
+        }
+    }
+
+    @Test
+    public void unchangedStoresDoNotReload() throws Exception {
+        RemoteStore remote = new RemoteStore("first");
+        ConstrettoConfiguration configuration = new ConstrettoBuilder(false)
+                .addRefreshedConfigurationStore(remote, 1, TimeUnit.HOURS)
+                .getConfiguration();
+        RefreshScheduler scheduler = ((DefaultConstrettoConfiguration) configuration).refreshScheduler();
+        try {
+            List<Long> versions = ((DefaultConstrettoConfiguration) configuration).versions();
+
+            assertEquals(0, scheduler.refreshNow());
+
+            assertEquals(versions, ((DefaultConstrettoConfiguration) configuration).versions());
+            assertEquals(1, scheduler.stats().get(0).refreshes());
+            assertEquals(0, scheduler.stats().get(0).changes());
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void failuresBackOffUntilARefreshSucceeds() throws Exception {
+        RemoteStore remote = new RemoteStore("first");
+        ConstrettoConfiguration configuration = new ConstrettoBuilder(false)
+                .addRefreshedConfigurationStore(remote, RefreshPolicy.every(1, TimeUnit.HOURS).withJitter(0).withMaxBackoff(4, TimeUnit.HOURS))
+                .getConfiguration();
+        RefreshScheduler scheduler = ((DefaultConstrettoConfiguration) configuration).refreshScheduler();
+        try {
+            remote.down = true;
+            scheduler.refreshNow();
+            scheduler.refreshNow();
+            scheduler.refreshNow();
+
+            RefreshStats stats = scheduler.stats().get(0);
+            assertEquals(3, stats.failures());
+            assertEquals(3, stats.consecutiveFailures());
+            assertTrue(stats.lastFailure() instanceof ConstrettoException);
+            assertEquals("first", configuration.evaluateToString("value"));
+
+            remote.down = false;
+            scheduler.refreshNow();
+            assertEquals(0, scheduler.stats().get(0).consecutiveFailures());
+            assertNull(scheduler.stats().get(0).lastFailure());
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void backoffDoublesTheIntervalUpToTheLongestBackoff() {
+        RefreshPolicy policy = RefreshPolicy.every(1, TimeUnit.SECONDS).withJitter(0).withMaxBackoff(5, TimeUnit.SECONDS);
+        Random random = new Random();
+
+        assertEquals(1000, policy.delay(0, random));
+        assertEquals(2000, policy.delay(1, random));
+        assertEquals(4000, policy.delay(2, random));
+        assertEquals(5000, policy.delay(3, random));
+        assertEquals(5000, policy.delay(100, random));
+    }
+
+    @Test
+    public void jitterSpreadsTheDelays() {
+        RefreshPolicy policy = RefreshPolicy.every(1, TimeUnit.SECONDS).withJitter(0.5);
+        Random random = new Random(42);
+        Set<Long> delays = new HashSet<Long>();
+        for (int i = 0; i < 100; i++) {
+            long delay = policy.delay(0, random);
+            assertTrue(delay >= 500 && delay <= 1500);
+            delays.add(delay);
+        }
+        assertTrue(delays.size() > 1);
+    }
+
+    @Test
+    public void aStoreIsNotRefreshedTwiceAtATime() throws Exception {
+        final RemoteStore remote = new RemoteStore("first");
+        ConstrettoConfiguration configuration = new ConstrettoBuilder(false)
+                .addRefreshedConfigurationStore(remote, 1, TimeUnit.HOURS)
+                .getConfiguration();
+        final RefreshScheduler scheduler = ((DefaultConstrettoConfiguration) configuration).refreshScheduler();
+        try {
+            remote.reading = new CountDownLatch(1);
+            remote.release = new CountDownLatch(1);
+            Thread refresher = new Thread(new Runnable() {
+                public void run() {
+                    scheduler.refreshNow();
+                }
+            });
+            refresher.start();
+            assertTrue(remote.reading.await(5, TimeUnit.SECONDS));
+
+            scheduler.refreshNow();
+            remote.release.countDown();
+            refresher.join(5000);
+
+            assertEquals(1, scheduler.stats().get(0).skipped());
+            assertEquals(1, scheduler.stats().get(0).refreshes());
+            assertEquals(2, remote.reads);
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    private static class RemoteStore implements ConfigurationStore {
+        private volatile String value;
+        private volatile boolean down;
+        private volatile int reads;
+        private volatile CountDownLatch reading;
+        private volatile CountDownLatch release;
+
+        private final String key;
+
+        private RemoteStore(String value) {
+            this("value", value);
+        }
+
+        private RemoteStore(String key, String value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public Collection<TaggedPropertySet> parseConfiguration() {
+            if (down) {
+                throw new ConstrettoException("The directory is down");
+            }
+            reads++;
+            if (reading != null) {
+                reading.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            Map<String, String> values = new HashMap<String, String>();
+            values.put(key, value);
+            return Arrays.asList(new TaggedPropertySet(values, getClass()));
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.constretto.internal.converter;
+
+import org.constretto.exception.ConstrettoConversionException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:kaare.nilsen@gmail.com">Kaare Nilsen</a>
+ */
+public class CachingInetAddressValueConverterTest {
+    private final Map<String, InetAddress> hosts = new HashMap<String, InetAddress>();
+    private final List<String> lookups = new ArrayList<String>();
+    private final List<Runnable> pendingRefreshes = new ArrayList<Runnable>();
+    private long now;
+    private CachingInetAddressValueConverter converter;
+
+    @Before
+    public void setUp() throws Exception {
+        hosts.put("db", InetAddress.getByAddress("db", new byte[]{10, 0, 0, 1}));
+        converter = new CachingInetAddressValueConverter(new CachingInetAddressValueConverter.Resolver() {
+            public InetAddress resolve(String host) throws UnknownHostException {
+                lookups.add(host);
+                InetAddress address = hosts.get(host);
+                if (address == null) {
+                    throw new UnknownHostException(host);
+                }
+                return address;
+            }
+        }, 1000, 100, new Executor() {
+            public void execute(Runnable command) {
+                pendingRefreshes.add(command);
+            }
+        }, new CachingInetAddressValueConverter.Clock() {
+            public long nanoTime() {
+                return now;
+            }
+        });
+    }
+
+    @Test
+    public void resolvedAddressesAreCached() throws Exception {
+        assertEquals("10.0.0.1", converter.fromString("db").getHostAddress());
+        assertEquals("10.0.0.1", converter.fromString("db").getHostAddress());
+
+        assertEquals(1, lookups.size());
+    }
+
+    @Test
+    public void staleAddressIsServedWhileRefreshing() throws Exception {
+        converter.fromString("db");
+        hosts.put("db", InetAddress.getByAddress("db", new byte[]{10, 0, 0, 2}));
+        now += millis(1001);
+
+        assertEquals("10.0.0.1", converter.fromString("db").getHostAddress());
+        assertEquals("10.0.0.1", converter.fromString("db").getHostAddress());
+        assertEquals(1, pendingRefreshes.size());
+
+        pendingRefreshes.remove(0).run();
+        assertEquals("10.0.0.2", converter.fromString("db").getHostAddress());
+        assertEquals(2, lookups.size());
+    }
+
+    @Test
+    public void lastKnownAddressIsKeptWhenRefreshFails() throws Exception {
+        converter.fromString("db");
+        hosts.clear();
+        now += millis(1001);
+
+        converter.fromString("db");
+        pendingRefreshes.remove(0).run();
+
+        assertEquals("10.0.0.1", converter.fromString("db").getHostAddress());
+    }
+
+    @Test
+    public void failedLookupsAreCachedForTheNegativeTtl() throws Exception {
+        assertUnknown("nowhere");
+        assertUnknown("nowhere");
+        assertEquals(1, lookups.size());
+
+        hosts.put("nowhere", InetAddress.getByAddress("nowhere", new byte[]{10, 0, 0, 3}));
+        now += millis(101);
+        assertUnknown("nowhere");
+        pendingRefreshes.remove(0).run();
+
+        assertEquals("10.0.0.3", converter.fromString("nowhere").getHostAddress());
+    }
+
+    private void assertUnknown(String host) {
+        try {
+            converter.fromString(host);
+            fail("Expected " + host + " to be unknown");
+        } catch (ConstrettoConversionException e) {
+            assertTrue(e.getCause() instanceof UnknownHostException);
+        }
+    }
+
+    private static long millis(long millis) {
+        return millis * 1000000L;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.constretto.internal.converter;
+
+import org.constretto.ValueConverter;
+import org.constretto.exception.ConstrettoConversionException;
+import org.constretto.model.CArray;
+import org.constretto.model.CObject;
+import org.constretto.model.CPrimitive;
+import org.constretto.model.CValue;
+import org.junit.Test;
+
+import java.lang.reflect.Type;
+import java.time.Duration;
+import java.util.*;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:kaare.nilsen@gmail.com">Kaare Nilsen</a>
+ */
+public class ConverterCompilerTest {
+    private final ValueConverterScope scope = ValueConverterRegistry.newScope();
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void mapOfListsIsConvertedInOnePass() throws Exception {
+        Map<String, CValue> data = new HashMap<String, CValue>();
+        data.put("north", array(new CPrimitive("PT1S"), new CPrimitive("PT2M")));
+        data.put("south", array(new CPrimitive("PT10S")));
+
+        Map<String, List<Duration>> routes = (Map<String, List<Duration>>) scope.compile(typeOf("routes"), null).convert(new CObject(data));
+
+        assertEquals(asList(Duration.ofSeconds(1), Duration.ofMinutes(2)), routes.get("north"));
+        assertEquals(asList(Duration.ofSeconds(10)), routes.get("south"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void listOfMapsIsConverted() throws Exception {
+        Map<String, CValue> data = new HashMap<String, CValue>();
+        data.put("a", new CPrimitive("1"));
+
+        List<Map<String, Integer>> weights = (List<Map<String, Integer>>) scope.compile(typeOf("weights"), null).convert(array(new CObject(data)));
+
+        assertEquals(Integer.valueOf(1), weights.get(0).get("a"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void setsAndArraysAreConverted() throws Exception {
+        CArray values = array(new CPrimitive("1"), new CPrimitive("2"), new CPrimitive("1"));
+
+        Set<Integer> set = (Set<Integer>) scope.compile(typeOf("ids"), null).convert(values);
+        int[] array = (int[]) scope.compile(int[].class, null).convert(values);
+
+        assertEquals(new LinkedHashSet<Integer>(asList(1, 2)), set);
+        assertArrayEquals(new int[]{1, 2, 1}, array);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void typeVariablesAreResolvedAgainstTheOwnerClass() throws Exception {
+        List<Long> values = (List<Long>) scope.compile(GenericHolder.class.getDeclaredField("values").getGenericType(), LongHolder.class)
+                .convert(array(new CPrimitive("42")));
+
+        assertEquals(Long.valueOf(42), values.get(0));
+    }
+
+    @Test
+    public void compiledConvertersAreCachedPerType() throws Exception {
+        assertSame(scope.compile(typeOf("routes"), null), scope.compile(typeOf("routes"), null));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void compiledConvertersAreRecompiledWhenAConverterIsRegistered() throws Exception {
+        CompiledConverter<?> before = scope.compile(typeOf("routes"), null);
+        scope.registerConverter(Duration.class, new ValueConverter<Duration>() {
+            public Duration fromString(String value) throws ConstrettoConversionException {
+                return Duration.ofSeconds(Long.parseLong(value));
+            }
+        });
+        Map<String, CValue> data = new HashMap<String, CValue>();
+        data.put("east", array(new CPrimitive("5")));
+
+        CompiledConverter<?> after = scope.compile(typeOf("routes"), null);
+        Map<String, List<Duration>> routes = (Map<String, List<Duration>>) after.convert(new CObject(data));
+
+        assertNotSame(before, after);
+        assertEquals(asList(Duration.ofSeconds(5)), routes.get("east"));
+    }
+
+    @Test(expected = ConstrettoConversionException.class)
+    public void primitiveValueForListTypeFails() throws Exception {
+        scope.compile(typeOf("weights"), null).convert(new CPrimitive("1"));
+    }
+
+    private static CArray array(CValue... values) {
+        return new CArray(asList(values));
+    }
+
+    private static Type typeOf(String field) throws NoSuchFieldException {
+        return Targets.class.getDeclaredField(field).getGenericType();
+    }
+
+    private static class Targets {
+        Map<String, List<Duration>> routes;
+        List<Map<String, Integer>> weights;
+        Set<Integer> ids;
+    }
+
+    private static class GenericHolder<T> {
+        List<T> values;
+    }
+
+    private static class LongHolder extends GenericHolder<Long> {
+    }
+}
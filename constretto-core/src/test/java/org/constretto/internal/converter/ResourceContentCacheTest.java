@@ -0,0 +1,147 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.constretto.internal.converter;
+
+import org.constretto.model.CPrimitive;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:kaare.nilsen@gmail.com">Kaare Nilsen</a>
+ */
+public class ResourceContentCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ResourceContentCache cache;
+
+    @After
+    public void closeCache() throws IOException {
+        if (cache != null) {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void propertiesAreReadOnceAndHandedOutAsCopies() throws Exception {
+        cache = new ResourceContentCache(false, ResourceContentCache.DEFAULT_MAX_CACHED_BYTES);
+        File file = write("nested.properties", "key=value");
+        String name = "file:" + file.getPath();
+
+        Properties first = cache.properties(name);
+        first.setProperty("key", "changed by caller");
+        writeKeepingStamp(file, "key=changed on disk");
+
+        assertEquals("value", cache.properties(name).getProperty("key"));
+    }
+
+    @Test
+    public void contentIsReadAgainWhenTheStampChanges() throws Exception {
+        cache = new ResourceContentCache(false, ResourceContentCache.DEFAULT_MAX_CACHED_BYTES);
+        File file = write("nested.properties", "key=value");
+        String name = "file:" + file.getPath();
+        cache.properties(name);
+
+        write("nested.properties", "key=new value");
+        file.setLastModified(file.lastModified() + 2000);
+
+        assertEquals("new value", cache.properties(name).getProperty("key"));
+        assertEquals("key=new value", read(cache.open(name)));
+    }
+
+    @Test
+    public void largeContentIsNotCached() throws Exception {
+        cache = new ResourceContentCache(false, 4);
+        File file = write("large.properties", "key=value");
+        String name = "file:" + file.getPath();
+        cache.properties(name);
+
+        writeKeepingStamp(file, "key=other");
+
+        assertEquals("other", cache.properties(name).getProperty("key"));
+    }
+
+    @Test
+    public void largeContentIsStreamedFromTheResource() throws Exception {
+        cache = new ResourceContentCache(false, 4);
+        File file = write("large.bin", "first content");
+        String name = "file:" + file.getPath();
+
+        InputStream stream = cache.open(name);
+        assertFalse(stream instanceof ByteArrayInputStream);
+        assertEquals("first content", read(stream));
+
+        writeKeepingStamp(file, "other content");
+
+        assertEquals("other content", read(cache.open(name)));
+    }
+
+    @Test
+    public void watchedContentIsInvalidatedOnChange() throws Exception {
+        cache = new ResourceContentCache(true, ResourceContentCache.DEFAULT_MAX_CACHED_BYTES);
+        File file = write("watched.properties", "key=value");
+        String name = "file:" + file.getPath();
+        assertEquals("value", cache.properties(name).getProperty("key"));
+
+        writeKeepingStamp(file, "key=new value");
+
+        long deadline = System.currentTimeMillis() + 20000;
+        while (!"new value".equals(cache.properties(name).getProperty("key")) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals("new value", cache.properties(name).getProperty("key"));
+    }
+
+    @Test
+    public void inputStreamsAreConvertedFromTheClasspath() throws Exception {
+        InputStream stream = (InputStream) ValueConverterRegistry.convert(InputStream.class, InputStream.class,
+                new CPrimitive("classpath:cache3.properties"));
+
+        assertTrue(read(stream).contains("key3"));
+    }
+
+    private File write(String name, String content) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), Charset.forName("ISO-8859-1"))) {
+            writer.write(content);
+        }
+        return file;
+    }
+
+    private void writeKeepingStamp(File file, String content) throws IOException {
+        long stamp = file.lastModified();
+        write(file.getName(), content);
+        file.setLastModified(stamp);
+    }
+
+    private static String read(InputStream stream) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[256];
+        int read;
+        while ((read = stream.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return new String(out.toByteArray(), "ISO-8859-1");
+    }
+}
@@ -15,12 +15,18 @@
  */
 package org.constretto.internal.converter;
 
+import java.io.FileInputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.constretto.ValueConverter;
 import org.constretto.exception.ConstrettoException;
 import org.constretto.model.CArray;
 import org.constretto.model.CObject;
@@ -96,4 +102,103 @@ public class ValueConverterRegistryTest {
 		map.put("hei", new CPrimitive("hallo"));
 		ValueConverterRegistry.convert(getClass(), getClass(), new CObject(map));
     }
+
+	@Test
+	public void converterForSupertypeIsNotUsedForSubtype() {
+		ValueConverterScope scope = ValueConverterRegistry.newScope();
+		scope.registerConverter(Shape.class, new ValueConverter<Shape>() {
+			public Shape fromString(String value) {
+				return new Shape() {
+				};
+			}
+		});
+		Assert.assertNull(scope.converterFor(Circle.class));
+		Assert.assertNull(ValueConverterRegistry.globalScope().converterFor(FileInputStream.class));
+		try {
+			scope.convertPrimitive(Circle.class, new CPrimitive("round"));
+			Assert.fail("A converter for a supertype should not be used");
+		} catch (ConstrettoException e) {
+			Assert.assertEquals("No converter found for class: " + Circle.class.getName(), e.getMessage());
+		}
+	}
+
+	@Test
+	public void converterForSubtypeIsUsedForSupertype() {
+		ValueConverterScope scope = ValueConverterRegistry.newScope();
+		scope.registerConverter(Circle.class, new ValueConverter<Circle>() {
+			public Circle fromString(String value) {
+				return new Circle(value);
+			}
+		});
+		Assert.assertEquals("round", ((Circle) scope.convertPrimitive(Shape.class, new CPrimitive("round"))).name);
+		Assert.assertNull(ValueConverterRegistry.globalScope().converterFor(Shape.class));
+
+		scope.registerConverter(Square.class, new ValueConverter<Square>() {
+			public Square fromString(String value) {
+				return new Square();
+			}
+		});
+		Assert.assertNull(scope.converterFor(Shape.class));
+	}
+
+	@Test
+	public void scopedConverterTakesPrecedenceOverGlobalConverter() {
+		ValueConverterScope scope = ValueConverterRegistry.newScope();
+		Assert.assertEquals("value", scope.convertPrimitive(String.class, new CPrimitive("value")));
+		scope.registerConverter(String.class, new ValueConverter<String>() {
+			public String fromString(String value) {
+				return value.toUpperCase();
+			}
+		});
+		Assert.assertEquals("VALUE", scope.convertPrimitive(String.class, new CPrimitive("value")));
+		Assert.assertEquals("value", ValueConverterRegistry.convertPrimitive(String.class, new CPrimitive("value")));
+	}
+
+	@Test
+	public void registeringWhileConvertingFromOtherThreads() throws Exception {
+		final ValueConverterScope scope = ValueConverterRegistry.newScope();
+		final AtomicBoolean failed = new AtomicBoolean();
+		final CountDownLatch done = new CountDownLatch(4);
+		for (int i = 0; i < 4; i++) {
+			new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int j = 0; j < 10000; j++) {
+							if (!Integer.valueOf(j).equals(scope.convertPrimitive(Integer.class, new CPrimitive(String.valueOf(j))))) {
+								failed.set(true);
+							}
+						}
+					} catch (RuntimeException e) {
+						failed.set(true);
+					} finally {
+						done.countDown();
+					}
+				}
+			}.start();
+		}
+		for (int i = 0; i < 1000; i++) {
+			scope.registerConverter(Circle.class, new ValueConverter<Circle>() {
+				public Circle fromString(String value) {
+					return new Circle(value);
+				}
+			});
+		}
+		Assert.assertTrue(done.await(30, TimeUnit.SECONDS));
+		Assert.assertFalse(failed.get());
+	}
+
+	private interface Shape {
+	}
+
+	private static class Square implements Shape {
+	}
+
+	private static class Circle implements Shape {
+		private final String name;
+
+		private Circle(String name) {
+			this.name = name;
+		}
+	}
 }
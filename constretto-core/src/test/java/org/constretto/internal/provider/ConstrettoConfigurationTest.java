@@ -1,17 +1,36 @@
 package org.constretto.internal.provider;
 
+import org.constretto.BatchResult;
+import org.constretto.ConfigurationChange;
 import org.constretto.ConstrettoBuilder;
 import org.constretto.ConstrettoConfiguration;
+import org.constretto.LookupResult;
 import org.constretto.Property;
+import org.constretto.exception.ConstrettoExpressionException;
+import org.constretto.internal.DefaultConstrettoConfiguration;
+import org.constretto.model.CPrimitive;
+import org.constretto.model.CValue;
+import org.constretto.model.ConfigurationValue;
 import org.constretto.model.Resource;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * @author <a href="mailto:kaare.nilsen@arktekk.no">Kaare Nilsen</a>
@@ -52,6 +71,147 @@ public class ConstrettoConfigurationTest {
         assertTrue(actual.containsAll(expected));
     }
 
+    @Test
+    public void lookupFoundValue() {
+        LookupResult<String> result = constrettoConfiguration.lookup(String.class, "url.child");
+        assertTrue(result.isPresent());
+        assertEquals("http://constretto.org/child", result.get());
+    }
 
-}
+    @Test
+    public void lookupMissingValueWithoutException() {
+        LookupResult<Integer> result = constrettoConfiguration.lookup(Integer.class, "not.there");
+        assertTrue(result.isMissing());
+        assertFalse(result.isConversionFailure());
+        assertEquals(Integer.valueOf(42), result.orElse(42));
+        assertFalse(result.toOptional().isPresent());
+    }
+
+    @Test
+    public void lookupValueNotConvertible() {
+        LookupResult<Integer> result = constrettoConfiguration.lookup(Integer.class, "somedb.username");
+        assertTrue(result.isConversionFailure());
+        assertFalse(result.isMissing());
+        assertEquals(Integer.valueOf(42), constrettoConfiguration.evaluateTo("somedb.username", 42));
+    }
+
+    @Test(expected = ConstrettoExpressionException.class)
+    public void getOnMissingLookupThrows() {
+        constrettoConfiguration.lookup(String.class, "not.there").get();
+    }
+
+    @Test
+    public void missingKeysThrowWithStackTrace() {
+        try {
+            constrettoConfiguration.evaluateToString("not.there");
+            fail("Expected a missing key");
+        } catch (ConstrettoExpressionException e) {
+            assertEquals("not.there", e.getExpression());
+            assertTrue(e.getStackTrace().length > 0);
+        }
+        try {
+            constrettoConfiguration.lookup(String.class, "not.there").get();
+            fail("Expected a missing key");
+        } catch (ConstrettoExpressionException e) {
+            assertTrue(e.getStackTrace().length > 0);
+        }
+    }
+
+    @Test
+    public void evaluateAllResolvesEveryExpressionInOneBatch() {
+        BatchResult<CValue> result = constrettoConfiguration.evaluateAll(Arrays.asList("url.child", "somedb.username", "not.there", "url.child"));
 
+        assertEquals(3, result.size());
+        assertEquals("http://constretto.org/child", result.get("url.child").toString());
+        assertTrue(result.isPresent("somedb.username"));
+        assertEquals(Collections.singletonList("not.there"), result.missing());
+        assertEquals(2, result.asMap().size());
+    }
+
+    @Test
+    public void typedEvaluateAllConvertsEveryValue() {
+        BatchResult<String> result = constrettoConfiguration.evaluateAll(String.class, Arrays.asList("url.child", "not.there"));
+
+        assertEquals("http://constretto.org/child", result.get("url.child"));
+        assertEquals("default", result.orElse("not.there", "default"));
+    }
+
+    @Test(expected = ConstrettoExpressionException.class)
+    public void getOnMissingBatchExpressionThrows() {
+        constrettoConfiguration.evaluateAll(String.class, Arrays.asList("not.there")).get("not.there");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void expressionsOutsideTheBatchAreRejected() {
+        constrettoConfiguration.evaluateAll(String.class, Arrays.asList("url.child")).get("somedb.username");
+    }
+
+    @Test
+    public void tagViewsShareTheLoadedValues() {
+        ConstrettoConfiguration configuration = new ConstrettoBuilder(false)
+                .createPropertiesStore()
+                .addResource(Resource.create("classpath:tenants.properties"))
+                .done()
+                .getConfiguration();
+
+        ConstrettoConfiguration euGold = configuration.withTags("eu", "gold");
+
+        assertEquals("http://eu.example.com/child", euGold.evaluateToString("url.child"));
+        assertEquals("gold", euGold.evaluateToString("plan"));
+        assertEquals("http://default.example.com/child", configuration.evaluateToString("url.child"));
+        assertEquals("free", configuration.evaluateToString("plan"));
+        assertSame(euGold, configuration.withTags("eu", "gold"));
+        assertSame(euGold, euGold.withTags("eu", "gold"));
+        assertSame(configuration, euGold.withTags());
+    }
+
+    @Test
+    public void leastRecentlyUsedTagViewsAreDropped() {
+        ConstrettoConfiguration first = constrettoConfiguration.withTags("tenant-0");
+        for (int i = 1; i <= DefaultConstrettoConfiguration.MAX_TAG_VIEWS; i++) {
+            constrettoConfiguration.withTags("tenant-" + i);
+        }
+
+        assertNotSame(first, constrettoConfiguration.withTags("tenant-0"));
+        assertEquals(first.evaluateToString("somedb.username"), constrettoConfiguration.withTags("tenant-0").evaluateToString("somedb.username"));
+    }
+
+    @Test
+    public void tagViewsWithSubscribersAreKeptWhileOthersAreDropped() {
+        ConstrettoConfiguration subscribed = constrettoConfiguration.withTags("tenant-0");
+        subscribed.subscribe(new Consumer<ConfigurationChange>() {
+            public void accept(ConfigurationChange change) {
+            }
+        });
+        ConstrettoConfiguration second = constrettoConfiguration.withTags("tenant-1");
+        for (int i = 2; i <= DefaultConstrettoConfiguration.MAX_TAG_VIEWS; i++) {
+            constrettoConfiguration.withTags("tenant-" + i);
+        }
+
+        assertSame(subscribed, constrettoConfiguration.withTags("tenant-0"));
+        assertNotSame(second, constrettoConfiguration.withTags("tenant-1"));
+        assertSame(constrettoConfiguration, subscribed.withTags("production"));
+    }
+
+    @Test
+    public void droppedTagViewsGetChangesOnceSubscribed() throws Exception {
+        DefaultConstrettoConfiguration configuration = (DefaultConstrettoConfiguration) constrettoConfiguration;
+        ConstrettoConfiguration held = configuration.withTags("tenant-0");
+        for (int i = 1; i <= DefaultConstrettoConfiguration.MAX_TAG_VIEWS + 50; i++) {
+            configuration.withTags("tenant-" + i);
+        }
+        final CountDownLatch changed = new CountDownLatch(1);
+        held.subscribe(new Consumer<ConfigurationChange>() {
+            public void accept(ConfigurationChange change) {
+                changed.countDown();
+            }
+        });
+
+        Map<String, List<ConfigurationValue>> values = new HashMap<String, List<ConfigurationValue>>(configuration.snapshot().configuration());
+        values.put("somedb.username", Collections.singletonList(new ConfigurationValue(new CPrimitive("changed"))));
+        configuration.update(values);
+
+        assertTrue(changed.await(5, TimeUnit.SECONDS));
+        assertEquals("changed", held.evaluateToString("somedb.username"));
+    }
+}
@@ -0,0 +1,129 @@
+package org.constretto.internal.store;
+
+import org.constretto.ConfigurationStore;
+import org.constretto.ConstrettoBuilder;
+import org.constretto.ConstrettoConfiguration;
+import org.constretto.exception.ConstrettoException;
+import org.constretto.model.CValue;
+import org.constretto.model.Resource;
+import org.constretto.model.TaggedPropertySet;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.contrib.java.lang.system.ProvideSystemProperty;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.Executor;
+
+import static org.constretto.internal.store.EncryptedPropertiesStore.DecryptionMode.ON_ACCESS;
+import static org.junit.Assert.*;
+
+public class CachingConfigurationStoreTest {
+    private static final Executor SAME_THREAD = new Executor() {
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Rule
+    public ProvideSystemProperty encryptionKey = new ProvideSystemProperty(EncryptedPropertiesStoreTest.PROPERTY_KEY, EncryptedPropertiesStoreTest.ENCRYPTION_KEY);
+
+    @Test
+    public void startsFromTheCacheFileWhenTheStoreIsDown() throws Exception {
+        File cacheFile = new File(folder.getRoot(), "cache/ldap.json");
+        RemoteStore remote = new RemoteStore();
+        remote.values.put("db.url", "jdbc:first");
+        new CachingConfigurationStore(remote, cacheFile, SAME_THREAD).parseConfiguration();
+        assertTrue(cacheFile.isFile());
+
+        remote.down = true;
+        CachingConfigurationStore store = new CachingConfigurationStore(remote, cacheFile, SAME_THREAD);
+        ConstrettoConfiguration configuration = new ConstrettoBuilder(false).addConfigurationStore(store).getConfiguration();
+
+        assertEquals("jdbc:first", configuration.evaluateToString("db.url"));
+        assertEquals("production", configuration.withTags("production").evaluateToString("tagged"));
+        assertTrue(store.lastFailure() instanceof ConstrettoException);
+    }
+
+    @Test
+    public void refreshReplacesTheValuesOnlyWhenTheyChanged() throws Exception {
+        File cacheFile = new File(folder.getRoot(), "ldap.json");
+        RemoteStore remote = new RemoteStore();
+        remote.values.put("db.url", "jdbc:first");
+        CachingConfigurationStore store = new CachingConfigurationStore(remote, cacheFile, SAME_THREAD);
+        final ConstrettoConfiguration configuration = new ConstrettoBuilder(false).addConfigurationStore(store).getConfiguration();
+        final List<String> refreshed = new ArrayList<String>();
+        store.onRefresh(new Runnable() {
+            public void run() {
+                configuration.reload();
+                refreshed.add(configuration.evaluateToString("db.url"));
+            }
+        });
+
+        assertFalse(store.refresh());
+        remote.down = true;
+        assertFalse(store.refresh());
+        assertNotNull(store.lastFailure());
+        remote.down = false;
+        remote.values.put("db.url", "jdbc:second");
+        assertTrue(store.refresh());
+        assertNull(store.lastFailure());
+
+        assertEquals(Arrays.asList("jdbc:second"), refreshed);
+        assertEquals(3, remote.reads);
+        remote.down = true;
+        CachingConfigurationStore restarted = new CachingConfigurationStore(remote, cacheFile, SAME_THREAD);
+        assertEquals("jdbc:second", new ConstrettoBuilder(false).addConfigurationStore(restarted).getConfiguration().evaluateToString("db.url"));
+    }
+
+    @Test(expected = ConstrettoException.class)
+    public void failsWithoutCacheFileWhenTheStoreIsDown() {
+        RemoteStore remote = new RemoteStore();
+        remote.down = true;
+        new CachingConfigurationStore(remote, new File(folder.getRoot(), "missing.json"), SAME_THREAD).parseConfiguration();
+    }
+
+    @Test
+    public void encryptedValuesAreKeptEncryptedInTheCacheFile() throws Exception {
+        File cacheFile = new File(folder.getRoot(), "encrypted.json");
+        EncryptedPropertiesStore encrypted = new EncryptedPropertiesStore(EncryptedPropertiesStoreTest.PROPERTY_KEY, ON_ACCESS)
+                .addResource(Resource.create("classpath:encrypted.properties"));
+        CachingConfigurationStore store = new CachingConfigurationStore(encrypted, cacheFile, SAME_THREAD);
+        store.parseConfiguration();
+
+        String content = new String(Files.readAllBytes(cacheFile.toPath()), CachingConfigurationStore.DEFAULT_CHARSET);
+        assertFalse(content, content.contains("Testing a property"));
+        assertTrue(content, content.contains("ENC("));
+        assertFalse(store.refresh());
+
+        CValue cached = new CachingConfigurationStore(encrypted, cacheFile, SAME_THREAD).parseConfiguration().iterator().next().getValues().get("encrypted_property");
+        assertTrue(cached instanceof EncryptedValue);
+        assertEquals("Testing a property", cached.toString());
+    }
+
+    @Test(expected = ConstrettoException.class)
+    public void encryptedStoresDecryptingOnLoadCanNotBeCachedInAFile() {
+        new CachingConfigurationStore(new EncryptedPropertiesStore(EncryptedPropertiesStoreTest.PROPERTY_KEY), new File(folder.getRoot(), "encrypted.json"));
+    }
+
+    private static class RemoteStore implements ConfigurationStore {
+        private final Map<String, String> values = new HashMap<String, String>();
+        private boolean down;
+        private int reads;
+
+        public Collection<TaggedPropertySet> parseConfiguration() {
+            if (down) {
+                throw new ConstrettoException("The directory is down");
+            }
+            reads++;
+            return Arrays.asList(
+                    new TaggedPropertySet(new HashMap<String, String>(values), getClass()),
+                    new TaggedPropertySet("production", Collections.singletonMap("tagged", "production"), getClass()));
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package org.constretto.internal.store;
 
+import org.constretto.ConstrettoBuilder;
+import org.constretto.ConstrettoConfiguration;
+import org.constretto.model.CValue;
 import org.constretto.model.Resource;
 import org.constretto.model.TaggedPropertySet;
 import org.jasypt.util.text.BasicTextEncryptor;
@@ -11,7 +14,11 @@ import org.junit.contrib.java.lang.system.ProvideSystemProperty;
 import java.util.List;
 import java.util.Properties;
 
+import static org.constretto.internal.store.EncryptedPropertiesStore.DecryptionMode.ON_ACCESS;
+import static org.constretto.internal.store.EncryptedPropertiesStore.DecryptionMode.PARALLEL_WARMUP;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author <a href="mailto:zapodot@gmail.com">zapodot</a>
@@ -58,4 +65,47 @@ public class EncryptedPropertiesStoreTest {
         assertEquals("Testing a property", taggedPropertySets.get(0).getProperties().get("encrypted_property"));
 
     }
+
+    @Test
+    public void testValuesAreKeptEncryptedUntilAccessed() throws Exception {
+
+        final EncryptedPropertiesStore encryptedPropertiesStore = new EncryptedPropertiesStore(PROPERTY_KEY, ON_ACCESS);
+        final Properties parsed = encryptedPropertiesStore.parseProperties(encryptedProperties);
+        assertEquals(encryptedValue, parsed.getProperty(KEY));
+
+        final List<TaggedPropertySet> taggedPropertySets = encryptedPropertiesStore
+                .addResource(Resource.create("classpath:encrypted.properties"))
+                .parseConfiguration();
+        final CValue value = taggedPropertySets.get(0).getValues().get("encrypted_property");
+        assertTrue(value instanceof EncryptedValue);
+        assertFalse(((EncryptedValue) value).isDecrypted());
+        assertEquals("Testing a property", value.toString());
+        assertTrue(((EncryptedValue) value).isDecrypted());
+    }
+
+    @Test
+    public void testValuesAreDecryptedBeforeAccessWithWarmup() throws Exception {
+
+        final List<TaggedPropertySet> taggedPropertySets = new EncryptedPropertiesStore(PROPERTY_KEY, PARALLEL_WARMUP)
+                .addResource(Resource.create("classpath:encrypted.properties"))
+                .parseConfiguration();
+        final CValue value = taggedPropertySets.get(0).getValues().get("encrypted_property");
+        assertTrue(value instanceof EncryptedValue);
+        assertTrue(((EncryptedValue) value).isDecrypted());
+        assertEquals("Testing a property", value.toString());
+    }
+
+    @Test
+    public void testLazyDecryptionThroughConfiguration() throws Exception {
+
+        for (EncryptedPropertiesStore.DecryptionMode mode : new EncryptedPropertiesStore.DecryptionMode[]{ON_ACCESS, PARALLEL_WARMUP}) {
+            final ConstrettoConfiguration configuration = new ConstrettoBuilder(false)
+                    .createEncryptedPropertiesStore(PROPERTY_KEY, mode)
+                    .addResource(Resource.create("classpath:encrypted.properties"))
+                    .done()
+                    .getConfiguration();
+            assertEquals("Testing a property", configuration.evaluateToString("encrypted_property"));
+            assertEquals("Testing a property", configuration.asMap().get("encrypted_property"));
+        }
+    }
 }
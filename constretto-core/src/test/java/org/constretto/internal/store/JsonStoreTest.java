@@ -4,17 +4,24 @@ import org.constretto.ConstrettoBuilder;
 import org.constretto.ConstrettoConfiguration;
 import org.constretto.GenericConverter;
 import org.constretto.exception.ConstrettoConversionException;
+import org.constretto.exception.ConstrettoException;
 import org.constretto.model.CObject;
 import org.constretto.model.CPrimitive;
 import org.constretto.model.CValue;
 import org.constretto.model.Resource;
+import org.constretto.model.TaggedPropertySet;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Map;
 
 import static org.constretto.internal.converter.ValueConverterRegistry.convertPrimitive;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 
 public class JsonStoreTest {
 
@@ -42,6 +49,80 @@ public class JsonStoreTest {
         assertFalse(conf.hasValue("person"));
     }
 
+    @Test
+    public void jsonShouldBeReadOnceForAllTags() {
+        CountingResource resource = new CountingResource("{\"name\":\"Kaare\",\"age\":29}");
+        Collection<TaggedPropertySet> propertySets = new JsonStore()
+                .addResource(resource, "person", "dev", "test", "prod")
+                .parseConfiguration();
+
+        assertEquals(3, propertySets.size());
+        assertEquals(1, resource.reads);
+        TaggedPropertySet[] sets = propertySets.toArray(new TaggedPropertySet[propertySets.size()]);
+        assertSame(sets[0].getValues().get("person"), sets[2].getValues().get("person"));
+    }
+
+    @Test
+    public void jsonShouldBeFlattenedIntoDottedKeys() {
+        ConstrettoConfiguration conf = new ConstrettoBuilder(false)
+                .createJsonConfigurationStore()
+                .addFlattenedResource(Resource.create("classpath:jsonNested.json"), "config")
+                .done()
+                .getConfiguration();
+
+        assertEquals("eu.example.com", conf.evaluateToString("config.routes.eu.host"));
+        assertEquals("us.example.com", conf.evaluateToString("config.routes.us.host"));
+        assertEquals(Arrays.asList(1, 2, 3), conf.evaluateToList(Integer.class, "config.routes.eu.weights"));
+        assertEquals(true, conf.evaluateToBoolean("config.enabled"));
+        assertFalse(conf.hasValue("config.routes"));
+    }
+
+    @Test
+    public void jsonShouldKeepMultibyteCharactersAcrossBufferBoundaries() {
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            name.append('\u00e6');
+        }
+        ConstrettoConfiguration conf = new ConstrettoBuilder(false)
+                .createJsonConfigurationStore()
+                .addResource(new CountingResource("{\"name\":\"" + name + "\"}"), "person")
+                .done()
+                .getConfiguration();
+
+        Map<String, String> person = conf.evaluateToMap(String.class, String.class, "person");
+        assertEquals(name.toString(), person.get("name"));
+    }
+
+    @Test(expected = ConstrettoException.class)
+    public void jsonShouldRejectContentAfterTheDocument() {
+        new JsonStore().addResource(new CountingResource("{\"a\":1} xyz"), "config").parseConfiguration();
+    }
+
+    @Test(expected = ConstrettoException.class)
+    public void jsonShouldRejectConcatenatedDocuments() {
+        new JsonStore().addResource(new CountingResource("{\"a\":1}{\"b\":2}"), "config").parseConfiguration();
+    }
+
+    private static class CountingResource extends Resource {
+        private final byte[] content;
+        private int reads;
+
+        private CountingResource(String content) {
+            super("counting:json");
+            this.content = content.getBytes(JsonStore.DEFAULT_CHARSET);
+        }
+
+        @Override
+        public boolean exists() {
+            return true;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            reads++;
+            return new ByteArrayInputStream(content);
+        }
+    }
 
     private class PersonJsonConverter implements GenericConverter<Person> {
         public Person fromValue(CValue value) throws ConstrettoConversionException {
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.constretto.internal.store;
+
+import org.constretto.ConstrettoBuilder;
+import org.constretto.ConstrettoConfiguration;
+import org.constretto.model.ConfigurationValue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.contrib.java.lang.system.ProvideSystemProperty;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class LazySystemPropertiesStoreTest {
+
+    @Rule
+    public ProvideSystemProperty provideSystemProperty = new ProvideSystemProperty("lazy.username", "user0");
+
+    private final Map<String, String> environment = new HashMap<String, String>() {
+        {
+            put("DB_URL", "jdbc:h2:mem");
+            put("lazy.username", "from-env");
+        }
+    };
+
+    @Test
+    public void systemPropertiesWinOverEnvironment() {
+        LazySystemPropertiesStore store = new LazySystemPropertiesStore(false, environment);
+        List<ConfigurationValue> values = store.lookup("lazy.username");
+        assertEquals(1, values.size());
+        assertEquals("user0", values.get(0).value().toString());
+        assertEquals(ConfigurationValue.ALL_TAG, values.get(0).tag());
+        assertTrue(store.parseConfiguration().isEmpty());
+    }
+
+    @Test
+    public void relaxedKeysMatchEnvironmentNamingConvention() {
+        assertTrue(new LazySystemPropertiesStore(false, environment).lookup("db.url").isEmpty());
+        LazySystemPropertiesStore store = new LazySystemPropertiesStore(true, environment);
+        assertEquals("jdbc:h2:mem", store.lookup("db.url").get(0).value().toString());
+        assertEquals("jdbc:h2:mem", store.lookup("db-url").get(0).value().toString());
+        assertTrue(store.lookup("db.user").isEmpty());
+    }
+
+    @Test
+    public void valuesAreCachedByTheConfiguration() {
+        ConstrettoConfiguration configuration = new ConstrettoBuilder(false)
+                .createLazySystemPropertiesStore(false)
+                .getConfiguration();
+        assertEquals("user0", configuration.evaluateToString("lazy.username"));
+        System.setProperty("lazy.username", "user1");
+        assertEquals("user0", configuration.evaluateToString("lazy.username"));
+        assertEquals("user0", configuration.asMap().get("lazy.username"));
+        assertFalse(configuration.hasValue("lazy.missing"));
+    }
+
+    @Test
+    public void missingKeysAreNotCached() {
+        ConstrettoConfiguration configuration = new ConstrettoBuilder(false)
+                .createLazySystemPropertiesStore(false)
+                .getConfiguration();
+        assertFalse(configuration.hasValue("lazy.late"));
+        System.setProperty("lazy.late", "arrived");
+        try {
+            assertEquals("arrived", configuration.evaluateToString("lazy.late"));
+        } finally {
+            System.clearProperty("lazy.late");
+        }
+    }
+
+    @Test
+    public void systemPropertiesOverrideOtherStores() {
+        ConstrettoConfiguration configuration = new ConstrettoBuilder(false)
+                .createObjectConfigurationStore()
+                .addObject(new Object() {
+                    public String getLazy() {
+                        return "from-object";
+                    }
+                })
+                .done()
+                .createLazySystemPropertiesStore(false)
+                .getConfiguration();
+        assertEquals("user0", configuration.evaluateToString("lazy.username"));
+        System.setProperty("lazy", "from-system");
+        assertEquals("from-system", configuration.evaluateToString("lazy"));
+        System.clearProperty("lazy");
+        assertEquals(Collections.emptyList(), new LazySystemPropertiesStore(false, environment).lookup("lazy"));
+    }
+}
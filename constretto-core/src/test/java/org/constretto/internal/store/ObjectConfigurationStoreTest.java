@@ -27,9 +27,15 @@ import org.constretto.model.TaggedPropertySet;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
 /**
  * @author <a href="mailto:kaare.nilsen@gmail.com">Kaare Nilsen</a>
@@ -98,6 +104,23 @@ public class ObjectConfigurationStoreTest extends AbstractConfigurationStoreTest
         assertEquals("generic-url", configuration.evaluateToString("url"));
     }
 
+    @Test
+    public void givenTypedGettersThenValuesAreUsedWithoutStringConversion() {
+        ConstrettoConfiguration configuration = new ConstrettoBuilder(false)
+                .createObjectConfigurationStore()
+                .addObject(new TypedConfig())
+                .done()
+                .getConfiguration();
+        assertEquals(Integer.valueOf(42), configuration.evaluateToInt("typed.poolSize"));
+        assertEquals(Boolean.TRUE, configuration.evaluateToBoolean("typed.enabled"));
+        assertEquals(TimeUnit.SECONDS, configuration.evaluateTo(TimeUnit.class, "typed.unit"));
+        assertEquals(Arrays.asList(1L, 2L, 3L), configuration.evaluateToList(Long.class, "typed.weights"));
+        assertEquals(Arrays.asList("a", "b"), configuration.evaluateToList(String.class, "typed.hosts"));
+        assertEquals(Collections.singletonMap("eu", 2), configuration.evaluateToMap(String.class, Integer.class, "typed.limits"));
+        assertFalse(configuration.hasValue("typed.missing"));
+        assertFalse(configuration.hasValue("typed.class"));
+    }
+
 
     @Override
     protected ConfigurationStore getStore() {
@@ -141,4 +164,37 @@ public class ObjectConfigurationStoreTest extends AbstractConfigurationStoreTest
 
     }
 
+    @ConfigurationSource(basePath = "typed")
+    public static class TypedConfig {
+
+        public int getPoolSize() {
+            return 42;
+        }
+
+        public boolean isEnabled() {
+            return true;
+        }
+
+        public TimeUnit getUnit() {
+            return TimeUnit.SECONDS;
+        }
+
+        public long[] getWeights() {
+            return new long[]{1, 2, 3};
+        }
+
+        public List<String> getHosts() {
+            return Arrays.asList("a", "b");
+        }
+
+        public Map<String, Integer> getLimits() {
+            return Collections.singletonMap("eu", 2);
+        }
+
+        public String getMissing() {
+            return null;
+        }
+
+    }
+
 }